@@ -0,0 +1,115 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.storageAccess.ConnectionPool;
+import ci553.happyshop.storageAccess.DerbyRW;
+import ci553.happyshop.storageAccess.SchemaMigrator;
+import ci553.happyshop.utility.LogLevel;
+import ci553.happyshop.utility.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A BenchmarkDatabase is a throwaway in-memory Derby database with a ProductTable seeded with
+ * catalogueSize products, and a DerbyRW connected to it through a ConnectionPool.
+ *
+ * Running in memory keeps disk speed out of the results, so they show the cost of the storage code
+ * itself (SQL, JDBC, pooling, object creation). Every benchmark trial gets its own database name,
+ * and close() drops it, so trials never see each other's rows.
+ *
+ * Seeded products have IDs 0001 .. catalogueSize and descriptions made from WORDS,
+ * eg "Blue Wireless Speaker 17", so that a name search like "speaker" matches about 1 in WORDS.length rows.
+ */
+
+public class BenchmarkDatabase {
+    public static final int MAX_CATALOGUE_SIZE = 8999; // IDs 9000-9999 are left for insert benchmarks
+    public static final int SEEDED_STOCK = 1_000_000_000; // large enough that purchases never run out
+
+    private static final String[] WORDS = {"Blue", "Wireless", "Speaker", "Kettle", "Laptop", "Steel", "Garden", "Smart"};
+    private static int databaseCount = 0;
+
+    private final String dbName;
+    private final ConnectionPool pool;
+    private final DerbyRW derbyRW;
+    private final int catalogueSize;
+
+    public BenchmarkDatabase(int catalogueSize) throws SQLException {
+        if (catalogueSize < 1 || catalogueSize > MAX_CATALOGUE_SIZE) {
+            throw new IllegalArgumentException("catalogueSize must be 1.." + MAX_CATALOGUE_SIZE + ": " + catalogueSize);
+        }
+        Logger.setLevel(LogLevel.WARN); // per-operation log lines would be measured too
+        this.catalogueSize = catalogueSize;
+        this.dbName = "happyShopBench" + nextDatabaseNumber();
+        String dbURL = "jdbc:derby:memory:" + dbName;
+        createAndSeed(dbURL + ";create=true", catalogueSize);
+        pool = new ConnectionPool(dbURL, 4, 16, 5000, 60_000, 32);
+        pool.warmUp();
+        derbyRW = new DerbyRW(pool);
+    }
+
+    private static synchronized int nextDatabaseNumber() {
+        return ++databaseCount;
+    }
+
+    private static void createAndSeed(String createURL, int catalogueSize) throws SQLException {
+        try (Connection con = DriverManager.getConnection(createURL)) {
+            try (Statement stat = con.createStatement()) {
+                // same table as SetDatabase creates
+                stat.executeUpdate("CREATE TABLE ProductTable("
+                        + "productID CHAR(4) PRIMARY KEY,"
+                        + "description VARCHAR(100),"
+                        + "unitPrice DOUBLE,"
+                        + "image VARCHAR(100),"
+                        + "inStock INT,"
+                        + "CHECK (inStock >= 0))");
+            }
+            con.setAutoCommit(false);
+            try (PreparedStatement insert = con.prepareStatement("INSERT INTO ProductTable VALUES (?, ?, ?, ?, ?)")) {
+                for (int i = 1; i <= catalogueSize; i++) {
+                    insert.setString(1, productId(i));
+                    insert.setString(2, description(i));
+                    insert.setDouble(3, 1 + (i % 500));
+                    insert.setString(4, productId(i) + ".jpg");
+                    insert.setInt(5, SEEDED_STOCK);
+                    insert.addBatch();
+                    if (i % 500 == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            con.commit();
+            SchemaMigrator.migrate(con); // the lowercase description column and index, like happyShopDB
+        }
+    }
+
+    // eg 7 -> "0007"
+    public static String productId(int number) {
+        return String.format("%04d", number);
+    }
+
+    // eg 17 -> "Wireless Kettle Steel 17"
+    static String description(int number) {
+        return WORDS[number % WORDS.length] + " " + WORDS[(number / WORDS.length) % WORDS.length] + " "
+                + WORDS[(number * 7 + 3) % WORDS.length] + " " + number;
+    }
+
+    public DerbyRW getDerbyRW() { return derbyRW; }
+    public int getCatalogueSize() { return catalogueSize; }
+
+    // Closes the pool and drops the in-memory database.
+    public void close() {
+        pool.close();
+        try {
+            DriverManager.getConnection("jdbc:derby:memory:" + dbName + ";drop=true").close();
+        } catch (SQLException e) {
+            // Derby reports a successful drop as an SQLException with state 08006
+            if (!"08006".equals(e.getSQLState())) {
+                System.err.println("Could not drop benchmark database " + dbName + ": " + e.getMessage());
+            }
+        }
+    }
+}
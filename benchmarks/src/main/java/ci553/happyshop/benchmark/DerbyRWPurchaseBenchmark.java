@@ -0,0 +1,80 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DerbyRW;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkout benchmark for DerbyRW.purchaseStocks(): one trolley of `lines` different products,
+ * one of each, bought in a single transaction.
+ *
+ * Products are seeded with a very large stock, so every purchase succeeds and the benchmark measures
+ * the normal checkout path (batched conditional updates and commit), not the insufficient-stock path.
+ * Each call buys the next `lines` products in the catalogue, so consecutive purchases touch different rows.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DerbyRWPurchaseBenchmark {
+
+    @Param({"1000"})
+    public int catalogueSize;
+
+    @Param({"1", "10", "50"})
+    public int lines;
+
+    private BenchmarkDatabase database;
+    private DerbyRW derbyRW;
+    private ArrayList<ArrayList<Product>> trolleys; // prebuilt, so building them is not measured
+    private int nextTrolley = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase(catalogueSize);
+        derbyRW = database.getDerbyRW();
+        trolleys = new ArrayList<>();
+        int trolleyCount = Math.max(1, catalogueSize / lines);
+        for (int t = 0; t < trolleyCount; t++) {
+            ArrayList<Product> trolley = new ArrayList<>();
+            for (int line = 0; line < lines; line++) {
+                int number = (t * lines + line) % catalogueSize + 1;
+                Product product = new Product(BenchmarkDatabase.productId(number), "", "", 1.0, 0);
+                product.setOrderedQuantity(1);
+                trolley.add(product);
+            }
+            trolleys.add(trolley);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public ArrayList<Product> purchaseStocks() throws SQLException {
+        ArrayList<Product> trolley = trolleys.get(nextTrolley);
+        nextTrolley = (nextTrolley + 1) % trolleys.size();
+        return derbyRW.purchaseStocks(trolley); // the insufficient products, always empty here
+    }
+}
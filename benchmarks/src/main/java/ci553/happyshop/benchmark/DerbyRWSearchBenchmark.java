@@ -0,0 +1,91 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DerbyRW;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read benchmarks for DerbyRW: the searches the customer and warehouse clients run.
+ *
+ * - searchByProductId: one primary key lookup, cycling through all seeded IDs.
+ * - searchProductIdHit: searchProduct() with a keyword that is a product ID (found by the ID lookup).
+ * - searchProductNameHit: searchProduct() with a word in about 1 in 8 descriptions (ID lookup misses, table scan).
+ * - searchProductPrefixHit: searchProduct("speaker*"), the descriptions starting with it (index range scan).
+ * - searchProductAll: searchProduct("*"), which reads the whole catalogue.
+ *
+ * Run with -prof gc to see the allocation rate (gc.alloc.rate.norm is bytes per search).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DerbyRWSearchBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int catalogueSize;
+
+    private BenchmarkDatabase database;
+    private DerbyRW derbyRW;
+    private int nextId = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase(catalogueSize);
+        derbyRW = database.getDerbyRW();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    // a different existing ID on every call, so the same row is not read over and over
+    private String nextProductId() {
+        nextId = nextId % catalogueSize + 1;
+        return BenchmarkDatabase.productId(nextId);
+    }
+
+    @Benchmark
+    public Product searchByProductId() throws SQLException {
+        return derbyRW.searchByProductId(nextProductId());
+    }
+
+    @Benchmark
+    public ArrayList<Product> searchProductIdHit() throws SQLException {
+        return derbyRW.searchProduct(nextProductId());
+    }
+
+    @Benchmark
+    public ArrayList<Product> searchProductNameHit() throws SQLException {
+        return derbyRW.searchProduct("speaker");
+    }
+
+    @Benchmark
+    public ArrayList<Product> searchProductPrefixHit() throws SQLException {
+        return derbyRW.searchProduct("speaker*");
+    }
+
+    @Benchmark
+    public ArrayList<Product> searchProductAll() throws SQLException {
+        return derbyRW.searchProduct("*");
+    }
+}
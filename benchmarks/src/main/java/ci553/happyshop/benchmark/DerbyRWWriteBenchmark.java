@@ -0,0 +1,72 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.storageAccess.DerbyRW;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warehouse write benchmarks for DerbyRW.
+ *
+ * - updateProduct: edits an existing product (read before update, then the update itself).
+ * - insertThenDeleteProduct: adds a new product and removes it again. The two are measured together
+ *   so the table keeps its size; the IDs come from the range BenchmarkDatabase leaves free (9000-9999).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DerbyRWWriteBenchmark {
+    private static final int FIRST_FREE_ID = BenchmarkDatabase.MAX_CATALOGUE_SIZE + 1;
+    private static final int FREE_ID_COUNT = 9999 - BenchmarkDatabase.MAX_CATALOGUE_SIZE;
+
+    @Param({"1000"})
+    public int catalogueSize;
+
+    private BenchmarkDatabase database;
+    private DerbyRW derbyRW;
+    private int nextUpdate = 0;
+    private int nextInsert = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase(catalogueSize);
+        derbyRW = database.getDerbyRW();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public void updateProduct() throws SQLException {
+        nextUpdate = nextUpdate % catalogueSize + 1;
+        String id = BenchmarkDatabase.productId(nextUpdate);
+        derbyRW.updateProduct(id, "Updated product " + nextUpdate, 9.99, id + ".jpg", BenchmarkDatabase.SEEDED_STOCK);
+    }
+
+    @Benchmark
+    public void insertThenDeleteProduct() throws SQLException {
+        String id = BenchmarkDatabase.productId(FIRST_FREE_ID + nextInsert);
+        nextInsert = (nextInsert + 1) % FREE_ID_COUNT;
+        derbyRW.insertNewProduct(id, "Benchmark product", 4.99, id + ".jpg", 10);
+        derbyRW.deleteProduct(id);
+    }
+}
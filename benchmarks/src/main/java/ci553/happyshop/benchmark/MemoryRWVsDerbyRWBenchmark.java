@@ -0,0 +1,117 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.MemoryRW;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the two storage backends on the same catalogue: DerbyRW (an in-memory Derby database, see
+ * BenchmarkDatabase) and MemoryRW (the -Dhappyshop.db=memory backend, with its write-ahead log in a temporary folder).
+ *
+ * The Derby database is in memory, so disk speed is kept out of its results, while MemoryRW does write
+ * its log to disk (without fsync, its default). Purchases therefore include MemoryRW's real persistence cost.
+ *
+ * Run with eg -t 4 to see how each backend copes with concurrent checkouts.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryRWVsDerbyRWBenchmark {
+
+    @Param({"derby", "memory"})
+    public String backend;
+
+    @Param({"1000"})
+    public int catalogueSize;
+
+    @Param({"10"})
+    public int lines;
+
+    private BenchmarkDatabase database;
+    private MemoryRW memoryRW;
+    private Path memoryDir;
+    private DatabaseRW databaseRW;
+    private ArrayList<ArrayList<Product>> trolleys; // prebuilt, so building them is not measured
+    private int nextTrolley = 0;                    // shared by all threads; a lost update only repeats a trolley
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        database = new BenchmarkDatabase(catalogueSize);
+        if (backend.equals("memory")) {
+            memoryDir = Files.createTempDirectory("happyShopMemoryBench");
+            memoryRW = new MemoryRW(memoryDir, false, 10_000);
+            memoryRW.importProducts(database.getDerbyRW().searchProduct("*"));
+            databaseRW = memoryRW;
+        } else {
+            databaseRW = database.getDerbyRW();
+        }
+        trolleys = new ArrayList<>();
+        int trolleyCount = Math.max(1, catalogueSize / lines);
+        for (int t = 0; t < trolleyCount; t++) {
+            ArrayList<Product> trolley = new ArrayList<>();
+            for (int line = 0; line < lines; line++) {
+                int number = (t * lines + line) % catalogueSize + 1;
+                Product product = new Product(BenchmarkDatabase.productId(number), "", "", 1.0, 0);
+                product.setOrderedQuantity(1);
+                trolley.add(product);
+            }
+            trolleys.add(trolley);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (memoryRW != null) {
+            memoryRW.close();
+            try (Stream<Path> files = Files.walk(memoryDir)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        database.close();
+    }
+
+    @Benchmark
+    public Product searchByProductId() throws SQLException {
+        return databaseRW.searchByProductId(BenchmarkDatabase.productId(catalogueSize / 2));
+    }
+
+    @Benchmark
+    public ArrayList<Product> searchProductNameHit() throws SQLException {
+        return databaseRW.searchProduct("speaker");
+    }
+
+    @Benchmark
+    public ArrayList<Product> purchaseStocks() throws SQLException {
+        ArrayList<Product> trolley = trolleys.get(nextTrolley);
+        nextTrolley = (nextTrolley + 1) % trolleys.size();
+        return databaseRW.purchaseStocks(trolley); // the insufficient products, always empty here
+    }
+}
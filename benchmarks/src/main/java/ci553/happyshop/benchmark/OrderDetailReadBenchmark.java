@@ -0,0 +1,105 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.storageAccess.MappedOrderDetailStore;
+import ci553.happyshop.storageAccess.OrderFileManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the two ways a picker's order details can be read: the order file (OrderFileManager.readOrderFile,
+ * what FileOrderStore falls back to) and the memory-mapped copy (MappedOrderDetailStore).
+ *
+ * Both hold the same orders, written to a temporary folder at setup; the orders are read in turn, so
+ * every read is of a different order. The order files are in the OS file cache after the first reads,
+ * so the file read is measured at its best (no disk access, only the system calls and decoding).
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderDetailReadBenchmark {
+
+    @Param({"10000"})
+    public int orders;
+
+    @Param({"10"})
+    public int lines;
+
+    private Path dir;
+    private MappedOrderDetailStore details;
+    private int nextOrder = 0; // shared by all threads; a lost update only repeats an order
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("happyShopOrderBench");
+        details = new MappedOrderDetailStore(dir.resolve("orderDetails"), 4 << 20, orderId -> false);
+        for (int orderId = 1; orderId <= orders; orderId++) {
+            String orderDetail = orderDetail(orderId);
+            OrderFileManager.createOrderFile(dir, orderId, orderDetail);
+            details.put(orderId, orderDetail);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        details.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public String readOrderFile() throws IOException {
+        return OrderFileManager.readOrderFile(dir, nextOrderId());
+    }
+
+    @Benchmark
+    public String readMappedDetails() {
+        return details.get(nextOrderId());
+    }
+
+    private int nextOrderId() {
+        nextOrder = nextOrder % orders + 1;
+        return nextOrder;
+    }
+
+    // An order's text in the layout of Order.orderDetails()
+    private String orderDetail(int orderId) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Order ID: ").append(orderId).append(" \n")
+                .append("State: Ordered\n")
+                .append("OrderedDateTime: 2025-03-11 19:53:45 \n")
+                .append("ProgressingDateTime: \n")
+                .append("CollectedDateTime: \n")
+                .append("Items:\n");
+        for (int line = 1; line <= lines; line++) {
+            sb.append(String.format(" %-6s  %-18s ( %d) £ %7.2f%n", BenchmarkDatabase.productId(line), "Product " + line, line, line * 1.5));
+        }
+        sb.append("--------------------------------------------\n")
+                .append(String.format(" Total %29s £ %7.2f%n", "", lines * 7.5));
+        return sb.toString();
+    }
+}
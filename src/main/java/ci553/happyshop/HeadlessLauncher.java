@@ -0,0 +1,28 @@
+package ci553.happyshop;
+
+import ci553.happyshop.headless.HeadlessConsole;
+import ci553.happyshop.headless.HeadlessRuntime;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+/**
+ * The HeadlessLauncher starts the system without any windows and without the JavaFX toolkit,
+ * for a server or batch job. It starts a HeadlessRuntime (database, OrderHub, order files) and then
+ * reads commands from the standard input (see HeadlessConsole), eg:
+ *
+ *     echo "checkout 0001x2 0004" | java ... ci553.happyshop.HeadlessLauncher
+ *
+ * Run SetOrderFileSystem and SetDatabase once beforehand, as for the Launcher.
+ */
+
+public class HeadlessLauncher {
+    public static void main(String[] args) throws Exception {
+        HeadlessRuntime runtime = new HeadlessRuntime();
+        runtime.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(runtime::stop, "HeadlessRuntime-stop")); // also on Ctrl+C
+        new HeadlessConsole(runtime, new BufferedReader(new InputStreamReader(System.in)), System.out).run();
+        runtime.stop();
+        System.exit(0); // the OrderHub cleanup and connection pool threads must not keep the JVM alive
+    }
+}
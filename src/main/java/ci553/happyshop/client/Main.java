@@ -10,8 +10,12 @@ import ci553.happyshop.client.picker.PickerView;
 
 import ci553.happyshop.client.warehouse.*;
 import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.orderManagement.CheckoutService;
+import ci553.happyshop.orderManagement.StockReservationManager;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.OrderStoreFactory;
 import javafx.application.Application;
 import javafx.stage.Stage;
 import java.io.IOException;
@@ -39,9 +43,13 @@ public class Main extends Application {
         launch(args); // Launches the JavaFX application and calls the @Override start()
     }
 
+    private static boolean stopped = false;
+
     //starts the system
     @Override
     public void start(Stage window) throws IOException {
+        // EmergencyExit ends the JVM with System.exit(), which skips stop(), so the stores are closed by a hook too
+        Runtime.getRuntime().addShutdownHook(new Thread(Main::closeStores, "Main-closeStores"));
         startCustomerClient();
         startEmergencyExit();
 
@@ -73,7 +81,11 @@ public class Main extends Application {
         cusController.cusModel = cusModel;
         cusModel.cusView = cusView;
         cusModel.databaseRW = databaseRW;
+        cusModel.asyncDatabaseRW = new AsyncDatabaseRW(databaseRW);
+        cusModel.checkoutService = new CheckoutService(databaseRW);
+        cusModel.reservationManager = StockReservationManager.getReservationManager();
         cusView.start(new Stage());
+        cusModel.registerForStockChanges(); // refresh the shown stock when any client changes it
 
         //RemoveProductNotifier removeProductNotifier = new RemoveProductNotifier();
         //removeProductNotifier.cusView = cusView;
@@ -113,6 +125,24 @@ public class Main extends Application {
         orderHub.initializeOrderMap();
     }
 
+    //stops the system once the last window is closed
+    @Override
+    public void stop() {
+        closeStores();
+    }
+
+    //Closes the database, the order map log (with a final snapshot) and the order store, like the headless runtime
+    //does, so the next start does not have to replay or scan anything. Runs once, from stop() or the shutdown hook.
+    private static synchronized void closeStores() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        DatabaseRWFactory.shutdown();
+        OrderHub.getOrderHub().closeOrderMapLog();
+        OrderStoreFactory.shutdown();
+    }
+
     /** The Warehouse GUI- for warehouse staff to manage stock
      * Initializes the Warehouse client's Model, View, and Controller,and links them together for communication.
      * It also creates the DatabaseRW instance via the DatabaseRWFactory and injects it into the Model.
@@ -133,6 +163,7 @@ public class Main extends Application {
         controller.model = model;
         model.view = view;
         model.databaseRW = databaseRW;
+        model.asyncDatabaseRW = new AsyncDatabaseRW(databaseRW);
         view.start(new Stage());
 
         //create dependent views that need window info
@@ -144,6 +175,7 @@ public class Main extends Application {
         model.alertSimulator = alertSimulator;
         historyWindow.warehouseView = view;
         alertSimulator.warehouseView = view;
+        model.registerForStockChanges(); // refresh the search results when any client changes a product
     }
 
     //starts the EmergencyExit GUI, - used to close the entire application immediatelly
@@ -1,5 +1,8 @@
 package ci553.happyshop.client.customer;
 
+import ci553.happyshop.orderManagement.CheckoutService;
+import ci553.happyshop.orderManagement.StockReservationManager;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
 import javafx.application.Application;
@@ -35,7 +38,11 @@ public class CustomerClient extends Application {
         cusController.cusModel = cusModel;
         cusModel.cusView = cusView;
         cusModel.databaseRW = databaseRW;
+        cusModel.asyncDatabaseRW = new AsyncDatabaseRW(databaseRW);
+        cusModel.checkoutService = new CheckoutService(databaseRW);
+        cusModel.reservationManager = StockReservationManager.getReservationManager();
         cusView.start(window);
+        cusModel.registerForStockChanges(); // refresh the shown stock when any client changes it
 
         //RemoveProductNotifier removeProductNotifier = new RemoveProductNotifier();
         //removeProductNotifier.cusView = cusView;
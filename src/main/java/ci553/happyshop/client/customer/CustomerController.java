@@ -41,6 +41,16 @@ public class CustomerController {
 
     }
 
+    // called as the user types in the search box, to show type-ahead suggestions
+    public void doSuggest(String typedText) throws SQLException {
+        cusModel.suggest(typedText);
+    }
+
+    // called when the user scrolls to the end of the product list, to fetch the next page of results
+    public void doLoadMore() throws SQLException {
+        cusModel.loadMoreResults();
+    }
+
     public String CheckAvailStock(Product product) {
         return cusModel.checkStock(product);
     }
@@ -2,10 +2,18 @@ package ci553.happyshop.client.customer;
 
 import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRW;
-import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.ProductPager;
+import ci553.happyshop.storageAccess.StockChange;
+import ci553.happyshop.orderManagement.CheckoutResult;
+import ci553.happyshop.orderManagement.CheckoutService;
+import ci553.happyshop.orderManagement.StockReservationManager;
 import ci553.happyshop.utility.StorageLocation;
 import ci553.happyshop.utility.ProductListFormatter;
+import ci553.happyshop.utility.Logger;
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.collections.FXCollections;
 
@@ -14,15 +22,25 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * You can either directly modify the CustomerModel class to implement the required tasks,
  * or create a subclass of CustomerModel and override specific methods where appropriate.
  */
 public class CustomerModel {
+    private static final Logger log = Logger.getLogger(CustomerModel.class);
     public CustomerView cusView;
     public DatabaseRW databaseRW; //Interface type, not specific implementation
     //Benefits: Flexibility: Easily change the database implementation.
+    public AsyncDatabaseRW asyncDatabaseRW; //runs the databaseRW calls on virtual threads, so the window never freezes
+    public CheckoutService checkoutService; //the checkout rules, shared with the headless load generator
+    public StockReservationManager reservationManager; //holds stock for the trolley until checkout (none if null)
+
+    private static final AtomicInteger trolleyCount = new AtomicInteger();
+    private final String trolleyId = "trolley-" + trolleyCount.incrementAndGet(); // names this trolley's holds
 
     private Product theProduct = null; // product found from search
     private final ArrayList<Product> trolley = new ArrayList<>(); // a list of products in trolley
@@ -33,22 +51,46 @@ public class CustomerModel {
     private String displayTaTrolley = "";                                // Text area content showing current trolley items (Trolley Page)
     private String displayTaReceipt = "";                                // Text area content showing receipt after checkout (Receipt Page)
 
+    private static final int MAX_SUGGESTIONS = 8; // how many type-ahead suggestions to show under the search box
+    private static final int PAGE_SIZE = 20;      // how many search results are fetched at a time
+    private ProductPager pager = null;            // fetches further pages of the current name search as the user scrolls
+
+    // Database calls run in the background (see AsyncDatabaseRW) and their results are shown with Platform.runLater.
+    // A newer search or keystroke cancels the pending one, so a slow, outdated result never overwrites a newer one.
+    private CompletableFuture<Void> pendingSearch = null;     // the search or next page being fetched
+    private CompletableFuture<Void> pendingSuggestion = null; // the type-ahead suggestions being fetched
+    private boolean checkoutInProgress = false;               // the trolley must not change while it is being bought
+
     //SELECT productID, description, image, unitPrice,inStock quantity
     void search() throws SQLException {
         String input = cusView.tfSearch.getText().trim();
-
-
-        ArrayList<Product> results = new ArrayList<>();
+        cancelPending(pendingSuggestion); // the search replaces any suggestions still on their way
+        cancelPending(pendingSearch);     // and any older search still running
+        pager = null;
 
         if (!input.isEmpty()) {
+            CompletableFuture<ArrayList<Product>> results;
             if (input.matches("\\d+")) {
-                Product p = databaseRW.searchByProductId(input);
-                if (p != null) {
-                    results.add(p);
-                }
+                results = asyncDatabaseRW.searchByProductId(input).thenApply(p -> {
+                    ArrayList<Product> found = new ArrayList<>();
+                    if (p != null) {
+                        found.add(p);
+                    }
+                    return found;
+                });
             } else {
-                results = databaseRW.searchProduct(input);
+                // only the first page is fetched now, the rest follows as the user scrolls (see loadMoreResults)
+                pager = new ProductPager(databaseRW, input, PAGE_SIZE);
+                results = asyncDatabaseRW.nextPage(pager);
             }
+            pendingSearch = results.handleAsync((found, error) -> {
+                if (error != null) {
+                    showDatabaseError("Search failed", error);
+                } else {
+                    showSearchResults(input, found);
+                }
+                return null;
+            }, Platform::runLater);
 //        if (!productId.isEmpty()) {
 //            theProduct = databaseRW.searchByProductId(productId); //search database
 //            if (theProduct != null && theProduct.getStockQuantity() > 0) {
@@ -61,14 +103,22 @@ public class CustomerModel {
 //                displayLaSearchResult = baseInfo + quantityInfo;
 //                System.out.println(displayLaSearchResult);
 //            } else {
-            theProduct = null;
-            displayLaSearchResult = "No Product was found with ID " + input;
-            System.out.println("No Product was found with ID " + input);
         }
         else {
             theProduct = null;
             displayLaSearchResult = "Please type ProductID";
-            System.out.println("Please type ProductID.");
+            log.debug("Empty search");
+            cusView.updateObservableProductList(FXCollections.observableArrayList());
+            updateView();
+        }
+    }
+
+    // Runs on the JavaFX application thread once the first page of results has arrived.
+    private void showSearchResults(String input, ArrayList<Product> results) {
+        theProduct = null;
+        if (results.isEmpty()) {
+            displayLaSearchResult = "No Product was found with ID " + input;
+            log.debug("No product found", "keyword", input);
         }
         ObservableList<Product> observable =
                 FXCollections.observableArrayList(results);
@@ -77,9 +127,79 @@ public class CustomerModel {
         updateView();
     }
 
+    // Called when the last product of the list is shown: appends the next page of the current search, if any.
+    // Only one page is fetched at a time; the next one is requested when the new last product is shown.
+    void loadMoreResults() throws SQLException {
+        if (pager == null || !pager.hasNextPage() || (pendingSearch != null && !pendingSearch.isDone())) {
+            return;
+        }
+        pendingSearch = asyncDatabaseRW.nextPage(pager).handleAsync((moreProducts, error) -> {
+            if (error != null) {
+                showDatabaseError("Loading more products failed", error);
+            } else {
+                cusView.appendToObservableProductList(moreProducts);
+            }
+            return null;
+        }, Platform::runLater);
+    }
+
+    // Type-ahead: suggests products whose ID, name or a word of the name starts with what the user has typed so far.
+    // Suggestions come from an in-memory sorted word index, so this is cheap enough to run on every keystroke.
+    // Each keystroke cancels the suggestions still pending for the previous one.
+    void suggest(String typedText) throws SQLException {
+        cancelPending(pendingSuggestion);
+        String input = typedText.trim();
+        if (input.isEmpty() || input.equals("*")) {
+            cusView.showSuggestions(new ArrayList<>());
+            return;
+        }
+        pendingSuggestion = asyncDatabaseRW.suggestProducts(input, MAX_SUGGESTIONS).handleAsync((suggestions, error) -> {
+            if (error != null) {
+                log.warn("Suggestions failed", AsyncDatabaseRW.causeOf(error));
+                suggestions = new ArrayList<>();
+            }
+            cusView.showSuggestions(suggestions);
+            return null;
+        }, Platform::runLater);
+    }
+
+    // Cancelling a pending call means its result is thrown away and never shown.
+    private static void cancelPending(CompletableFuture<Void> pending) {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+    private void showDatabaseError(String what, Throwable error) {
+        Throwable cause = AsyncDatabaseRW.causeOf(error);
+        log.error(what, cause);
+        displayLaSearchResult = what + ": " + cause.getMessage();
+        updateView();
+    }
+
+    // True (with a message to the customer) while a checkout is running, when the trolley must not be changed.
+    private boolean isCheckoutInProgress() {
+        if (checkoutInProgress) {
+            displayLaSearchResult = "Please wait, your order is being processed";
+            updateView();
+        }
+        return checkoutInProgress;
+    }
+
     void addToTrolley(Product productChosen) {
+        if (isCheckoutInProgress()) return;
         theProduct = productChosen;
         if (theProduct != null) {
+            // hold one more unit for this trolley, unless the rest of the stock is held by other trolleys.
+            // If the line's hold has expired (fully or after some units were bought elsewhere), the whole line is held again.
+            if (reservationManager != null && !reservationManager.reserve(trolleyId, theProduct, unitsToHoldForOneMore(theProduct))) {
+                int heldByOthers = reservationManager.getHeldByOthers(trolleyId, theProduct.getProductId());
+                displayLaSearchResult = String.format("Sorry, no more %s available right now (%d in stock, %d in other trolleys)",
+                        theProduct.getProductDescription(), theProduct.getStockQuantity(), heldByOthers);
+                log.debug("Reservation refused", "productId", theProduct.getProductId(), "heldByOthers", heldByOthers);
+                updateView();
+                return;
+            }
 
             boolean prodExist = false; // used to state if item is within the trolley already, default = false
 
@@ -101,91 +221,148 @@ public class CustomerModel {
             displayTaTrolley = ProductListFormatter.buildString(trolley); //build a String for trolley so that we can show it
         } else {
             displayLaSearchResult = "Please search for an available product before adding it to the trolley";
-            System.out.println("must search and get an available product before add to trolley");
+            log.debug("Add to trolley without a product");
         }
         displayTaReceipt = ""; // Clear receipt to switch back to trolleyPage (receipt shows only when not empty)
         updateView();
     }
 
+    // The units to reserve when one more of the product is added: one, plus any units of its trolley line
+    // that are no longer held because the hold expired while the trolley was left alone
+    private int unitsToHoldForOneMore(Product product) {
+        int inTrolley = 0;
+        for (Product line : trolley) {
+            if (line.getProductId().equals(product.getProductId())) {
+                inTrolley = line.getOrderedQuantity();
+                break;
+            }
+        }
+        int held = reservationManager.getHeld(trolleyId, product.getProductId());
+        return Math.max(inTrolley - held, 0) + 1;
+    }
+
     void RemoveFromTrolley(Product chosenProduct) {
-        if (chosenProduct == null) return;
+        if (chosenProduct == null || isCheckoutInProgress()) return;
 
-        int newQty = chosenProduct.getOrderedQuantity() - 1;
-        chosenProduct.setOrderedQuantity(Math.max(newQty, 0)); // never below 0
+        // find the trolley line by ID: the list may show a newer copy of the product (see applyStockChanges)
+        Product line = null;
+        for (Product product : trolley) {
+            if (product.getProductId().equals(chosenProduct.getProductId())) {
+                line = product;
+                break;
+            }
+        }
+        if (line == null) return; // not in the trolley
+
+        int newQty = line.getOrderedQuantity() - 1;
+        line.setOrderedQuantity(Math.max(newQty, 0)); // never below 0
+        if (reservationManager != null) {
+            reservationManager.release(trolleyId, line.getProductId(), 1);
+        }
 
         // If quantity reaches 0, remove the product from the trolley
-        if (chosenProduct.getOrderedQuantity() == 0) {
-            trolley.remove(chosenProduct);
+        if (line.getOrderedQuantity() == 0) {
+            trolley.remove(line);
         }
         displayTaTrolley = ProductListFormatter.buildString(trolley);
         updateView();
     }
 
+    // The stock is bought and the order made in the background (OrderHub writes the order, and the picker and
+    // tracker windows show it on the JavaFX application thread); completeCheckOut() then shows the outcome.
     void checkOut() throws IOException, SQLException {
+        if (isCheckoutInProgress()) return;
         if (!trolley.isEmpty()) {
             // Group the products in the trolley by productId to optimize stock checking
             // Check the database for sufficient stock for all products in the trolley.
             // If any products are insufficient, the update will be rolled back.
             // If all products are sufficient, the database will be updated, and insufficientProducts will be empty.
-            // Note: If the trolley is already organized (merged and sorted), grouping is unnecessary.
-            //ArrayList<Product> groupedTrolley= groupProductsById(trolley);
             trolley.sort(Comparator.comparing(Product::getProductId)); // sorts list by productID for picker
-            ArrayList<Product> insufficientProducts = databaseRW.purchaseStocks(trolley);
-
-            if (insufficientProducts.isEmpty()) { // If stock is sufficient for all products
-                //get OrderHub and tell it to make a new Order
-                OrderHub orderHub = OrderHub.getOrderHub();
-                Order theOrder = orderHub.newOrder(trolley);
-                trolley.clear();
-                displayTaTrolley = "";
-                displayTaReceipt = String.format(
-                        "Order_ID: %s\nOrdered_Date_Time: %s\n%s",
-                        theOrder.getOrderId(),
-                        theOrder.getOrderedDateTime(),
-                        ProductListFormatter.buildString(theOrder.getProductList())
-                );
-                System.out.println(displayTaReceipt);
-            } else { // Some products have insufficient stock — build an error message to inform the customer
-                StringBuilder errorMsg = new StringBuilder();
-                for (Product p : insufficientProducts) {
-                    errorMsg.append("• ").append(p.getProductId()).append(", ")
-                            .append(p.getProductDescription()).append(" (Only ")
-                            .append(p.getStockQuantity()).append(" available, ")
-                            .append(p.getOrderedQuantity()).append(" requested)\n");
+            ArrayList<Product> groupedTrolley = CheckoutService.groupProductsById(trolley);
+            checkoutInProgress = true;
+            asyncDatabaseRW.purchaseStocks(groupedTrolley).thenApplyAsync(insufficientProducts -> {
+                if (!insufficientProducts.isEmpty()) {
+                    return new CheckoutResult(null, insufficientProducts);
+                }
+                try {
+                    //tell OrderHub (through the checkout service) to make a new Order
+                    return new CheckoutResult(checkoutService.placeOrder(groupedTrolley), insufficientProducts);
+                } catch (IOException | SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, AsyncDatabaseRW.getExecutor()).handleAsync((result, error) -> {
+                checkoutInProgress = false;
+                if (error != null) {
+                    showDatabaseError("Checkout failed, please try again", error);
+                    return null;
                 }
-                theProduct = null;
-
-                for (Product p : insufficientProducts) {
-                    // Go through each product that doesn't have enough stock
-                    for (int i = 0; i < trolley.size(); i++) {
-                        Product t = trolley.get(i);
-                        if (t.getProductId().equals(p.getProductId())) {
-                            trolley.remove(i); // remove from trolley
-                            displayTaTrolley = ProductListFormatter.buildString(trolley);
-                            break; // stop
+                completeCheckOut(groupedTrolley, result);
+                return null;
+            }, Platform::runLater);
+        } else {
+            displayTaTrolley = "Your trolley is empty";
+            log.debug("Checkout with an empty trolley");
+            updateView();
+        }
+    }
+
+    // Runs on the JavaFX application thread once the stock has been bought and the order made, or refused.
+    private void completeCheckOut(ArrayList<Product> groupedTrolley, CheckoutResult result) {
+        ArrayList<Product> insufficientProducts = result.getInsufficientProducts();
+        if (result.isSuccessful()) { // If stock is sufficient for all products
+            Order theOrder = result.getOrder();
+            if (reservationManager != null) {
+                reservationManager.convert(trolleyId, groupedTrolley); // the held stock is now bought
+            }
+            trolley.clear();
+            displayTaTrolley = "";
+            displayTaReceipt = String.format(
+                    "Order_ID: %s\nOrdered_Date_Time: %s\n%s",
+                    theOrder.getOrderId(),
+                    theOrder.getOrderedDateTime(),
+                    ProductListFormatter.buildString(theOrder.getProductList())
+            );
+            log.info("Checkout complete", "orderId", theOrder.getOrderId(), "lines", theOrder.getProductList().size());
+        } else { // Some products have insufficient stock — build an error message to inform the customer
+            StringBuilder errorMsg = new StringBuilder();
+            for (Product p : insufficientProducts) {
+                errorMsg.append("• ").append(p.getProductId()).append(", ")
+                        .append(p.getProductDescription()).append(" (Only ")
+                        .append(p.getStockQuantity()).append(" available, ")
+                        .append(p.getOrderedQuantity()).append(" requested)\n");
+            }
+            theProduct = null;
+
+            for (Product p : insufficientProducts) {
+                // Go through each product that doesn't have enough stock
+                for (int i = 0; i < trolley.size(); i++) {
+                    Product t = trolley.get(i);
+                    if (t.getProductId().equals(p.getProductId())) {
+                        trolley.remove(i); // remove from trolley
+                        if (reservationManager != null) {
+                            reservationManager.release(trolleyId, p.getProductId(), Integer.MAX_VALUE);
                         }
+                        displayTaTrolley = ProductListFormatter.buildString(trolley);
+                        break; // stop
                     }
                 }
-                // 2. Trigger a message window to notify the customer about the insufficient stock, rather than directly changing displayLaSearchResult.
-                //You can use the provided RemoveProductNotifier class and its showRemovalMsg method for this purpose.
-                //remember close the message window where appropriate (using method closeNotifierWindow() of RemoveProductNotifier class)
-                RemoveProductNotifier notifier = new RemoveProductNotifier();
-                notifier.cusView = this.cusView;      // <--- assign the main CustomerView
-                notifier.showRemovalMsg(errorMsg.toString());
+            }
+            // 2. Trigger a message window to notify the customer about the insufficient stock, rather than directly changing displayLaSearchResult.
+            //You can use the provided RemoveProductNotifier class and its showRemovalMsg method for this purpose.
+            //remember close the message window where appropriate (using method closeNotifierWindow() of RemoveProductNotifier class)
+            RemoveProductNotifier notifier = new RemoveProductNotifier();
+            notifier.cusView = this.cusView;      // <--- assign the main CustomerView
+            notifier.showRemovalMsg(errorMsg.toString());
 
 // Build a simple message to display
-                StringBuilder message = new StringBuilder("The following products were removed because there is not enough stock:\n");
-                for (Product p : insufficientProducts) {
-                    message.append("- ").append(p.getProductId()).append(": ").append(p.getProductDescription()).append(" (Only ").append(p.getStockQuantity()).append(" left, ").append(p.getOrderedQuantity()).append(" requested)\n");
-                }
-                notifier.showRemovalMsg(message.toString());
-
-                //displayLaSearchResult = "Checkout failed due to insufficient stock for the following products:\n" + errorMsg.toString();
-                System.out.println("stock is not enough");
+            StringBuilder message = new StringBuilder("The following products were removed because there is not enough stock:\n");
+            for (Product p : insufficientProducts) {
+                message.append("- ").append(p.getProductId()).append(": ").append(p.getProductDescription()).append(" (Only ").append(p.getStockQuantity()).append(" left, ").append(p.getOrderedQuantity()).append(" requested)\n");
             }
-        } else {
-            displayTaTrolley = "Your trolley is empty";
-            System.out.println("Your trolley is empty");
+            notifier.showRemovalMsg(message.toString());
+
+            //displayLaSearchResult = "Checkout failed due to insufficient stock for the following products:\n" + errorMsg.toString();
+            log.info("Checkout failed, stock is not enough", "insufficient", insufficientProducts.size());
         }
         updateView();
     }
@@ -197,10 +374,14 @@ public class CustomerModel {
 
 
     void cancel() {
+        if (isCheckoutInProgress()) return;
 
         for (Product p : trolley) {
             p.setOrderedQuantity(0);
         }
+        if (reservationManager != null) {
+            reservationManager.releaseAll(trolleyId);
+        }
 
         trolley.clear();
         displayTaTrolley = "";
@@ -218,7 +399,7 @@ public class CustomerModel {
             // Get the full absolute path to the image
             Path imageFullPath = Paths.get(relativeImageUrl).toAbsolutePath();
             imageName = imageFullPath.toUri().toString(); //get the image full Uri then convert to String
-            System.out.println("Image absolute path: " + imageFullPath); // Debugging to ensure path is correct
+            log.debug("Image absolute path", "path", imageFullPath); // Debugging to ensure path is correct
 
         } else {
             imageName = "imageHolder.jpg";
@@ -253,27 +434,27 @@ public class CustomerModel {
             case 1:
                 // sorts list so new item is in correct place - by productID
                 trolley.sort(Comparator.comparing(Product::getProductId));
-                System.out.println("Trolley sorted by Product ID.");
+                log.debug("Trolley sorted", "by", "productId");
 
                 break;
 
             case 2:
                 // sorts list so new item is in correct place - by productName
                 trolley.sort(Comparator.comparing(Product::getProductDescription));
-                System.out.println("Trolley sorted by Product Name.");
+                log.debug("Trolley sorted", "by", "name");
                 break;
 
             case 3:
                 // sorts list so new item is in correct place - by total product price (prod price x quantity) low to high
                 trolley.sort(Comparator.comparingDouble(Product -> Product.getUnitPrice() * Product.getOrderedQuantity()));
-                System.out.println("Trolley sorted by Total Product Price.");
+                log.debug("Trolley sorted", "by", "totalPriceAscending");
                 break;
             case 4:
                 // sorts list so new item is in correct place - by total product price (prod price x quantity) high to low
                 Comparator<Product> comparator = Comparator.comparingDouble(p -> p.getUnitPrice() * p.getOrderedQuantity());
                 comparator = comparator.reversed();
                 trolley.sort(comparator);
-                System.out.println("Trolley sorted by Total Product Price.");
+                log.debug("Trolley sorted", "by", "totalPriceDescending");
                 break;
         }
         displayTaTrolley = ProductListFormatter.buildString(trolley);
@@ -285,10 +466,42 @@ public class CustomerModel {
 //        }
     }
 
+    // Subscribes to the product changes made by every client, so the stock shown stays current without a new search
+    public void registerForStockChanges() {
+        DatabaseRWFactory.getStockChangePublisher().subscribe(this::stockChanged);
+    }
+
+    // Runs on the publisher's thread; the changes are applied on the JavaFX application thread
+    private void stockChanged(List<StockChange> changes) {
+        Platform.runLater(() -> applyStockChanges(changes));
+    }
+
+    // Refreshes the changed products in the search results and the trolley in place, and drops deleted ones
+    // from the results. Each refreshed product is a new copy, keeping the quantity already in the trolley.
+    private void applyStockChanges(List<StockChange> changes) {
+        HashMap<String, Product> latest = new HashMap<>(); // productId -> new copy, or null if deleted
+        for (StockChange change : changes) {
+            Product p = change.getProduct();
+            latest.put(change.getProductId(), p == null ? null : new Product(p.getProductId(),
+                    p.getProductDescription(), p.getProductImageName(), p.getUnitPrice(), p.getStockQuantity()));
+        }
+        if (!checkoutInProgress) { // the trolley must not change while it is being bought
+            for (int i = 0; i < trolley.size(); i++) {
+                Product fresh = latest.get(trolley.get(i).getProductId());
+                if (fresh != null) {
+                    fresh.setOrderedQuantity(trolley.get(i).getOrderedQuantity());
+                    trolley.set(i, fresh);
+                }
+            }
+        }
+        cusView.replaceProducts(latest);
+        log.debug("Stock changes shown", "products", changes.size());
+    }
+
     public String checkStock(Product currentproduct) {
 
         int productStock = currentproduct.getStockQuantity();
-        System.out.println("STOCK QUANTITY: " + productStock);
+        log.debug("Stock checked", "productId", currentproduct.getProductId(), "stock", productStock);
 
         String stockMessage;
 
@@ -5,10 +5,12 @@ import ci553.happyshop.utility.StorageLocation;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
 import ci553.happyshop.utility.WindowBounds;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -25,6 +27,8 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -47,6 +51,8 @@ public class CustomerView {
     private VBox vbReceiptPage;
 
     TextField tfSearch; //for user input on the search page. Made accessible so it can be accessed or modified by CustomerModel
+    private ContextMenu cmSuggestions; //type-ahead suggestions shown under tfSearch while the user types
+    private boolean isSettingSearchText = false; //true while a chosen suggestion is copied into tfSearch, so it is not suggested again
 
     //four controllers needs updating when program going on
     private ImageView ivProduct; //image area in searchPage
@@ -101,8 +107,21 @@ public class CustomerView {
         tfSearch.setPromptText("eg. 0001 / TV | * to see all");
         tfSearch.setStyle(UIStyle.textFiledStyle);
 
+        cmSuggestions = new ContextMenu();
+        tfSearch.textProperty().addListener((observable, oldText, newText) -> {
+            if (isSettingSearchText) {
+                return;
+            }
+            try {
+                cusController.doSuggest(newText); //suggest products as the user types
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
         tfSearch.setOnAction(actionEvent -> {
             try {
+                cmSuggestions.hide();
                 cusController.doAction("\uD83D\uDD0D");  //pressing enter can also do search
             } catch (SQLException | IOException e) {
                 throw new RuntimeException(e);
@@ -205,6 +224,18 @@ public class CustomerView {
                     HBox hbox = new HBox(10, ivPro, ProSting, spacer, btnAdd, btnSub); // Put ImageView and label in a horizontal layout
                     setGraphic(hbox);  // Set the whole row content
 
+                    // The last product has scrolled into view: fetch the next page of results.
+                    // runLater, because the list must not be changed while it is laying out its cells.
+                    if (getIndex() == getListView().getItems().size() - 1) {
+                        Platform.runLater(() -> {
+                            try {
+                                cusController.doLoadMore();
+                            } catch (SQLException ex) {
+                                throw new RuntimeException(ex);
+                            }
+                        });
+                    }
+
                 }
             }
         });
@@ -315,6 +346,54 @@ public class CustomerView {
 
     }
 
+    // Shows the type-ahead suggestions under the search box. Choosing one searches for that product by its ID.
+    public void showSuggestions(List<Product> suggestions) {
+        if (suggestions.isEmpty()) {
+            cmSuggestions.hide();
+            return;
+        }
+        cmSuggestions.getItems().clear();
+        for (Product product : suggestions) {
+            MenuItem item = new MenuItem(product.getProductId() + "  " + product.getProductDescription());
+            item.setOnAction(e -> {
+                isSettingSearchText = true;
+                tfSearch.setText(product.getProductId());
+                tfSearch.positionCaret(tfSearch.getText().length());
+                isSettingSearchText = false;
+                cmSuggestions.hide();
+                try {
+                    cusController.doAction("Search");
+                } catch (SQLException | IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            cmSuggestions.getItems().add(item);
+        }
+        if (!cmSuggestions.isShowing()) {
+            cmSuggestions.show(tfSearch, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    // adds the next page of search results to the end of the product list, keeping the scroll position
+    public void appendToObservableProductList(List<Product> moreProducts) {
+        customerProductList.addAll(moreProducts);
+    }
+
+    // refreshes the changed products of the list in place: each is replaced by its new copy, or removed if it is null
+    public void replaceProducts(Map<String, Product> latest) {
+        for (int i = customerProductList.size() - 1; i >= 0; i--) {
+            String productId = customerProductList.get(i).getProductId();
+            if (latest.containsKey(productId)) {
+                Product fresh = latest.get(productId);
+                if (fresh == null) {
+                    customerProductList.remove(i);
+                } else {
+                    customerProductList.set(i, fresh);
+                }
+            }
+        }
+    }
+
     public void updateObservableProductList(ObservableList<Product> productList) {
         int proCounter = productList.size();
         System.out.println(proCounter);
@@ -1,5 +1,7 @@
 package ci553.happyshop.client.emergency;
 
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.utility.Logger;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
 import javafx.application.Platform;
@@ -14,6 +16,8 @@ import javafx.stage.Stage;
  * It is a singleton with static access, instantiation is restricted.
  */
 public class EmergencyExit {
+    private static final Logger log = Logger.getLogger(EmergencyExit.class);
+
     private final int WIDTH = UIStyle.EmergencyExitWinWidth;
     private final int HEIGHT = UIStyle.EmergencyExitWinHeight;
     private static EmergencyExit emergencyExit;
@@ -36,6 +40,8 @@ public class EmergencyExit {
         Button btnExit = new Button();
         btnExit.setGraphic(ivExit);
         btnExit.setOnAction(event -> {
+            log.info(DatabaseRWFactory.getMetricsRegistry().dump()); // final metrics, for the record
+            Logger.flush(1000); // printed before the JVM goes
             Platform.exit(); // Gracefully exit JavaFX
             System.exit(0);//forcefully shut down JVM (in case there are non-JavaFX threads)
         });
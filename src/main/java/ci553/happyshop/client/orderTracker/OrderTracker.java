@@ -4,6 +4,7 @@ import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.orderManagement.OrderState;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
@@ -80,7 +81,9 @@ public class OrderTracker {
             sb.append(orderId).append(" ".repeat(5)).append(orderState).append("\n");
         }
         String textDisplay = sb.toString();
-        taDisplay.setText(textDisplay);
+        // OrderHub notifies from the thread that changed the order map (eg a checkout or a picker running
+        // in the background), so the TextArea is changed on the JavaFX application thread
+        Platform.runLater(() -> taDisplay.setText(textDisplay));
     }
 
 }
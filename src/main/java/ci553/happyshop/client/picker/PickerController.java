@@ -1,14 +1,44 @@
 package ci553.happyshop.client.picker;
 
+import ci553.happyshop.utility.Logger;
+
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Claiming and collecting an order read and move order files while holding the OrderHub's lock, so the
+ * PickerController runs them on its own background thread instead of the JavaFX application thread.
+ * One thread per picker keeps the picker's clicks in order; PickerModel shows the results with Platform.runLater.
+ */
 
 public class PickerController {
+    private static final Logger log = Logger.getLogger(PickerController.class);
     public PickerModel pickerModel;
 
-    public void doProgressing() throws IOException {
-        pickerModel.doProgressing();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PickerController");
+        thread.setDaemon(true); // must not keep the JVM alive after the windows are closed
+        return thread;
+    });
+
+    public void doProgressing() {
+        worker.execute(() -> {
+            try {
+                pickerModel.doProgressing();
+            } catch (IOException e) {
+                log.error("Claiming an order failed", e);
+            }
+        });
     }
-    public void doCollected() throws IOException {
-        pickerModel.doCollected();
+
+    public void doCollected() {
+        worker.execute(() -> {
+            try {
+                pickerModel.doCollected();
+            } catch (IOException e) {
+                log.error("Collecting an order failed", e, "orderId", pickerModel.getOrderId());
+            }
+        });
     }
 }
@@ -2,6 +2,7 @@ package ci553.happyshop.client.picker;
 
 import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.orderManagement.OrderState;
+import javafx.application.Platform;
 
 import java.io.IOException;
 import java.util.Map;
@@ -37,6 +38,10 @@ import java.util.TreeSet;
  *
  * This ensures that all PickerModels stay in sync by only updating their local state
  * in response to centralized changes made by the OrderHub.
+ *
+ * Pickers may run on different threads (eg the simulated pickers of the load generator), so claiming and
+ * collecting an order happen while holding the OrderHub's lock, the same lock OrderHub holds while it calls
+ * setOrderMap(). A PickerModel may also run without a PickerView (pickerView left null).
  */
 
 public class PickerModel {
@@ -61,15 +66,17 @@ public class PickerModel {
      * Only the first unlocked order found will be processed.
      */
     public void doProgressing() throws IOException {
-        for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
-            int orderId = entry.getKey();
-            if (!isOrderLocked(orderId)) { // Find the first unlocked order
-                lockOrder(orderId);// Lock the order to prevent other pickers from taking it
-                theOrderId = orderId; // Save the assigned orderId to this picker and update its state
-                theOrderState = OrderState.Progressing;
-                notifyOrderHub();// Notify the OrderHub about the state change
-                updatePickerView(); // Refresh picker view
-                return; // Exit after handling one order
+        synchronized (orderHub) {
+            for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
+                int orderId = entry.getKey();
+                if (!isOrderLocked(orderId)) { // Find the first unlocked order
+                    lockOrder(orderId);// Lock the order to prevent other pickers from taking it
+                    theOrderId = orderId; // Save the assigned orderId to this picker and update its state
+                    theOrderState = OrderState.Progressing;
+                    notifyOrderHub();// Notify the OrderHub about the state change
+                    updatePickerView(); // Refresh picker view
+                    return; // Exit after handling one order
+                }
             }
         }
     }
@@ -95,16 +102,28 @@ public class PickerModel {
     }
 
     public void doCollected() throws IOException {
-        if(theOrderId!=0 && isOrderLocked(theOrderId)){
-            theOrderState = OrderState.Collected;
-            notifyOrderHub(); // Notify the OrderHub about the state change
-            displayTaOrderDetail = "";
-            updatePickerView(); // update picker view
-            theOrderId=0;  //reset to no order is with the picker
-            unlockOrder(theOrderId);//remove the order from locked orderId set
+        synchronized (orderHub) {
+            if(theOrderId!=0 && isOrderLocked(theOrderId)){
+                theOrderState = OrderState.Collected;
+                notifyOrderHub(); // Notify the OrderHub about the state change
+                displayTaOrderDetail = "";
+                updatePickerView(); // update picker view
+                unlockOrder(theOrderId);//remove the order from locked orderId set
+                theOrderId=0;  //reset to no order is with the picker
+            }
         }
     }
 
+    // The order this picker is preparing, 0 if none
+    public int getOrderId() {
+        return theOrderId;
+    }
+
+    // The details (items) of the order this picker is preparing, empty if none
+    public String getOrderDetail() {
+        return displayTaOrderDetail;
+    }
+
     // Registers this PickerModel instance with the OrderHub
     //so it can receive updates about orderMap changes.
     public void registerWithOrderHub(){
@@ -144,8 +163,14 @@ public class PickerModel {
         return sb.toString();
     }
 
+    // Called on the PickerController's thread or the thread OrderHub notifies from, so the view
+    // is updated on the JavaFX application thread, with the text as it is now
     private void updatePickerView()
     {
-        pickerView.update(displayTaOrderMap,displayTaOrderDetail);
+        if (pickerView != null) { // a headless picker has no view
+            String orderMapText = displayTaOrderMap;
+            String orderDetailText = displayTaOrderDetail;
+            Platform.runLater(() -> pickerView.update(orderMapText, orderDetailText));
+        }
     }
 }
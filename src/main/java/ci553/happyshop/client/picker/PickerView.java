@@ -9,7 +9,6 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.io.IOException;
 
 /**
  * The Order Picker window is for staff to prepare customer's order.
@@ -102,21 +101,18 @@ public class PickerView  {
     private void buttonClicked(ActionEvent event) {
         Button button = (Button) event.getSource();
         String btnText = button.getText();
-        try {
-            // Based on the button's text, performs the appropriate action and switches the displayed root.
-            switch (btnText) {
-                case "Progressing":
-                    scene.setRoot(vbOrderDetailRoot); // switch to OrderDetailRoot
-                    pickerController.doProgressing();
-                    break;
-
-                case "Customer Collected":
-                    pickerController.doCollected();
-                    scene.setRoot(vbOrderMapRoot); // switch back to orderMapRoot
-                    break;
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to handle button action: " + btnText, e);
+        // Based on the button's text, performs the appropriate action and switches the displayed root.
+        // The action runs in the background (see PickerController); update() shows its result.
+        switch (btnText) {
+            case "Progressing":
+                scene.setRoot(vbOrderDetailRoot); // switch to OrderDetailRoot
+                pickerController.doProgressing();
+                break;
+
+            case "Customer Collected":
+                pickerController.doCollected();
+                scene.setRoot(vbOrderMapRoot); // switch back to orderMapRoot
+                break;
         }
     }
 
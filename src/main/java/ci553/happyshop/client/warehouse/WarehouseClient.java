@@ -1,5 +1,6 @@
 package ci553.happyshop.client.warehouse;
 
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
 import javafx.application.Application;
@@ -36,6 +37,7 @@ public class WarehouseClient extends Application {
         controller.model = model;
         model.view = view;
         model.databaseRW = databaseRW;
+        model.asyncDatabaseRW = new AsyncDatabaseRW(databaseRW);
         view.start(window);
 
         HistoryWindow historyWindow = new HistoryWindow();
@@ -46,5 +48,6 @@ public class WarehouseClient extends Application {
         model.alertSimulator = alertSimulator;
         historyWindow.warehouseView = view;
         alertSimulator.warehouseView = view;
+        model.registerForStockChanges(); // refresh the search results when any client changes a product
     }
 }
@@ -31,4 +31,9 @@ public class WarehouseController {
                 break;
         }
     }
+
+    // called when the user scrolls to the end of the product list, to fetch the next page of results
+    void loadMore() throws SQLException {
+        model.doLoadMore();
+    }
 }
@@ -1,10 +1,16 @@
 package ci553.happyshop.client.warehouse;
 
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.ProductPager;
 import ci553.happyshop.storageAccess.DerbyRW;
 import ci553.happyshop.storageAccess.ImageFileManager;
+import ci553.happyshop.storageAccess.StockChange;
 import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.utility.Logger;
+import javafx.application.Platform;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -13,13 +19,22 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class WarehouseModel {
+    private static final Logger log = Logger.getLogger(WarehouseModel.class);
     public WarehouseView view;
     public DatabaseRW databaseRW; //Interface type, not specific implementation
+    public AsyncDatabaseRW asyncDatabaseRW; //runs searches on virtual threads, so the window never freezes
                          //Benefits: Flexibility: Easily change the database implementation.
 
     private ArrayList<Product> productList = new ArrayList<>(); // search results fetched from the database
+    private static final int PAGE_SIZE = 30; // how many search results are fetched at a time
+    private ProductPager pager = null;       // fetches further pages of the current search as the user scrolls
+    private CompletableFuture<Void> pendingSearch = null; // the search or next page being fetched
+    private CompletableFuture<Void> pendingChange = null; // the delete, edit or new product being saved
     private Product theSelectedPro; // the product selected from the ListView before the user edits or deletes
     private String theNewProId;
 
@@ -60,42 +75,140 @@ public class WarehouseModel {
         ShowInputErrorMsg
     }
 
+    // The search runs in the background (see AsyncDatabaseRW); its results are shown with Platform.runLater.
+    // A new search cancels the one still pending, so an outdated result never replaces a newer one.
     void doSearch() throws SQLException {
         String keyword = view.tfSearchKeyword.getText().trim();
+        if (pendingSearch != null) {
+            pendingSearch.cancel(false);
+        }
         if (!keyword.equals("")) {
-            productList = databaseRW.searchProduct(keyword);
+            // only the first page is fetched now, the rest follows as the user scrolls (see doLoadMore)
+            pager = new ProductPager(databaseRW, keyword, PAGE_SIZE);
+            pendingSearch = asyncDatabaseRW.nextPage(pager).handleAsync((firstPage, error) -> {
+                if (error != null) {
+                    log.error("Search failed", AsyncDatabaseRW.causeOf(error), "keyword", keyword);
+                    firstPage = new ArrayList<>();
+                }
+                productList = firstPage;
+                updateView(UpdateForAction.BtnSearch);
+                return null;
+            }, Platform::runLater);
         }
         else{
+            pager = null;
             productList.clear();
-            System.out.println("please type product ID or name to search");
+            log.debug("Empty search");
+            updateView(UpdateForAction.BtnSearch);
         }
-        updateView(UpdateForAction.BtnSearch);
     }
 
-    void doDelete() throws SQLException, IOException {
-        System.out.println("delete gets called in model");
-        Product pro  = view.obrLvProducts.getSelectionModel().getSelectedItem();
-        if (pro != null ) {
-            theSelectedPro = pro;
-            productList.remove(theSelectedPro); //remove the product from product List
+    // Called when the last product of the list is shown: appends the next page of the current search, if any.
+    // Only one page is fetched at a time; the next one is requested when the new last product is shown.
+    void doLoadMore() throws SQLException {
+        if (pager == null || !pager.hasNextPage() || (pendingSearch != null && !pendingSearch.isDone())) {
+            return;
+        }
+        pendingSearch = asyncDatabaseRW.nextPage(pager).handleAsync((nextPage, error) -> {
+            if (error != null) {
+                log.error("Loading more products failed", AsyncDatabaseRW.causeOf(error));
+                return null;
+            }
+            productList.addAll(nextPage);
+            view.appendToObservableProductList(nextPage, hasMoreResults());
+            return null;
+        }, Platform::runLater);
+    }
+
+    // Subscribes to the product changes made by every client (this one included), so the search results
+    // show the current stock and details without searching again
+    public void registerForStockChanges() {
+        DatabaseRWFactory.getStockChangePublisher().subscribe(this::stockChanged);
+    }
+
+    // Runs on the publisher's thread; the changes are applied on the JavaFX application thread
+    private void stockChanged(List<StockChange> changes) {
+        Platform.runLater(() -> applyStockChanges(changes));
+    }
+
+    // Replaces the changed products in the search results and removes deleted ones, leaving the rest as they are
+    private void applyStockChanges(List<StockChange> changes) {
+        HashMap<String, Product> latest = new HashMap<>(); // productId -> latest product, or null if deleted
+        for (StockChange change : changes) {
+            latest.put(change.getProductId(), change.getProduct());
+        }
+        for (int i = productList.size() - 1; i >= 0; i--) {
+            String productId = productList.get(i).getProductId();
+            if (latest.containsKey(productId)) {
+                Product fresh = latest.get(productId);
+                if (fresh == null) {
+                    productList.remove(i);
+                } else {
+                    productList.set(i, fresh);
+                }
+            }
+        }
+        view.replaceProducts(latest, hasMoreResults());
+        log.debug("Stock changes shown", "products", changes.size());
+    }
 
-            //update databse: delete the product from database
-            databaseRW.deleteProduct(theSelectedPro.getProductId());
+    private boolean hasMoreResults() {
+        return pager != null && pager.hasNextPage();
+    }
 
-            //delete the image from imageFolder "images/"
-            String imageName = theSelectedPro.getProductImageName(); //eg 0011.jpg;
-            ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName);
+    // True while a delete, edit or new product is being saved; the product forms wait for it to finish,
+    // so a second click does not save the same change twice
+    private boolean isChangePending() {
+        if (pendingChange != null && !pendingChange.isDone()) {
+            log.debug("A product change is still being saved");
+            return true;
+        }
+        return false;
+    }
 
-            updateView(UpdateForAction.BtnDelete);
-            theSelectedPro = null;
+    // Runs on the JavaFX application thread when saving a change failed: logged, and shown like an input error
+    private void showDatabaseError(String what, Throwable error) {
+        Throwable cause = AsyncDatabaseRW.causeOf(error);
+        log.error(what, cause);
+        displayInputErrorMsg = "\u2022 " + what + ": " + cause.getMessage();
+        updateView(UpdateForAction.ShowInputErrorMsg);
+    }
+
+    // The product is deleted from the database (and its image from the image folder) in the background,
+    // and taken out of the search results once that has succeeded.
+    void doDelete() throws SQLException, IOException {
+        log.debug("Delete called");
+        if (isChangePending()) return;
+        Product pro  = view.obrLvProducts.getSelectionModel().getSelectedItem();
+        if (pro != null ) {
+            String imageName = pro.getProductImageName(); //eg 0011.jpg;
+            pendingChange = asyncDatabaseRW.deleteProduct(pro.getProductId()).thenRunAsync(() -> {
+                //delete the image from imageFolder "images/", still in the background
+                try {
+                    ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName);
+                } catch (IOException e) {
+                    log.warn("Image of the deleted product not removed", "image", imageName);
+                }
+            }).handleAsync((done, error) -> {
+                if (error != null) {
+                    showDatabaseError("Delete failed", error);
+                    return null;
+                }
+                theSelectedPro = pro;
+                productList.remove(theSelectedPro); //remove the product from product List
+                updateView(UpdateForAction.BtnDelete);
+                theSelectedPro = null;
+                return null;
+            }, Platform::runLater);
         }
         else{
-            System.out.println("No product was selected");
+            log.debug("No product was selected");
         }
     }
 
     void doEdit() {
-        System.out.println("Edit gets called in model");
+        log.debug("Edit called");
+        if (isChangePending()) return;
         Product pro = view.obrLvProducts.getSelectionModel().getSelectedItem();
         if (pro != null) {
             theSelectedPro = pro;
@@ -108,11 +221,11 @@ public class WarehouseModel {
             Path imageFullPath = Paths.get(relativeImageUri).toAbsolutePath();
             displayImageUrlEdit = imageFullPath.toUri().toString();//build the full path Uri
 
-            System.out.println("get new pro image name: " + displayImageUrlEdit);
+            log.debug("Image of product to edit", "image", displayImageUrlEdit);
             updateView(UpdateForAction.BtnEdit);
         }
         else{
-            System.out.println("No product was selected");
+            log.debug("No product was selected");
         }
 
     }
@@ -128,6 +241,7 @@ public class WarehouseModel {
        }
     }
     void doSummit() throws SQLException, IOException {
+        if (isChangePending()) return;
         if(view.theProFormMode.equals("EDIT")){
             doSubmitEdit();
         }
@@ -137,10 +251,10 @@ public class WarehouseModel {
     }
 
     private void doSubmitEdit() throws IOException, SQLException {
-        System.out.println("ok edit is called");
+        log.debug("Submit edit called");
         if(theSelectedPro!=null) {
             String id=theSelectedPro.getProductId();
-            System.out.println("theSelectedPro " + id); //debug purpose
+            log.debug("Submitting edit", "productId", id); //debug purpose
             String imageName = theSelectedPro.getProductImageName();
 
             String textPrice =view.tfPriceEdit.getText().trim();
@@ -161,15 +275,20 @@ public class WarehouseModel {
             else{
                 double price = Double.parseDouble(textPrice);
                 int stock= Integer.parseInt(textStock);
-                //update datbase
-                databaseRW.updateProduct(id,description,price,imageName,stock);
-
-                updateView(UpdateForAction.BtnSummitEdit);
-                theSelectedPro=null;
+                //update datbase in the background, then reset the form on the JavaFX application thread
+                pendingChange = asyncDatabaseRW.updateProduct(id,description,price,imageName,stock).handleAsync((done, error) -> {
+                    if (error != null) {
+                        showDatabaseError("Saving the product failed", error);
+                        return null;
+                    }
+                    updateView(UpdateForAction.BtnSummitEdit);
+                    theSelectedPro=null;
+                    return null;
+                }, Platform::runLater);
             }
         }
         else{
-            System.out.println("No Product Selected");
+            log.debug("No product was selected");
         }
     }
 
@@ -212,32 +331,46 @@ public class WarehouseModel {
         return true;
     }
 
+    // Whether the ID is free is asked in the background; the input is then validated, and the product
+    // inserted in the background too, with the form reset on the JavaFX application thread.
     private void doSubmitNew() throws SQLException, IOException {
-        System.out.println("Adding new Pro in model");
+        log.debug("Submit new product called");
 
         //all info(input from user) about the new product
-        theNewProId = view.tfIdNewPro.getText().trim();
+        String newProId = view.tfIdNewPro.getText().trim();
         String textPrice = view.tfPriceNewPro.getText().trim();
         String textStock = view.tfStockNewPro.getText().trim();
         String description = view.taDescriptionNewPro.getText().trim();
         String iPath = view.imageUriNewPro; //image Path from the imageChooser in View class
 
-        //validate input
-        if (validateInputNewProChild(theNewProId, textPrice, textStock, description, iPath) ==false) {
-            updateView(UpdateForAction.ShowInputErrorMsg);
-        } else {
+        pendingChange = asyncDatabaseRW.isProIdAvailable(newProId).thenComposeAsync(idAvailable -> {
+            //validate input
+            if (validateInputNewProChild(newProId, idAvailable, textPrice, textStock, description, iPath) ==false) {
+                updateView(UpdateForAction.ShowInputErrorMsg);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
             //copy the user selected image to project image folder and using productId as image name
             //and get the image extension from the source image, we write this name to database
-            String imageNameWithExtension = ImageFileManager.copyFileToDestination(view.imageUriNewPro, StorageLocation.imageFolder,theNewProId);
+            String imageNameWithExtension;
+            try {
+                imageNameWithExtension = ImageFileManager.copyFileToDestination(iPath, StorageLocation.imageFolder, newProId);
+            } catch (IOException e) {
+                return CompletableFuture.<Void>failedFuture(e);
+            }
             double price = Double.parseDouble(textPrice);
             int stock = Integer.parseInt(textStock);
 
             //insertNewProduct to databse (String id, String des,double price,String image,int stock)
             //a record in databse looks like ('0001', '40 inch TV', 269.00,'0001TV.jpg',100)"
-            databaseRW.insertNewProduct(theNewProId,description,price,imageNameWithExtension,stock);
-            updateView(UpdateForAction.BtnSummitNew);
-            theNewProId = null;
-        }
+            return asyncDatabaseRW.insertNewProduct(newProId,description,price,imageNameWithExtension,stock).thenRunAsync(() -> {
+                theNewProId = newProId;
+                updateView(UpdateForAction.BtnSummitNew);
+                theNewProId = null;
+            }, Platform::runLater);
+        }, Platform::runLater).exceptionallyAsync(error -> {
+            showDatabaseError("Adding the product failed", error);
+            return null;
+        }, Platform::runLater);
     }
 
     private  boolean validateInputEditChild(String txPrice, String txStock,
@@ -289,8 +422,9 @@ public class WarehouseModel {
         return true;
     }
 
-    private  boolean validateInputNewProChild(String id, String txPrice, String txStock,
-                                   String description, String imageUri) throws SQLException {
+    // idAvailable: whether the database has no product with this ID yet (asked before, in the background)
+    private  boolean validateInputNewProChild(String id, boolean idAvailable, String txPrice, String txStock,
+                                   String description, String imageUri) {
 
         StringBuilder errorMessage = new StringBuilder();
         // Validate Id (must be exactly 4 digits)
@@ -298,7 +432,7 @@ public class WarehouseModel {
             errorMessage.append("\u2022 Product ID must be exactly 4 digits.\n");
 
         //check Id is unique
-        if(!databaseRW.isProIdAvailable(id))
+        if(!idAvailable)
             errorMessage.append("\u2022 Product ID " + id + " is not available.\n");
 
         // Validate Price (must be a positive number, and two digitals )
@@ -349,13 +483,13 @@ public class WarehouseModel {
     private void updateView(UpdateForAction updateFor){
         switch (updateFor) {
             case UpdateForAction.BtnSearch:
-                view.updateObservableProductList(productList);
+                view.updateObservableProductList(productList, hasMoreResults());
                 break;
             case UpdateForAction.BtnEdit:
                 view.updateEditProductChild(displayIdEdit,displayPriceEdit,displayStockEdit,displayDescriptionEdit,displayImageUrlEdit);
                 break;
             case UpdateForAction.BtnDelete:
-                view.updateObservableProductList(productList); //update search page in view
+                view.updateObservableProductList(productList, hasMoreResults()); //update search page in view
                 showManageStockHistory(ManageProductType.Deleted);
                 view.resetEditChild();
                 alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
@@ -5,6 +5,7 @@ import ci553.happyshop.utility.StorageLocation;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
 import ci553.happyshop.utility.WindowBounds;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -26,6 +27,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Map;
 import javafx.geometry.Insets;
 import javafx.scene.input.MouseEvent;
 /**
@@ -235,6 +237,18 @@ public class WarehouseView  {
                     Label laProToString = new Label(product.toString()); // Create a label for product details
                     HBox hbox = new HBox(10, ivPro, laProToString); // Put ImageView and label in a horizontal layout
                     setGraphic(hbox);  // Set the whole row content
+
+                    // The last product has scrolled into view: fetch the next page of results.
+                    // runLater, because the list must not be changed while it is laying out its cells.
+                    if (getIndex() == getListView().getItems().size() - 1) {
+                        Platform.runLater(() -> {
+                            try {
+                                controller.loadMore();
+                            } catch (SQLException ex) {
+                                throw new RuntimeException(ex);
+                            }
+                        });
+                    }
                 }
             }
         });
@@ -515,15 +529,46 @@ public class WarehouseView  {
     }
 
     //update the product listVew of serachPage
-    void updateObservableProductList( ArrayList<Product> productList) {
+    //moreToLoad: further pages of results are fetched when the user scrolls to the end of the list
+    void updateObservableProductList( ArrayList<Product> productList, boolean moreToLoad) {
         int proCounter = productList.size();
         System.out.println(proCounter);
-        laSearchSummary.setText(proCounter + " products found");
-        laSearchSummary.setVisible(true);
+        updateSearchSummary(proCounter, moreToLoad);
         obeProductList.clear();
         obeProductList.addAll(productList);
     }
 
+    //append the next page of search results, keeping the scroll position
+    void appendToObservableProductList(ArrayList<Product> moreProducts, boolean moreToLoad) {
+        obeProductList.addAll(moreProducts);
+        updateSearchSummary(obeProductList.size(), moreToLoad);
+    }
+
+    //refresh the changed products of the list in place: each is replaced by its latest version, or removed if it is null
+    void replaceProducts(Map<String, Product> latest, boolean moreToLoad) {
+        boolean removed = false;
+        for (int i = obeProductList.size() - 1; i >= 0; i--) {
+            String productId = obeProductList.get(i).getProductId();
+            if (latest.containsKey(productId)) {
+                Product fresh = latest.get(productId);
+                if (fresh == null) {
+                    obeProductList.remove(i);
+                    removed = true;
+                } else {
+                    obeProductList.set(i, fresh);
+                }
+            }
+        }
+        if (removed) {
+            updateSearchSummary(obeProductList.size(), moreToLoad);
+        }
+    }
+
+    private void updateSearchSummary(int proCounter, boolean moreToLoad) {
+        laSearchSummary.setText(moreToLoad ? proCounter + "+ products found, scroll for more" : proCounter + " products found");
+        laSearchSummary.setVisible(true);
+    }
+
     void updateBtnAddSub(String stock){
         tfStockEdit.setText(stock);
         tfChangeByEdit.clear();
@@ -0,0 +1,142 @@
+package ci553.happyshop.headless;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.client.picker.PickerModel;
+import ci553.happyshop.orderManagement.CheckoutResult;
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.utility.ProductListFormatter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HeadlessConsole drives a HeadlessRuntime with one-line text commands, read from an input such as
+ * System.in, so the shop can be used from a terminal or fed a batch file:
+ *
+ *     search <keyword>                 search by product ID or name ("*" for all)
+ *     checkout <id>[x<qty>] ...        buy products, eg: checkout 0001x2 0004
+ *     pick                             claim the next order to prepare and show its items
+ *     collect                          mark the claimed order as collected
+ *     orders                           show every order and its state
+ *     status <orderId>                 show the state of one order
+ *     metrics                          show the database metrics
+ *     help                             show the commands
+ *     quit                             stop (end of input also stops)
+ *
+ * Errors in one command (eg an unknown product ID) are printed and the console carries on.
+ */
+
+public class HeadlessConsole {
+    private final HeadlessRuntime runtime;
+    private final BufferedReader in;
+    private final PrintStream out;
+    private PickerModel picker; // created when the first pick command is given
+
+    public HeadlessConsole(HeadlessRuntime runtime, BufferedReader in, PrintStream out) {
+        this.runtime = runtime;
+        this.in = in;
+        this.out = out;
+    }
+
+    // Reads and runs commands until quit or the end of the input.
+    public void run() throws IOException {
+        out.println("HappyShop headless, type help for the commands");
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) { // blank lines and comments in batch files
+                continue;
+            }
+            if (line.equals("quit")) {
+                return;
+            }
+            try {
+                runCommand(line);
+            } catch (IllegalArgumentException | SQLException | IOException e) {
+                out.println("Error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void runCommand(String line) throws IOException, SQLException {
+        String[] words = line.split("\\s+");
+        switch (words[0]) {
+            case "search" -> {
+                requireArguments(words, 1);
+                for (Product p : runtime.searchProduct(line.substring("search".length()).trim())) {
+                    out.printf("%s  %-30s £%8.2f  stock %d%n", p.getProductId(), p.getProductDescription(),
+                            p.getUnitPrice(), p.getStockQuantity());
+                }
+            }
+            case "checkout" -> {
+                requireArguments(words, 1);
+                CheckoutResult result = runtime.checkOut(parseTrolley(words));
+                if (result.isSuccessful()) {
+                    out.println("Order " + result.getOrder().getOrderId() + " placed");
+                    out.print(ProductListFormatter.buildString(result.getOrder().getProductList()));
+                } else {
+                    for (Product p : result.getInsufficientProducts()) {
+                        out.printf("Not enough stock: %s %s (only %d available, %d requested)%n", p.getProductId(),
+                                p.getProductDescription(), p.getStockQuantity(), p.getOrderedQuantity());
+                    }
+                }
+            }
+            case "pick" -> {
+                if (picker == null) {
+                    picker = runtime.newPicker();
+                }
+                if (picker.getOrderId() != 0) {
+                    out.println("Order " + picker.getOrderId() + " is still being prepared, collect it first");
+                    return;
+                }
+                picker.doProgressing();
+                out.println(picker.getOrderId() == 0 ? "No orders to prepare" : picker.getOrderDetail());
+            }
+            case "collect" -> {
+                if (picker == null || picker.getOrderId() == 0) {
+                    out.println("No order is being prepared, pick one first");
+                    return;
+                }
+                int orderId = picker.getOrderId();
+                picker.doCollected();
+                out.println("Order " + orderId + " collected");
+            }
+            case "orders" -> {
+                for (Map.Entry<Integer, OrderState> entry : runtime.getOrderStates().entrySet()) {
+                    out.println(entry.getKey() + "  " + entry.getValue());
+                }
+            }
+            case "status" -> {
+                requireArguments(words, 1);
+                OrderState state = runtime.getOrderState(Integer.parseInt(words[1]));
+                out.println(state == null ? "Unknown order (or collected a while ago)" : state.toString());
+            }
+            case "metrics" -> out.println(DatabaseRWFactory.getMetricsRegistry().dump());
+            case "help" -> out.println("Commands: search <keyword>, checkout <id>[x<qty>] ..., pick, collect, orders, "
+                    + "status <orderId>, metrics, quit");
+            default -> out.println("Unknown command, type help for the commands");
+        }
+    }
+
+    // "checkout 0001x2 0004" -> {0001=2, 0004=1}; the same ID given twice adds up
+    private static Map<String, Integer> parseTrolley(String[] words) {
+        LinkedHashMap<String, Integer> quantities = new LinkedHashMap<>();
+        for (int i = 1; i < words.length; i++) {
+            String[] idAndQuantity = words[i].split("x", 2);
+            int quantity = idAndQuantity.length == 2 ? Integer.parseInt(idAndQuantity[1]) : 1;
+            quantities.merge(idAndQuantity[0], quantity, Integer::sum);
+        }
+        return quantities;
+    }
+
+    private static void requireArguments(String[] words, int count) {
+        if (words.length <= count) {
+            throw new IllegalArgumentException(words[0] + " needs " + count + " argument(s), type help for the commands");
+        }
+    }
+}
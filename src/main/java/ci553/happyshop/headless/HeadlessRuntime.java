@@ -0,0 +1,147 @@
+package ci553.happyshop.headless;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.client.picker.PickerModel;
+import ci553.happyshop.orderManagement.CheckoutResult;
+import ci553.happyshop.orderManagement.CheckoutService;
+import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.OrderStoreFactory;
+import ci553.happyshop.systemSetup.SetOrderFileSystem;
+import ci553.happyshop.utility.Logger;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HeadlessRuntime runs the shop without any windows and without starting JavaFX: the database,
+ * the OrderHub and the order file system, with checkout, picking and tracking as plain method calls.
+ * It is meant for a server or batch job, and is what HeadlessLauncher and the load generator start.
+ *
+ * start() does what Main does at startup minus the windows:
+ * 1. Creates the order folders and orderCounter file if they are missing (existing orders are kept).
+ * 2. Opens the database through DatabaseRWFactory (connection pool warm-up, caches, metrics).
+ * 3. Loads the orders still to be prepared into the OrderHub.
+ *
+ * Example Usage:
+ *     HeadlessRuntime runtime = new HeadlessRuntime();
+ *     runtime.start();
+ *     CheckoutResult result = runtime.checkOut(Map.of("0001", 2, "0004", 1));
+ *     PickerModel picker = runtime.newPicker();
+ *     picker.doProgressing();   // claims the oldest order
+ *     picker.doCollected();
+ *     runtime.stop();
+ *
+ * All methods may be called from any thread; OrderHub and the DatabaseRW are thread-safe.
+ */
+
+public class HeadlessRuntime {
+    private static final Logger log = Logger.getLogger(HeadlessRuntime.class);
+
+    private DatabaseRW databaseRW;
+    private CheckoutService checkoutService;
+    private final OrderHub orderHub = OrderHub.getOrderHub();
+    private boolean started = false;
+
+    public synchronized void start() throws IOException {
+        if (started) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        SetOrderFileSystem.createIfMissing();
+        databaseRW = DatabaseRWFactory.createDatabaseRW();
+        checkoutService = new CheckoutService(databaseRW);
+        orderHub.initializeOrderMap();
+        started = true;
+        log.info("Headless runtime started", "millis", (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    // Closes the database, the order map log and the order store. Pending log messages are printed before the JVM exits (see AsyncLogAppender).
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        DatabaseRWFactory.shutdown();
+        orderHub.closeOrderMapLog();
+        OrderStoreFactory.shutdown();
+        log.info("Headless runtime stopped");
+    }
+
+    public DatabaseRW getDatabaseRW() {
+        checkStarted();
+        return databaseRW;
+    }
+
+    public CheckoutService getCheckoutService() {
+        checkStarted();
+        return checkoutService;
+    }
+
+    // Searches by product ID or name, like the warehouse search ("*" lists every product).
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        checkStarted();
+        return databaseRW.searchProduct(keyword);
+    }
+
+    // Checks out a trolley that was built from Product objects, eg from searchProduct().
+    public CheckoutResult checkOut(ArrayList<Product> trolley) throws IOException, SQLException {
+        checkStarted();
+        return checkoutService.checkOut(trolley);
+    }
+
+    /**
+     * Checks out a trolley given as product ID -> quantity.
+     * @throws IllegalArgumentException if a product ID does not exist or a quantity is not positive
+     */
+    public CheckoutResult checkOut(Map<String, Integer> quantities) throws IOException, SQLException {
+        checkStarted();
+        ArrayList<Product> trolley = databaseRW.searchByProductIds(quantities.keySet());
+        if (trolley.size() != quantities.size()) {
+            ArrayList<String> unknownIds = new ArrayList<>(quantities.keySet());
+            trolley.forEach(p -> unknownIds.remove(p.getProductId()));
+            throw new IllegalArgumentException("Unknown product ID: " + String.join(", ", unknownIds));
+        }
+        for (Product p : trolley) {
+            int quantity = quantities.get(p.getProductId());
+            if (quantity < 1) {
+                throw new IllegalArgumentException("Quantity must be at least 1: " + p.getProductId());
+            }
+            p.setOrderedQuantity(quantity);
+        }
+        return checkoutService.checkOut(trolley);
+    }
+
+    /**
+     * Creates a picker without a view, registered with the OrderHub and given the current orders.
+     * Use doProgressing() to claim the next order, getOrderDetail() to read it, doCollected() to finish it.
+     */
+    public PickerModel newPicker() {
+        checkStarted();
+        PickerModel picker = new PickerModel();
+        picker.registerWithOrderHub();
+        orderHub.notifyPickerModels(); // a picker registered after startup has not seen the orders yet
+        return picker;
+    }
+
+    // Tracking: the state of one order, or null if unknown (collected orders are forgotten after a few seconds)
+    public OrderState getOrderState(int orderId) {
+        return orderHub.getOrderState(orderId);
+    }
+
+    // Tracking: every order the OrderHub knows, as the OrderTracker window shows them
+    public TreeMap<Integer, OrderState> getOrderStates() {
+        return orderHub.getOrderMapSnapshot();
+    }
+
+    private synchronized void checkStarted() {
+        if (!started) {
+            throw new IllegalStateException("HeadlessRuntime is not started");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ci553.happyshop.loadTest;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.headless.HeadlessRuntime;
+import ci553.happyshop.orderManagement.CheckoutService;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.utility.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LoadGenerator stresses the whole order flow without any windows: simulated customers check out
+ * trolleys (through the CheckoutService, like the customer window) while simulated pickers progress and
+ * collect the orders (through PickerModel, like the picker window). At the end it prints a report of
+ * throughput, latency percentiles, stock-out rate and order ID gaps (see LoadTestResults).
+ *
+ * ⚠ WARNING:
+ *  The load test runs against the real database and order folders of the working directory: it uses up
+ *  stock and creates order files. Run it on a copy of the shop, or run SetDatabase and SetOrderFileSystem afterwards.
+ *
+ * Example (settings are system properties, see LoadTestConfig):
+ *     java -Dhappyshop.load.customers=20 -Dhappyshop.load.ordersPerSecond=50 -Dhappyshop.load.popularity=zipf:1.2 \
+ *          -cp ... ci553.happyshop.loadTest.LoadGenerator
+ *
+ * Each customer and picker runs on its own platform thread: OrderHub is synchronized and does file I/O
+ * while holding its lock, which would pin virtual threads to their carrier threads anyway.
+ */
+
+public class LoadGenerator {
+    private static final Logger log = Logger.getLogger(LoadGenerator.class);
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        HeadlessRuntime runtime = new HeadlessRuntime(); // the shop without windows
+        runtime.start();
+        System.out.println(run(runtime, config));
+        System.out.println(DatabaseRWFactory.getMetricsRegistry().dump()); // database call counts and latencies
+        runtime.stop();
+        Logger.flush(1000);
+        System.exit(0); // the connection pool and other background threads would keep the JVM alive
+    }
+
+    // Runs one load test on a started HeadlessRuntime and returns its report.
+    public static String run(HeadlessRuntime runtime, LoadTestConfig config) throws SQLException, InterruptedException {
+        ArrayList<Product> catalogue = runtime.searchProduct("*");
+        ProductPopularity popularity = ProductPopularity.parse(config.popularity, catalogue.size());
+        CheckoutService checkoutService = runtime.getCheckoutService();
+        LoadTestResults results = new LoadTestResults();
+        log.info("Load test starting", "products", catalogue.size(), "customers", config.customers,
+                "pickers", config.pickers);
+
+        ArrayList<SimulatedPicker> pickers = new ArrayList<>();
+        for (int i = 0; i < config.pickers; i++) {
+            pickers.add(new SimulatedPicker(runtime.newPicker(), config, results));
+        }
+
+        ExecutorService pickerThreads = Executors.newFixedThreadPool(Math.max(1, config.pickers));
+        pickers.forEach(pickerThreads::execute);
+
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        ExecutorService customerThreads = Executors.newFixedThreadPool(config.customers);
+        for (int i = 0; i < config.customers; i++) {
+            customerThreads.execute(new SimulatedCustomer(i, catalogue, popularity, config, checkoutService, results, endNanos));
+        }
+        customerThreads.shutdown();
+        // customers stop starting checkouts at endNanos; give the last ones a little time to finish
+        if (!customerThreads.awaitTermination(config.durationSeconds + 60L, TimeUnit.SECONDS)) {
+            customerThreads.shutdownNow();
+        }
+        long customerNanos = System.nanoTime() - startNanos;
+        log.info("Customers finished, pickers collecting the remaining orders", "outstanding", results.getOutstandingOrders());
+
+        pickers.forEach(SimulatedPicker::stopWhenIdle);
+        pickerThreads.shutdown();
+        if (!pickerThreads.awaitTermination(config.drainSeconds, TimeUnit.SECONDS)) {
+            pickers.forEach(SimulatedPicker::stopNow);
+            pickerThreads.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        long totalNanos = System.nanoTime() - startNanos;
+        return results.report(config, customerNanos, totalNanos);
+    }
+}
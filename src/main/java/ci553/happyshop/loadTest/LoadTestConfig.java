@@ -0,0 +1,77 @@
+package ci553.happyshop.loadTest;
+
+/**
+ * LoadTestConfig holds the settings of one LoadGenerator run, read from system properties.
+ *
+ * Properties (all optional, defaults in brackets):
+ *   happyshop.load.customers        simulated customers, each on its own thread                    [8]
+ *   happyshop.load.pickers          simulated pickers, each on its own thread                      [2]
+ *   happyshop.load.durationSeconds  how long customers keep checking out                           [30]
+ *   happyshop.load.ordersPerSecond  target checkouts per second over all customers, 0 = flat out   [0]
+ *   happyshop.load.trolleySize      products per trolley: a number (eg 3) or a range (eg 1-5)      [1-5]
+ *   happyshop.load.maxQuantity      each product is ordered 1..maxQuantity times                   [2]
+ *   happyshop.load.popularity       which products are bought: uniform, or zipf:s (eg zipf:1.0)    [zipf:1.0]
+ *   happyshop.load.pickMillis       how long a picker takes to prepare one order                   [0]
+ *   happyshop.load.drainSeconds     how long pickers may keep collecting after customers stop      [30]
+ *   happyshop.load.seed             random seed, so a run can be repeated                          [42]
+ */
+
+public class LoadTestConfig {
+    final int customers;
+    final int pickers;
+    final int durationSeconds;
+    final double ordersPerSecond;
+    final int minTrolleySize;
+    final int maxTrolleySize;
+    final int maxQuantity;
+    final String popularity;
+    final long pickMillis;
+    final int drainSeconds;
+    final long seed;
+
+    LoadTestConfig(int customers, int pickers, int durationSeconds, double ordersPerSecond, int minTrolleySize,
+                   int maxTrolleySize, int maxQuantity, String popularity, long pickMillis, int drainSeconds, long seed) {
+        if (customers < 1 || pickers < 0 || durationSeconds < 1 || ordersPerSecond < 0
+                || minTrolleySize < 1 || maxTrolleySize < minTrolleySize || maxQuantity < 1) {
+            throw new IllegalArgumentException("Invalid load test settings");
+        }
+        this.customers = customers;
+        this.pickers = pickers;
+        this.durationSeconds = durationSeconds;
+        this.ordersPerSecond = ordersPerSecond;
+        this.minTrolleySize = minTrolleySize;
+        this.maxTrolleySize = maxTrolleySize;
+        this.maxQuantity = maxQuantity;
+        this.popularity = popularity;
+        this.pickMillis = pickMillis;
+        this.drainSeconds = drainSeconds;
+        this.seed = seed;
+    }
+
+    public static LoadTestConfig fromSystemProperties() {
+        String trolleySize = System.getProperty("happyshop.load.trolleySize", "1-5").trim();
+        int dash = trolleySize.indexOf('-');
+        int minTrolleySize = Integer.parseInt(dash < 0 ? trolleySize : trolleySize.substring(0, dash).trim());
+        int maxTrolleySize = dash < 0 ? minTrolleySize : Integer.parseInt(trolleySize.substring(dash + 1).trim());
+        return new LoadTestConfig(
+                Integer.getInteger("happyshop.load.customers", 8),
+                Integer.getInteger("happyshop.load.pickers", 2),
+                Integer.getInteger("happyshop.load.durationSeconds", 30),
+                Double.parseDouble(System.getProperty("happyshop.load.ordersPerSecond", "0")),
+                minTrolleySize,
+                maxTrolleySize,
+                Integer.getInteger("happyshop.load.maxQuantity", 2),
+                System.getProperty("happyshop.load.popularity", "zipf:1.0").trim(),
+                Long.getLong("happyshop.load.pickMillis", 0),
+                Integer.getInteger("happyshop.load.drainSeconds", 30),
+                Long.getLong("happyshop.load.seed", 42));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("customers=%d pickers=%d duration=%ds ordersPerSecond=%s trolleySize=%d-%d "
+                        + "maxQuantity=%d popularity=%s pickMillis=%d drain=%ds seed=%d",
+                customers, pickers, durationSeconds, ordersPerSecond == 0 ? "unlimited" : ordersPerSecond,
+                minTrolleySize, maxTrolleySize, maxQuantity, popularity, pickMillis, drainSeconds, seed);
+    }
+}
@@ -0,0 +1,154 @@
+package ci553.happyshop.loadTest;
+
+import ci553.happyshop.orderManagement.CheckoutResult;
+import ci553.happyshop.utility.LatencyHistogram;
+import ci553.happyshop.utility.Logger;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadTestResults collects what the simulated customers and pickers did, from all their threads,
+ * and turns it into the report printed at the end of a LoadGenerator run:
+ *
+ * - Throughput: checkouts attempted and orders placed and collected, per second.
+ * - Checkout latency (p50/p90/p99/max): from when a checkout was due to start until the order was made.
+ *   With a target rate, timing starts at the planned start time, not the actual one, so a checkout that
+ *   had to wait for an earlier slow one counts that wait too (no "coordinated omission").
+ * - Fulfilment latency: from when an order was placed until a picker marked it collected.
+ * - Stock-out rate: the share of checkouts refused because a product did not have enough stock.
+ * - Order ID gaps: IDs between the first and last order of this run that no checkout of this run got.
+ *   Without other clients running, gaps or duplicate IDs point at a bug in the order ID generation.
+ */
+
+public class LoadTestResults {
+    private static final Logger log = Logger.getLogger(LoadTestResults.class);
+    private static final int MAX_GAPS_LISTED = 10;
+
+    private final LatencyHistogram checkoutLatency = new LatencyHistogram();
+    private final LatencyHistogram fulfilmentLatency = new LatencyHistogram();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder ordersPlaced = new LongAdder();
+    private final LongAdder stockOuts = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder linesOrdered = new LongAdder();
+    private final LongAdder ordersCollected = new LongAdder();
+    private final LongAdder duplicateOrderIds = new LongAdder();
+    private final ConcurrentSkipListSet<Integer> orderIds = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<Integer, Long> placedAtNanos = new ConcurrentHashMap<>(); // orders not yet collected
+    // A picker may collect an order before the customer thread has recorded it; the collection waits here.
+    // Orders left over from before the run also end up here, and stay.
+    private final ConcurrentHashMap<Integer, Long> collectedEarlyNanos = new ConcurrentHashMap<>();
+
+    void recordCheckout(CheckoutResult result, long startNanos) {
+        long now = System.nanoTime();
+        attempts.increment();
+        checkoutLatency.record(now - startNanos);
+        if (result.isSuccessful()) {
+            int orderId = result.getOrder().getOrderId();
+            ordersPlaced.increment();
+            linesOrdered.add(result.getOrder().getProductList().size());
+            if (!orderIds.add(orderId)) {
+                duplicateOrderIds.increment();
+                log.warn("Order ID handed out twice", "orderId", orderId);
+            }
+            synchronized (placedAtNanos) {
+                Long collectedAt = collectedEarlyNanos.remove(orderId);
+                if (collectedAt != null) {
+                    ordersCollected.increment();
+                    fulfilmentLatency.record(Math.max(0, collectedAt - now));
+                } else {
+                    placedAtNanos.put(orderId, now);
+                }
+            }
+        } else {
+            stockOuts.increment();
+        }
+    }
+
+    void recordError(Throwable error) {
+        attempts.increment();
+        errors.increment();
+        log.warn("Checkout failed", error);
+    }
+
+    void recordCollected(int orderId) {
+        long now = System.nanoTime();
+        synchronized (placedAtNanos) {
+            Long placedAt = placedAtNanos.remove(orderId);
+            if (placedAt != null) {
+                ordersCollected.increment();
+                fulfilmentLatency.record(now - placedAt);
+            } else {
+                // placed by this run but not recorded yet, or left over from before the run
+                collectedEarlyNanos.put(orderId, now);
+            }
+        }
+    }
+
+    // Orders of this run that no picker has collected yet
+    int getOutstandingOrders() {
+        return placedAtNanos.size();
+    }
+
+    String report(LoadTestConfig config, long customerNanos, long totalNanos) {
+        double customerSeconds = customerNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        double totalSeconds = totalNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        long attempted = attempts.sum();
+        long placed = ordersPlaced.sum();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("===== HappyShop load test =====\n");
+        sb.append(config).append('\n');
+        sb.append(String.format("Checkouts:   %d attempted, %d orders placed, %d out of stock, %d errors%n",
+                attempted, placed, stockOuts.sum(), errors.sum()));
+        sb.append(String.format("Throughput:  %.1f checkouts/s, %.1f orders/s over %.1fs%n",
+                attempted / customerSeconds, placed / customerSeconds, customerSeconds));
+        sb.append(String.format("Collected:   %d orders, %.1f orders/s over %.1fs, %d left uncollected, %d older orders collected%n",
+                ordersCollected.sum(), ordersCollected.sum() / totalSeconds, totalSeconds, getOutstandingOrders(),
+                collectedEarlyNanos.size()));
+        sb.append(String.format("Stock-out:   %.2f%% of checkouts%n",
+                attempted == 0 ? 0 : 100.0 * stockOuts.sum() / attempted));
+        sb.append(String.format("Lines:       %.2f products per order%n", placed == 0 ? 0 : (double) linesOrdered.sum() / placed));
+        sb.append(latencyLine("Checkout", checkoutLatency));
+        sb.append(latencyLine("Fulfilment", fulfilmentLatency));
+        sb.append(orderIdGaps());
+        return sb.toString();
+    }
+
+    private static String latencyLine(String name, LatencyHistogram histogram) {
+        return String.format("%-12s latency p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms (%d samples)%n",
+                name + ":", toMillis(histogram.getValueAtPercentile(50)), toMillis(histogram.getValueAtPercentile(90)),
+                toMillis(histogram.getValueAtPercentile(99)), toMillis(histogram.getMaxNanos()), histogram.getCount());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // Walks the sorted order IDs of this run and lists the ranges in between that are missing
+    private String orderIdGaps() {
+        if (orderIds.isEmpty()) {
+            return "Order IDs:   none placed\n";
+        }
+        long missing = 0;
+        ArrayList<String> gaps = new ArrayList<>();
+        int previous = orderIds.first();
+        for (int orderId : orderIds) {
+            if (orderId > previous + 1) {
+                missing += orderId - previous - 1;
+                if (gaps.size() < MAX_GAPS_LISTED) {
+                    gaps.add(orderId == previous + 2 ? String.valueOf(previous + 1) : (previous + 1) + "-" + (orderId - 1));
+                }
+            }
+            previous = orderId;
+        }
+        return String.format("Order IDs:   %d-%d, %d missing%s, %d duplicates%n",
+                orderIds.first(), orderIds.last(), missing,
+                gaps.isEmpty() ? "" : " " + gaps + (gaps.size() == MAX_GAPS_LISTED ? "..." : ""),
+                duplicateOrderIds.sum());
+    }
+}
@@ -0,0 +1,54 @@
+package ci553.happyshop.loadTest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ProductPopularity decides which product a simulated customer picks next, as an index into the catalogue.
+ *
+ * - "uniform": every product is equally likely.
+ * - "zipf:s":  the product at index i is picked with a weight of 1 / (i + 1)^s, so a few products at the
+ *              front of the catalogue sell far more than the rest, like best-sellers in a real shop.
+ *              s = 0 is uniform; the larger s, the more the sales concentrate on the first products.
+ *
+ * Zipf picks use a table of cumulative weights and a binary search, so each pick is O(log n).
+ */
+
+public class ProductPopularity {
+    private final int productCount;
+    private final double[] cumulativeWeights; // null for uniform
+
+    private ProductPopularity(int productCount, double[] cumulativeWeights) {
+        this.productCount = productCount;
+        this.cumulativeWeights = cumulativeWeights;
+    }
+
+    public static ProductPopularity parse(String spec, int productCount) {
+        if (productCount < 1) {
+            throw new IllegalArgumentException("The catalogue is empty");
+        }
+        if (spec.equalsIgnoreCase("uniform")) {
+            return new ProductPopularity(productCount, null);
+        }
+        if (spec.toLowerCase().startsWith("zipf:")) {
+            double exponent = Double.parseDouble(spec.substring("zipf:".length()));
+            double[] cumulative = new double[productCount];
+            double total = 0;
+            for (int i = 0; i < productCount; i++) {
+                total += 1.0 / Math.pow(i + 1, exponent);
+                cumulative[i] = total;
+            }
+            return new ProductPopularity(productCount, cumulative);
+        }
+        throw new IllegalArgumentException("Unknown popularity, use uniform or zipf:<s>: " + spec);
+    }
+
+    public int nextIndex(Random random) {
+        if (cumulativeWeights == null) {
+            return random.nextInt(productCount);
+        }
+        double target = random.nextDouble() * cumulativeWeights[productCount - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, target);
+        return index >= 0 ? index : Math.min(-index - 1, productCount - 1); // insertion point = first weight above target
+    }
+}
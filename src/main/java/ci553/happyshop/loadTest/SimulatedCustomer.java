@@ -0,0 +1,92 @@
+package ci553.happyshop.loadTest;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.orderManagement.CheckoutService;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A SimulatedCustomer fills a trolley and checks out, over and over, until the end of the run.
+ * It goes through the same CheckoutService as the customer window, just without the window.
+ *
+ * Each trolley holds a random number of different products (LoadTestConfig trolleySize), chosen by
+ * ProductPopularity, each ordered 1..maxQuantity times.
+ *
+ * With a target rate, each customer checks out every intervalNanos (customers * 1s / ordersPerSecond),
+ * starting at a random offset so the customers do not all arrive together. If a checkout takes longer
+ * than the interval, the next one starts late, and that lateness is counted in its latency.
+ * Without a target rate, the next checkout starts as soon as the last one has finished.
+ */
+
+class SimulatedCustomer implements Runnable {
+    private final List<Product> catalogue;
+    private final ProductPopularity popularity;
+    private final LoadTestConfig config;
+    private final CheckoutService checkoutService;
+    private final LoadTestResults results;
+    private final long endNanos;
+    private final Random random;
+
+    SimulatedCustomer(int number, List<Product> catalogue, ProductPopularity popularity, LoadTestConfig config,
+                      CheckoutService checkoutService, LoadTestResults results, long endNanos) {
+        this.catalogue = catalogue;
+        this.popularity = popularity;
+        this.config = config;
+        this.checkoutService = checkoutService;
+        this.results = results;
+        this.endNanos = endNanos;
+        this.random = new Random(config.seed + number); // each customer its own repeatable sequence
+    }
+
+    @Override
+    public void run() {
+        long intervalNanos = config.ordersPerSecond == 0 ? 0
+                : (long) (config.customers * TimeUnit.SECONDS.toNanos(1) / config.ordersPerSecond);
+        long nextStart = System.nanoTime() + (intervalNanos == 0 ? 0 : (long) (random.nextDouble() * intervalNanos));
+        while (!Thread.currentThread().isInterrupted()) {
+            long startNanos;
+            if (intervalNanos == 0) {
+                startNanos = System.nanoTime();
+            } else {
+                startNanos = nextStart;
+                nextStart += intervalNanos;
+                long wait;
+                while ((wait = startNanos - System.nanoTime()) > 0 && startNanos < endNanos) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            if (startNanos >= endNanos) {
+                return;
+            }
+            try {
+                results.recordCheckout(checkoutService.checkOut(fillTrolley()), startNanos);
+            } catch (Exception e) {
+                results.recordError(e);
+            }
+        }
+    }
+
+    private ArrayList<Product> fillTrolley() {
+        int size = Math.min(catalogue.size(),
+                config.minTrolleySize + random.nextInt(config.maxTrolleySize - config.minTrolleySize + 1));
+        ArrayList<Product> trolley = new ArrayList<>(size);
+        HashSet<Integer> chosen = new HashSet<>();
+        // popular products may be drawn again; give up on a line after a few tries rather than loop for long
+        for (int tries = 0; trolley.size() < size && tries < size * 10; tries++) {
+            int index = popularity.nextIndex(random);
+            if (chosen.add(index)) {
+                Product p = catalogue.get(index);
+                Product line = new Product(p.getProductId(), p.getProductDescription(), p.getProductImageName(),
+                        p.getUnitPrice(), p.getStockQuantity());
+                line.setOrderedQuantity(1 + random.nextInt(config.maxQuantity));
+                trolley.add(line);
+            }
+        }
+        return trolley;
+    }
+}
@@ -0,0 +1,61 @@
+package ci553.happyshop.loadTest;
+
+import ci553.happyshop.client.picker.PickerModel;
+import ci553.happyshop.utility.Logger;
+
+import java.io.IOException;
+
+/**
+ * A SimulatedPicker claims the next order (PickerModel.doProgressing), prepares it for pickMillis,
+ * and marks it collected (PickerModel.doCollected), over and over. It uses a PickerModel without a view
+ * (from HeadlessRuntime.newPicker), registered with the OrderHub like the picker window's model.
+ *
+ * When there is no order to claim it waits briefly and tries again. After stopWhenIdle() it ends as soon
+ * as there is nothing left to claim; after stopNow() it ends straight away.
+ */
+
+class SimulatedPicker implements Runnable {
+    private static final Logger log = Logger.getLogger(SimulatedPicker.class);
+    private static final long IDLE_WAIT_MILLIS = 5;
+
+    private final PickerModel pickerModel;
+    private final LoadTestConfig config;
+    private final LoadTestResults results;
+    private volatile boolean stopWhenIdle = false;
+    private volatile boolean stopNow = false;
+
+    SimulatedPicker(PickerModel pickerModel, LoadTestConfig config, LoadTestResults results) {
+        this.pickerModel = pickerModel;
+        this.config = config;
+        this.results = results;
+    }
+
+    void stopWhenIdle() { stopWhenIdle = true; }
+    void stopNow() { stopNow = true; }
+
+    @Override
+    public void run() {
+        try {
+            while (!stopNow) {
+                pickerModel.doProgressing();
+                int orderId = pickerModel.getOrderId();
+                if (orderId == 0) { // nothing to pick
+                    if (stopWhenIdle) {
+                        return;
+                    }
+                    Thread.sleep(IDLE_WAIT_MILLIS);
+                    continue;
+                }
+                if (config.pickMillis > 0) {
+                    Thread.sleep(config.pickMillis);
+                }
+                pickerModel.doCollected();
+                results.recordCollected(orderId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Simulated picker stopped", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+
+/**
+ * A CheckoutResult is the outcome of CheckoutService.checkOut():
+ * either the order that was placed, or the products that did not have enough stock (and no order).
+ */
+
+public class CheckoutResult {
+    private final Order order;                              // null if the checkout failed
+    private final ArrayList<Product> insufficientProducts; // empty if the checkout succeeded
+
+    public CheckoutResult(Order order, ArrayList<Product> insufficientProducts) {
+        this.order = order;
+        this.insufficientProducts = insufficientProducts;
+    }
+
+    // a set of getter methods
+    public Order getOrder() { return order; }
+    public ArrayList<Product> getInsufficientProducts() { return insufficientProducts; }
+    public boolean isSuccessful() { return order != null; }
+}
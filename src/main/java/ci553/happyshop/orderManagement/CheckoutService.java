@@ -0,0 +1,80 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DatabaseRW;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * CheckoutService holds the checkout rules, apart from any user interface:
+ * 1. The trolley is grouped by product ID, so each product's stock is checked and reduced once.
+ * 2. The stock for all products is bought in one database transaction (DatabaseRW.purchaseStocks).
+ *    If any product does not have enough stock, nothing is bought.
+ * 3. Only when all stock was bought, OrderHub makes the new order.
+ *
+ * The CustomerModel runs steps 2 and 3 in the background, and shows the outcome on the JavaFX application
+ * thread (the picker and tracker windows OrderHub notifies do the same). Code without a user interface,
+ * such as the load generator, calls checkOut() to run all steps on the calling thread.
+ *
+ * Example Usage:
+ *     CheckoutService checkoutService = new CheckoutService(databaseRW);
+ *     CheckoutResult result = checkoutService.checkOut(trolley);
+ *     if (result.isSuccessful()) { ... result.getOrder().getOrderId() ... }
+ */
+
+public class CheckoutService {
+    private final DatabaseRW databaseRW;
+
+    public CheckoutService(DatabaseRW databaseRW) {
+        this.databaseRW = databaseRW;
+    }
+
+    // Runs the whole checkout; see the class comment.
+    public CheckoutResult checkOut(ArrayList<Product> trolley) throws IOException, SQLException {
+        ArrayList<Product> groupedTrolley = groupProductsById(trolley);
+        ArrayList<Product> insufficientProducts = purchaseStock(groupedTrolley);
+        if (!insufficientProducts.isEmpty()) {
+            return new CheckoutResult(null, insufficientProducts);
+        }
+        return new CheckoutResult(placeOrder(groupedTrolley), insufficientProducts);
+    }
+
+    // Buys the stock for every product in the trolley, or for none of them.
+    // Returns the products without enough stock (each with its current stock), empty if all were bought.
+    public ArrayList<Product> purchaseStock(ArrayList<Product> trolley) throws SQLException {
+        return databaseRW.purchaseStocks(trolley);
+    }
+
+    // Makes the order for a trolley whose stock has been bought.
+    public Order placeOrder(ArrayList<Product> trolley) throws IOException, SQLException {
+        return OrderHub.getOrderHub().newOrder(trolley);
+    }
+
+    /**
+     * Groups products by their productId, adding up the ordered quantities, and sorts them by productId
+     * (the order the picker reads them in). The products passed in are not changed.
+     */
+    public static ArrayList<Product> groupProductsById(List<Product> trolley) {
+        LinkedHashMap<String, Product> grouped = new LinkedHashMap<>();
+        for (Product p : trolley) {
+            Product line = grouped.get(p.getProductId());
+            if (line == null) {
+                line = new Product(p.getProductId(), p.getProductDescription(), p.getProductImageName(),
+                        p.getUnitPrice(), p.getStockQuantity());
+                line.setOrderedQuantity(p.getOrderedQuantity());
+                grouped.put(p.getProductId(), line);
+            } else {
+                line.setOrderedQuantity(line.getOrderedQuantity() + p.getOrderedQuantity());
+            }
+        }
+        ArrayList<Product> groupedTrolley = new ArrayList<>(grouped.values());
+        groupedTrolley.sort(Comparator.comparing(Product::getProductId));
+        return groupedTrolley;
+    }
+}
@@ -1,6 +1,7 @@
 package ci553.happyshop.orderManagement;
 
 import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.utility.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -8,17 +9,28 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * OrderCounter is responsible for generating unique, sequential orderIDs for new orders.
+ * OrderCounter is responsible for generating unique orderIDs for new orders.
  *
  * <p>This class manages a persistent counter stored in an external text file:(ie,"orders/orderCounter.txt").
- * On first use, it creates the file and starts the counter at 1.
- * For subsequent calls, it reads the current number, increments it by 1, writes the updated value
- * back to the file, and returns the new order ID.</p>
+ * The file holds the highest order ID reserved so far. IDs are reserved in blocks ("hi/lo" allocation):
+ * when the current block is used up, the counter is read, increased by BLOCK_SIZE and written back in one
+ * locked step, and the IDs of that block are then handed out from an in-memory atomic counter.
+ * So only one order in BLOCK_SIZE touches the file; the others get their ID with a compare-and-set.</p>
  *
- * <p>File access is synchronized using a file lock to ensure safe operation in a multi-threaded
- * or multi-process environment. The method is simple to use by OrderHub
+ * <p>IDs are never handed out twice:
+ * - Between processes: each block is reserved under a file lock, so two processes never get the same block.
+ *   Their orders get IDs from different blocks, so IDs are unique but no longer strictly in order of time.
+ * - After a restart or a crash: the file already holds the end of the block, so the IDs left unused in it are
+ *   skipped (a gap of at most BLOCK_SIZE - 1), never reused. The new counter is forced to disk before any
+ *   ID of the block is used.
+ * Set -Dhappyshop.orderIdBlockSize=1 to reserve one ID at a time, as before (sequential, no gaps).</p>
+ *
+ * <p>File access is synchronized using a file lock to ensure safe operation in a multi-process environment.
+ * A file lock is held by the whole JVM, so threads of the same JVM are kept apart by making reserveBlock synchronized
+ * (two threads locking the same file at once would get an OverlappingFileLockException). The method is simple to use by OrderHub
  * or any component that needs to generate order numbers.</p>
  *
  * <p>FileChannel allows exclusive locking of files or specific regions of files,
@@ -31,11 +43,36 @@ import java.nio.channels.FileLock;
  */
 
 public class OrderCounter {
+    private static final Logger log = Logger.getLogger(OrderCounter.class);
+
+    private static final int BLOCK_SIZE = Math.max(1, Integer.getInteger("happyshop.orderIdBlockSize", 100));
+
+    private static final AtomicInteger lastIssuedId = new AtomicInteger(0); // the last ID handed out
+    private static volatile int blockEnd = 0; // the last ID of the reserved block; none reserved yet
 
     public static int generateOrderId() throws IOException {
+        while (true) {
+            int last = lastIssuedId.get();
+            int end = blockEnd;
+            if (last < end) {
+                if (lastIssuedId.compareAndSet(last, last + 1)) {
+                    return last + 1;
+                }
+            } else {
+                reserveBlock(end); // the block is used up (or none was reserved yet)
+            }
+        }
+    }
+
+    // Reserves the next BLOCK_SIZE IDs in the counter file, unless another thread already did it since
+    // usedUpBlockEnd was read
+    private static synchronized void reserveBlock(int usedUpBlockEnd) throws IOException {
+        if (blockEnd != usedUpBlockEnd) {
+            return;
+        }
         Path path = StorageLocation.orderCounterPath;
 
-        // Lock and increment the ID
+        // Lock and increase the counter by a whole block
         try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
              FileLock lock = channel.lock()) {
 
@@ -52,16 +89,19 @@ public class OrderCounter {
 
             //Gets the raw byte array from the buffer so you can convert it to a string or number.
             String content = new String(buffer.array()).trim();
-            int currentId = Integer.parseInt(content);
-            int newId = currentId + 1;
+            int reservedSoFar = Integer.parseInt(content);
+            int newBlockEnd = Math.addExact(reservedSoFar, BLOCK_SIZE);
 
             channel.position(0); // Move to the start of the file
             channel.truncate(0); // Clear all content in the file (file size becomes 0)
             //This wraps an existing byte array into a buffer — so you can write it with channel.write().
-            channel.write(ByteBuffer.wrap(String.valueOf(newId).getBytes()));
+            channel.write(ByteBuffer.wrap(String.valueOf(newBlockEnd).getBytes()));
+            channel.force(false); // on disk before any ID of the block is used, so a crash cannot reuse them
 
-            System.out.println("OrderId was generated for now: " + newId);
-            return newId;
+            // lastIssuedId first: a thread that still sees the old blockEnd then finds the block used up and waits here
+            lastIssuedId.set(reservedSoFar);
+            blockEnd = newBlockEnd;
+            log.debug("OrderId block reserved", "from", reservedSoFar + 1, "to", newBlockEnd);
         }
     }
 }
@@ -4,23 +4,21 @@ import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.catalogue.Product;
 import ci553.happyshop.client.orderTracker.OrderTracker;
 import ci553.happyshop.client.picker.PickerModel;
-import ci553.happyshop.storageAccess.OrderFileManager;
-import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.storageAccess.OrderMapLog;
+import ci553.happyshop.storageAccess.OrderStore;
+import ci553.happyshop.storageAccess.OrderStoreFactory;
+import ci553.happyshop.utility.Logger;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
 
 /**
  * <p>{@code OrderHub} serves as the heart of the ordering system.
@@ -30,22 +28,27 @@ import java.util.stream.Stream;
  * <p> It is the central coordinator responsible for managing all orders. It handles:
  *   Creating and tracking orders
  *   Maintaining and updating the internal order map, <OrderId, OrderState>
- *   Delegating file-related operations (e.g., updating state and moving files) to OrderFileManager class
+ *   Delegating storage (e.g., writing order details, recording state changes) to an OrderStore
+ *   (order files or an order journal, see OrderStoreFactory)
  *   Loading orders in the "ordered" and "progressing" states from storage during system startup
+ *   (from the last snapshot of the order map and the changes logged since, see OrderMapLog, or else
+ *   by scanning the order store)
  *
  * <p> OrderHub also follows the Observer pattern: it notifies registered observers such as OrderTracker
  * and PickerModel whenever the order data changes, keeping the UI and business logic in sync.</p>
  *
  * <p>As the heart of the ordering system, OrderHub connects customers, pickers, and tracker,
  * managementing logic into a unified workflow.</p>
+ *
+ * <p>The public methods are synchronized on the OrderHub, so many threads (eg the simulated customers and
+ * pickers of the load generator) can place and progress orders at once. Observers are notified while the
+ * lock is held, so they always see the changes one at a time and in order.</p>
  */
 
 public class OrderHub  {
+    private static final Logger log = Logger.getLogger(OrderHub.class);
     private static OrderHub orderHub; //singleton instance
 
-    private final Path orderedPath = StorageLocation.orderedPath;
-    private final Path progressingPath = StorageLocation.progressingPath;
-    private final Path collectedPath = StorageLocation.collectedPath;
 
     private TreeMap<Integer,OrderState> orderMap = new TreeMap<>();
     private TreeMap<Integer,OrderState> OrderedOrderMap = new TreeMap<>();
@@ -62,11 +65,17 @@ public class OrderHub  {
     private ArrayList<OrderTracker> orderTrackerList = new ArrayList<>();
     private ArrayList<PickerModel> pickerModelList = new ArrayList<>();
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private OrderMapLog orderMapLog; // logs orderMap changes for a fast start; null with the order journal
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, runnable -> {
+        Thread thread = new Thread(runnable, "OrderHub-cleanup");
+        thread.setDaemon(true); // pending removals must not keep the JVM alive
+        return thread;
+    });
 
     //Singleton pattern
     private OrderHub() {}
-    public static OrderHub getOrderHub() {
+    public static synchronized OrderHub getOrderHub() {
         if (orderHub == null)
             orderHub = new OrderHub();
             return orderHub;
@@ -74,18 +83,24 @@ public class OrderHub  {
 
     //Creates a new order using the provided list of products.
     //and also notify picker and orderTracker
-    public Order newOrder(ArrayList<Product> trolley) throws IOException, SQLException {
+    public synchronized Order newOrder(ArrayList<Product> trolley) throws IOException, SQLException {
         int orderId = OrderCounter.generateOrderId(); //get unique orderId
         String orderedDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         //make an Order Object: id, Ordered_state, orderedDateTime, and productsList(trolley)
         Order theOrder = new Order(orderId,OrderState.Ordered,orderedDateTime,trolley);
 
-        //write order details to file for the orderId in orderedPath (ie. orders/ordered)
+        //store the order details (eg in orders/ordered/<orderId>.txt, or in the order journal)
         String orderDetail = theOrder.orderDetails();
-        Path path = orderedPath;
-        OrderFileManager.createOrderFile(path, orderId, orderDetail);
+        try {
+            OrderStoreFactory.getOrderStore().createOrder(orderId, orderDetail);
+        } catch (IOException e) {
+            invalidateOrderMapLog(); // part of the order may be stored, so the next start scans the store
+            throw e;
+        }
 
         orderMap.put(orderId, theOrder.getState()); //add the order to orderMap,state is Ordered initially
+        logOrderMapChange(orderId, theOrder.getState());
+        log.info("Order placed", "orderId", orderId, "lines", trolley.size());
         notifyOrderTrackers(); //notify OrderTrackers
         notifyPickerModels();//notify pickers
         
@@ -93,23 +108,23 @@ public class OrderHub  {
     }
 
     //Registers an OrderTracker to receive updates about changes.
-    public void registerOrderTracker(OrderTracker orderTracker){
+    public synchronized void registerOrderTracker(OrderTracker orderTracker){
         orderTrackerList.add(orderTracker);
     }
      //Notifies all registered observer_OrderTrackers to update and display the latest orderMap.
-    public void notifyOrderTrackers(){
+    public synchronized void notifyOrderTrackers(){
         for(OrderTracker orderTracker : orderTrackerList){
             orderTracker.setOrderMap(orderMap);
         }
     }
 
     //Registers a PickerModel to receive updates about changes.
-    public void registerPickerModel(PickerModel pickerModel){
+    public synchronized void registerPickerModel(PickerModel pickerModel){
         pickerModelList.add(pickerModel);
     }
 
     //notify all pickers to show orderMap (only ordered and progressing states orders)
-    public void notifyPickerModels(){
+    public synchronized void notifyPickerModels(){
         TreeMap<Integer,OrderState> orderMapForPicker = new TreeMap<>();
         progressingOrderMap = filterOrdersByState(OrderState.Progressing);
         OrderedOrderMap = filterOrdersByState(OrderState.Ordered);
@@ -132,25 +147,44 @@ public class OrderHub  {
         return filteredOrderMap;
     }
 
-    //Changes the state of the specified order, updates its file, and moves it to the appropriate folder.
+    //Records the new state of the specified order in the order store
+    //(with order files: updates its file, and moves it to the appropriate folder), and only once it is recorded
+    //changes orderMap and logs the change, so orderMap and its log never show a change the store does not have.
     //trigger by PickerModel
-    public void changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
+    public synchronized void changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
         if(orderMap.containsKey(orderId) && !orderMap.get(orderId).equals(newState))
         {
+            //record the new orderState in the order store
+            OrderStore store = OrderStoreFactory.getOrderStore();
+            boolean changed;
+            try {
+                changed = store.changeState(orderId, newState);
+            } catch (IOException e) {
+                // the store may have recorded part of the change, so the next start scans it instead
+                invalidateOrderMapLog();
+                throw e;
+            }
+            if (!changed) {
+                // The store may already have this change (or a later one), eg recorded just before the shop
+                // stopped and never logged, so the order map restored at startup is behind. Then orderMap and
+                // its log are brought in line with the store, or the order could never move on.
+                OrderState storedState = store.stateOf(orderId);
+                if (storedState == null || storedState.compareTo(newState) < 0) {
+                    log.warn("Order state not changed, the order store refused it", "orderId", orderId, "newState", newState);
+                    return;
+                }
+                log.warn("Order state already recorded by the order store, the order map catches up",
+                        "orderId", orderId, "state", storedState);
+                newState = storedState;
+            }
+
             //change orderState in OrderMap, notify OrderTrackers and pickers
             orderMap.put(orderId, newState);
             notifyOrderTrackers();
             notifyPickerModels();
-
-            //change orderState in order file and move the file to new state folder
-            switch(newState){
-                case OrderState.Progressing:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,orderedPath,progressingPath);
-                    break;
-                case OrderState.Collected:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,progressingPath,collectedPath);
-                    removeCollectedOrder(orderId); //Scheduled removal
-                    break;
+            logOrderMapChange(orderId, newState);
+            if (newState == OrderState.Collected) {
+                removeCollectedOrder(orderId); //Scheduled removal
             }
         }
     }
@@ -167,77 +201,124 @@ public class OrderHub  {
         if (orderMap.containsKey(orderId)) {
             // Schedule removal after a few seconds
             scheduler.schedule(() -> {
-                orderMap.remove(orderId); //remove collected order
-                System.out.println("Order " + orderId + " removed from tracker and OrdersMap.");
-                notifyOrderTrackers();
+                synchronized (this) {
+                    orderMap.remove(orderId); //remove collected order
+                    log.debug("Collected order removed from tracker and orderMap", "orderId", orderId);
+                    notifyOrderTrackers();
+                }
             }, 10, TimeUnit.SECONDS );
         }
     }
 
+    // The current state of an order, or null if the order is unknown (or collected and already removed).
+    public synchronized OrderState getOrderState(int orderId) {
+        return orderMap.get(orderId);
+    }
+
+    // A copy of the orderMap, for callers without an OrderTracker (eg the headless runtime)
+    public synchronized TreeMap<Integer, OrderState> getOrderMapSnapshot() {
+        return new TreeMap<>(orderMap);
+    }
+
     // Reads details of an order for display in the picker once they started preparing the order.
-    public String  getOrderDetailForPicker(int orderId) throws IOException {
+    public synchronized String  getOrderDetailForPicker(int orderId) throws IOException {
         OrderState state = orderMap.get(orderId);
         if(state.equals(OrderState.Progressing)) {
-            return OrderFileManager.readOrderFile(progressingPath,orderId);
+            return OrderStoreFactory.getOrderStore().readOrder(orderId);
         }else{
             return "the fuction is only for picker";
         }
     }
 
-    //Initializes the internal order map by loading the uncollected orders from the file system.
+    //Initializes the internal order map by loading the uncollected orders: from the last snapshot of the
+    //order map and the changes logged after it, or, if there is no usable snapshot, from the order store
+    //(which is then saved as the new snapshot).
     // Called during system startup by the Main class.
-    public void initializeOrderMap(){
-        ArrayList<Integer> orderedIds = orderIdsLoader(orderedPath);
-        ArrayList<Integer> progressingIds = orderIdsLoader(progressingPath);
-        if(orderedIds.size()>0){
-            for(Integer orderId : orderedIds){
-                orderMap.put(orderId, OrderState.Ordered);
+    public synchronized void initializeOrderMap(){
+        long start = System.nanoTime();
+        if (orderMapLog != null) {
+            closeOrderMapLog(); // initialized again: start from a snapshot of the current map
+        }
+        orderMapLog = OrderStoreFactory.openOrderMapLog();
+        TreeMap<Integer, OrderState> uncollectedOrders = null;
+        if (orderMapLog != null) {
+            try {
+                uncollectedOrders = orderMapLog.open();
+            } catch (IOException e) {
+                log.error("Error opening the order map log, orders are loaded without it", e);
+                orderMapLog = null;
             }
         }
-        if(progressingIds.size()>0){
-            for(Integer orderId : progressingIds){
-                orderMap.put(orderId, OrderState.Progressing);
+        boolean scanned = uncollectedOrders == null;
+        if (scanned) {
+            try {
+                uncollectedOrders = OrderStoreFactory.getOrderStore().loadUncollectedOrders();
+            } catch (IOException e) {
+                log.error("Error loading the uncollected orders", e);
+                uncollectedOrders = new TreeMap<>();
+            }
+            if (orderMapLog != null) {
+                try {
+                    orderMapLog.checkpoint(uncollectedOrders, true);
+                } catch (IOException e) {
+                    log.error("Error saving the order map snapshot", e);
+                }
             }
         }
+        orderMap.putAll(uncollectedOrders);
         notifyOrderTrackers();
         notifyPickerModels();
-        System.out.println("orderMap initilized. "+ orderMap.size() + " orders in total, including:");
-        System.out.println( orderedIds.size() + " Ordered orders, " +progressingIds.size() + " Progressing orders " );
-    }
-
-    // Loads a list of order IDs from the specified directory.
-    // Used internally by initializeOrderMap().
-    private ArrayList<Integer> orderIdsLoader(Path dir) {
-        ArrayList<Integer> orderIds = new ArrayList<>();
-
-        if (Files.exists(dir) && Files.isDirectory(dir)) {
-            try (Stream<Path> fileStream = Files.list(dir)) {
-                // Process the stream without checking it separately
-                List<Path> files = fileStream.filter(Files::isRegularFile).toList();
-
-                if (files.isEmpty()) {
-                    System.out.println(dir + " is empty");
-                } else {
-                    for (Path file : files) {
-                        String fileName = file.getFileName().toString();
-                        if (fileName.endsWith(".txt")) { // Ensure it's a .txt file
-                            try {
-                                int orderId = Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.')));
-                                orderIds.add(orderId);
-                                System.out.println(orderId);
-                            } catch (NumberFormatException e) {
-                                System.out.println("Invalid file name: " + fileName);
-                            }
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                System.out.println("Error reading " + dir + ", " + e.getMessage());
+        log.info("orderMap initialized", "orders", orderMap.size(), "scanned", scanned,
+                "millis", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Takes a final snapshot of the order map and closes its log, so the next start has nothing to replay.
+     * Called when the headless runtime or the GUI stops; without it the next start replays the log instead.
+     */
+    public synchronized void closeOrderMapLog() {
+        if (orderMapLog != null) {
+            orderMapLog.close(uncollectedOrders());
+            orderMapLog = null;
+        }
+    }
+
+    // Logs a change of orderMap (after the order store recorded it), and starts a snapshot when one is due
+    private void logOrderMapChange(int orderId, OrderState newState) {
+        if (orderMapLog == null) {
+            return;
+        }
+        try {
+            if (newState == OrderState.Collected) {
+                orderMapLog.remove(orderId); //collected orders are not loaded at the next start
+            } else {
+                orderMapLog.put(orderId, newState);
+            }
+            if (orderMapLog.snapshotDue()) {
+                orderMapLog.checkpoint(uncollectedOrders(), false);
             }
-        } else {
-            System.out.println(dir + " does not exist.");
+        } catch (IOException e) {
+            log.error("Error logging an order map change, the order log is turned off", e, "orderId", orderId);
+            invalidateOrderMapLog();
+        }
+    }
+
+    // The snapshot and log no longer match the orders, so they are dropped and the next start scans the order store
+    private void invalidateOrderMapLog() {
+        if (orderMapLog != null) {
+            orderMapLog.invalidate();
+            orderMapLog = null;
         }
-        return orderIds;
     }
 
+    // The orders in orderMap that are not collected, as they are loaded at startup
+    private TreeMap<Integer, OrderState> uncollectedOrders() {
+        TreeMap<Integer, OrderState> uncollected = new TreeMap<>();
+        for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
+            if (entry.getValue() != OrderState.Collected) {
+                uncollected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return uncollected;
+    }
 }
@@ -0,0 +1,258 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.utility.Logger;
+import ci553.happyshop.utility.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StockReservationManager holds stock for customers while they fill their trolleys, so a product a customer
+ * has added is not sold to someone else before they check out. Without it, stock is only checked at checkout,
+ * and under contention customers lose trolley lines in purchaseStocks (see RemoveProductNotifier).
+ *
+ * - reserve(): called when a product is added to a trolley. It places (or grows) a hold of that many units,
+ *   if the product's stock minus the units already held by other trolleys is enough.
+ * - release() / releaseAll(): called when products are removed from a trolley or the trolley is cancelled.
+ * - convert(): called once checkout has bought the stock (purchaseStocks took it off inStock), so the holds of
+ *   the bought lines are no longer needed.
+ * - Holds expire after a short time (happyshop.reservation.ttlSeconds, default 300), refreshed by every
+ *   reserve() for the product; a TimerWheel releases expired holds, so abandoned trolleys free their stock.
+ *   The trolley keeps its lines; getHeld() tells it how much of a line is still held, so it can hold the
+ *   whole line again the next time the product is added.
+ *
+ * Holds live only in memory: reserving is an atomic counter update, with no database write.
+ * Each product has one counter of units held; a reservation is a compare-and-set on it, so customers reserving
+ * different products never wait for each other. Holds are advisory: they only bind the customers of this JVM
+ * that use the manager, and purchaseStocks still makes the final stock check.
+ *
+ * Like OrderHub, it is a singleton shared by all customers of the JVM.
+ */
+
+public class StockReservationManager {
+    private static final Logger log = Logger.getLogger(StockReservationManager.class);
+    private static StockReservationManager reservationManager; // singleton instance
+
+    private static final long DEFAULT_TTL_SECONDS = Long.getLong("happyshop.reservation.ttlSeconds", 300);
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 1024; // one turn of the wheel is about 100 seconds
+
+    // The units of one product held by one trolley, until it expires
+    private static final class Hold {
+        final String productId;
+        int quantity;                 // guarded by the holder's holds map
+        TimerWheel.Timeout expiry;    // guarded by the holder's holds map
+
+        Hold(String productId) {
+            this.productId = productId;
+        }
+    }
+
+    private final ConcurrentHashMap<String, AtomicInteger> reservedByProduct = new ConcurrentHashMap<>();
+    // holderId -> (productId -> Hold); each holder's map is also the lock for its holds
+    private final ConcurrentHashMap<String, HashMap<String, Hold>> holdsByHolder = new ConcurrentHashMap<>();
+    private final TimerWheel timerWheel;
+    private final long ttlMillis;
+
+    private final LongAdder reservations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder conversions = new LongAdder();
+
+    //Singleton pattern
+    public static synchronized StockReservationManager getReservationManager() {
+        if (reservationManager == null) {
+            reservationManager = new StockReservationManager(TimeUnit.SECONDS.toMillis(DEFAULT_TTL_SECONDS));
+            StockReservationManager manager = reservationManager;
+            DatabaseRWFactory.getMetricsRegistry().registerGauge("StockReservations", manager::metricsSummary);
+        }
+        return reservationManager;
+    }
+
+    // A separate manager with its own expiry time, eg for a test or a load test run
+    public StockReservationManager(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.timerWheel = new TimerWheel("StockReservations", TICK_MILLIS, WHEEL_SIZE);
+    }
+
+    /**
+     * Holds quantity more units of the product for the holder, and restarts the hold's expiry time.
+     *
+     * @param holderId a name for the trolley, unique in the JVM
+     * @param product  the product, with its stock as last read from the database
+     * @return true if the units are held, false if the stock not held by other trolleys is not enough
+     */
+    public boolean reserve(String holderId, Product product, int quantity) {
+        String productId = product.getProductId();
+        AtomicInteger reserved = reservedByProduct.computeIfAbsent(productId, id -> new AtomicInteger());
+        HashMap<String, Hold> holds = holdsByHolder.computeIfAbsent(holderId, id -> new HashMap<>());
+        synchronized (holds) {
+            if (holdsByHolder.get(holderId) != holds) { // emptied and dropped meanwhile, start again with a new map
+                return reserve(holderId, product, quantity);
+            }
+            Hold hold = holds.get(productId);
+            int heldHere = hold == null ? 0 : hold.quantity;
+            // the stock is shared by everyone; what this trolley already holds is part of reserved
+            while (true) {
+                int current = reserved.get();
+                int heldElsewhere = current - heldHere;
+                if (product.getStockQuantity() - heldElsewhere < heldHere + quantity) {
+                    if (holds.isEmpty()) {
+                        holdsByHolder.remove(holderId, holds);
+                    }
+                    rejections.increment();
+                    log.debug("Reservation refused", "productId", productId, "held", current);
+                    return false;
+                }
+                if (reserved.compareAndSet(current, current + quantity)) {
+                    break;
+                }
+            }
+            if (hold == null) {
+                hold = new Hold(productId);
+                holds.put(productId, hold);
+            } else {
+                hold.expiry.cancel();
+            }
+            hold.quantity += quantity;
+            Hold expiring = hold;
+            hold.expiry = timerWheel.schedule(() -> expire(holderId, expiring), ttlMillis, TimeUnit.MILLISECONDS);
+        }
+        reservations.increment();
+        return true;
+    }
+
+    // The units of the product held by the holder; 0 once its hold has expired, been released or bought
+    public int getHeld(String holderId, String productId) {
+        HashMap<String, Hold> holds = holdsByHolder.get(holderId);
+        if (holds == null) {
+            return 0;
+        }
+        synchronized (holds) {
+            Hold hold = holds.get(productId);
+            return hold == null ? 0 : hold.quantity;
+        }
+    }
+
+    // The units of the product held in other trolleys than the holder's
+    public int getHeldByOthers(String holderId, String productId) {
+        AtomicInteger reserved = reservedByProduct.get(productId);
+        int total = reserved == null ? 0 : reserved.get();
+        HashMap<String, Hold> holds = holdsByHolder.get(holderId);
+        if (holds != null) {
+            synchronized (holds) {
+                Hold hold = holds.get(productId);
+                total -= hold == null ? 0 : hold.quantity;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gives back up to quantity units of the holder's hold on the product (eg one unit removed from the trolley).
+     * Does nothing if there is no hold, eg because it has expired.
+     */
+    public void release(String holderId, String productId, int quantity) {
+        HashMap<String, Hold> holds = holdsByHolder.get(holderId);
+        if (holds == null) {
+            return;
+        }
+        synchronized (holds) {
+            Hold hold = holds.get(productId);
+            if (hold == null) {
+                return;
+            }
+            int released = Math.min(quantity, hold.quantity);
+            hold.quantity -= released;
+            reservedByProduct.get(productId).addAndGet(-released);
+            if (hold.quantity == 0) {
+                hold.expiry.cancel();
+                holds.remove(productId);
+                if (holds.isEmpty()) {
+                    holdsByHolder.remove(holderId, holds);
+                }
+            }
+        }
+    }
+
+    // Gives back every hold of the holder, eg when the trolley is cancelled
+    public void releaseAll(String holderId) {
+        removeHolds(holderId, null);
+    }
+
+    /**
+     * Called after checkout has bought the lines (purchaseStocks has taken them off inStock):
+     * the holds on those products are dropped, as the stock they kept is now sold.
+     */
+    public void convert(String holderId, List<Product> boughtLines) {
+        ArrayList<String> productIds = new ArrayList<>();
+        for (Product line : boughtLines) {
+            productIds.add(line.getProductId());
+        }
+        int converted = removeHolds(holderId, productIds);
+        if (converted > 0) {
+            conversions.add(converted);
+        }
+    }
+
+    // Removes the holder's holds on the given products (all products if null); returns how many were removed
+    private int removeHolds(String holderId, List<String> productIds) {
+        HashMap<String, Hold> holds = holdsByHolder.get(holderId);
+        if (holds == null) {
+            return 0;
+        }
+        int removed = 0;
+        synchronized (holds) {
+            for (String productId : productIds == null ? new ArrayList<>(holds.keySet()) : productIds) {
+                Hold hold = holds.remove(productId);
+                if (hold != null) {
+                    hold.expiry.cancel();
+                    reservedByProduct.get(productId).addAndGet(-hold.quantity);
+                    removed++;
+                }
+            }
+            if (holds.isEmpty()) {
+                holdsByHolder.remove(holderId, holds);
+            }
+        }
+        return removed;
+    }
+
+    // Runs on the timer wheel's thread when a hold has not been refreshed, bought or released in time
+    private void expire(String holderId, Hold hold) {
+        HashMap<String, Hold> holds = holdsByHolder.get(holderId);
+        if (holds == null) {
+            return;
+        }
+        synchronized (holds) {
+            if (holds.get(hold.productId) != hold) {
+                return; // released or converted meanwhile
+            }
+            holds.remove(hold.productId);
+            reservedByProduct.get(hold.productId).addAndGet(-hold.quantity);
+            if (holds.isEmpty()) {
+                holdsByHolder.remove(holderId, holds); // an abandoned trolley leaves nothing behind
+            }
+        }
+        expirations.increment();
+        log.debug("Reservation expired", "holder", holderId, "productId", hold.productId, "quantity", hold.quantity);
+    }
+
+    // One line with the reservation counters, for the metrics dump
+    public String metricsSummary() {
+        long heldUnits = 0;
+        for (AtomicInteger reserved : reservedByProduct.values()) {
+            heldUnits += reserved.get();
+        }
+        return String.format("StockReservations[holders=%d, heldUnits=%d, reserved=%d, refused=%d, expired=%d, converted=%d, timers=%d]",
+                holdsByHolder.size(), heldUnits, reservations.sum(), rejections.sum(), expirations.sum(),
+                conversions.sum(), timerWheel.getPendingCount());
+    }
+}
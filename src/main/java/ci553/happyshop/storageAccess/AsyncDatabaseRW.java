@@ -0,0 +1,131 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * AsyncDatabaseRW is a non-blocking front for a DatabaseRW: every method runs the call on a virtual thread
+ * and returns a CompletableFuture straight away, so the JavaFX application thread never waits for Derby.
+ *
+ * Each call gets its own virtual thread. Virtual threads are cheap, so there is no thread pool to size;
+ * the number of database calls running at once is still limited by the ConnectionPool.
+ *
+ * An SQLException thrown by the wrapped DatabaseRW completes the future exceptionally (wrapped in a CompletionException).
+ *
+ * Results must not touch JavaFX controls on the virtual thread. Continue on the application thread instead:
+ *     asyncDatabaseRW.searchProduct("tv")
+ *             .thenAcceptAsync(products -> view.update(products), Platform::runLater);
+ *
+ * A search that the user has replaced with a newer one can be cancelled with future.cancel(false):
+ * the query may still finish in the background, but its result is thrown away and the
+ * continuations (which would update the view) never run.
+ */
+
+public class AsyncDatabaseRW {
+    // Shared by all instances; virtual-thread-per-task executors never need shutting down
+    private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final DatabaseRW databaseRW;
+
+    public AsyncDatabaseRW(DatabaseRW databaseRW) {
+        this.databaseRW = databaseRW;
+    }
+
+    // The virtual threads the calls run on, for other blocking work that follows a call (eg writing the
+    // order once purchaseStocks has bought its stock), so it stays off the application thread too
+    public static Executor getExecutor() {
+        return executor;
+    }
+
+    // The blocking DatabaseRW, for code that is already off the application thread
+    public DatabaseRW getDatabaseRW() {
+        return databaseRW;
+    }
+
+    public CompletableFuture<ArrayList<Product>> searchProduct(String keyword) {
+        return supply(() -> databaseRW.searchProduct(keyword));
+    }
+
+    public CompletableFuture<ProductPage> searchProductPage(String keyword, String afterProductId, int pageSize) {
+        return supply(() -> databaseRW.searchProductPage(keyword, afterProductId, pageSize));
+    }
+
+    // Fetches the next page of a pager. A ProductPager is not thread-safe, so only call this again once the previous page arrived.
+    public CompletableFuture<ArrayList<Product>> nextPage(ProductPager pager) {
+        return supply(pager::nextPage);
+    }
+
+    public CompletableFuture<Product> searchByProductId(String productId) {
+        return supply(() -> databaseRW.searchByProductId(productId));
+    }
+
+    public CompletableFuture<ArrayList<Product>> searchByProductIds(Collection<String> productIds) {
+        return supply(() -> databaseRW.searchByProductIds(productIds));
+    }
+
+    public CompletableFuture<ArrayList<Product>> suggestProducts(String prefix, int limit) {
+        return supply(() -> databaseRW.suggestProducts(prefix, limit));
+    }
+
+    public CompletableFuture<ArrayList<Product>> purchaseStocks(ArrayList<Product> proList) {
+        return supply(() -> databaseRW.purchaseStocks(proList));
+    }
+
+    public CompletableFuture<Void> updateProduct(String id, String des, double price, String imageName, int stock) {
+        return run(() -> databaseRW.updateProduct(id, des, price, imageName, stock));
+    }
+
+    public CompletableFuture<Void> deleteProduct(String id) {
+        return run(() -> databaseRW.deleteProduct(id));
+    }
+
+    public CompletableFuture<Void> insertNewProduct(String id, String des, double price, String image, int stock) {
+        return run(() -> databaseRW.insertNewProduct(id, des, price, image, stock));
+    }
+
+    public CompletableFuture<Boolean> isProIdAvailable(String productId) {
+        return supply(() -> databaseRW.isProIdAvailable(productId));
+    }
+
+    // Unwraps the CompletionException around the SQLException (or other error) that failed a future
+    public static Throwable causeOf(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    // A database call that returns a value
+    @FunctionalInterface
+    private interface SqlSupplier<T> {
+        T get() throws SQLException;
+    }
+
+    // A database call that returns nothing
+    @FunctionalInterface
+    private interface SqlRunnable {
+        void run() throws SQLException;
+    }
+
+    private static <T> CompletableFuture<T> supply(SqlSupplier<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.get();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static CompletableFuture<Void> run(SqlRunnable call) {
+        return supply(() -> {
+            call.run();
+            return null;
+        });
+    }
+}
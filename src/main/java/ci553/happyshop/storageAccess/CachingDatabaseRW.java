@@ -0,0 +1,164 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * CachingDatabaseRW is a decorator that answers product lookups from the shared in-memory ProductCatalogueCache
+ * and passes everything else on to the wrapped DatabaseRW (normally a DerbyRW).
+ *
+ * Reads:
+ * - searchProduct() and searchByProductId() are served from memory. An ID that is not in the snapshot is read through
+ *   from the database (it may have been inserted by another process) and added to the cache if it exists.
+ * - Name searches use the cache's inverted index rather than a LIKE '%keyword%' table scan: every word typed must
+ *   start a word of the description (so "usb dr" finds "USB2 drive"), and results come back best match first.
+ * - suggestProducts() is answered from the cache's sorted word index (ProductSuggester) for the customer's
+ *   type-ahead suggestions.
+ *
+ * Writes:
+ * - updateProduct, deleteProduct, insertNewProduct and purchaseStocks go to the database first.
+ *   Once they have committed, the affected entries are re-read so the next search sees the new values.
+ *
+ * Because the cache is shared, a warehouse edit made through one client's CachingDatabaseRW is immediately
+ * visible to the searches of every other client in the same JVM.
+ */
+
+public class CachingDatabaseRW implements DatabaseRW {
+    private final DatabaseRW delegate;
+    private final ProductCatalogueCache cache;
+
+    public CachingDatabaseRW(DatabaseRW delegate, ProductCatalogueCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    // Same rules as DerbyRW: an exact product ID match first, otherwise a description match, "*" for everything.
+    // Description matches come from the inverted index and are ranked by relevance, except that a keyword ending in
+    // '*' only matches descriptions starting with it (in product ID order), as DerbyRW and MemoryRW do.
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        cache.ensureFresh(delegate);
+        cache.recordHit();
+        if (keyword.equals("*")) {
+            return cache.getAll();
+        }
+        ArrayList<Product> productList = new ArrayList<>();
+        Product product = cache.get(keyword);
+        if (product != null) {
+            productList.add(product);
+            return productList;
+        }
+        return cache.searchByDescription(keyword);
+    }
+
+    // Pages are cut from the in-memory snapshot, in product ID order, continuing after the cursor.
+    public ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        cache.ensureFresh(delegate);
+        cache.recordHit();
+        if (afterProductId == null) { // an exact product ID match is a page of its own
+            Product product = cache.get(keyword);
+            if (product != null) {
+                ArrayList<Product> productList = new ArrayList<>();
+                productList.add(product);
+                return new ProductPage(productList, null);
+            }
+        }
+        return ProductPage.fromRows(cache.pageAfter(keyword, afterProductId, pageSize + 1), pageSize);
+    }
+
+    public Product searchByProductId(String productId) throws SQLException {
+        cache.ensureFresh(delegate);
+        Product product = cache.get(productId);
+        if (product != null) {
+            cache.recordHit();
+            return product;
+        }
+        // read through: the product may have been added since the snapshot was taken
+        cache.recordMiss();
+        long mark = cache.writeMark();
+        product = delegate.searchByProductId(productId);
+        if (product != null) {
+            cache.putIfNoWriteSince(List.of(product), mark);
+        }
+        return product;
+    }
+
+    // Type-ahead suggestions come from the cache's sorted word index, which is kept up to date as products change.
+    public ArrayList<Product> suggestProducts(String prefix, int limit) throws SQLException {
+        cache.ensureFresh(delegate);
+        cache.recordHit();
+        return cache.suggest(prefix, limit);
+    }
+
+    // Several products at once: those in the snapshot come from memory, the rest with one multi-get from the database.
+    public ArrayList<Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        cache.ensureFresh(delegate);
+        TreeMap<String, Product> found = new TreeMap<>(); // ordered by product ID, like the database
+        ArrayList<String> missingIds = new ArrayList<>();
+        for (String productId : productIds) {
+            Product product = cache.get(productId);
+            if (product != null) {
+                cache.recordHit();
+                found.put(productId, product);
+            } else {
+                cache.recordMiss();
+                missingIds.add(productId);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            long mark = cache.writeMark();
+            ArrayList<Product> readThrough = delegate.searchByProductIds(missingIds);
+            cache.putIfNoWriteSince(readThrough, mark);
+            for (Product product : readThrough) {
+                found.put(product.getProductId(), product);
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    // The affected entries are re-read with one multi-get rather than one query per trolley line.
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> insufficientProducts = delegate.purchaseStocks(proList);
+        ArrayList<String> changedIds = new ArrayList<>();
+        if (insufficientProducts.isEmpty()) {
+            for (Product product : proList) { // committed: every product in the trolley has new stock
+                changedIds.add(product.getProductId());
+            }
+        } else {
+            for (Product product : insufficientProducts) { // rolled back: our stock figures for these were too high
+                changedIds.add(product.getProductId());
+            }
+        }
+        cache.refreshAll(changedIds, delegate);
+        return insufficientProducts;
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException {
+        delegate.updateProduct(id, des, price, imageName, stock);
+        cache.refresh(id, delegate);
+    }
+
+    public void deleteProduct(String id) throws SQLException {
+        delegate.deleteProduct(id);
+        cache.remove(id);
+    }
+
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        delegate.insertNewProduct(id, des, price, image, stock);
+        cache.refresh(id, delegate);
+    }
+
+    // A cached ID is certainly taken; otherwise ask the database, which is the authority on uniqueness.
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        if (cache.contains(productId)) {
+            cache.recordHit();
+            return false;
+        }
+        cache.recordMiss();
+        return delegate.isProIdAvailable(productId);
+    }
+}
@@ -0,0 +1,243 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ConnectionPool class keeps a bounded set of open JDBC connections that are shared by all DerbyRW instances.
+ *
+ * Opening a Derby connection is far more expensive than running a simple query on it, so instead of calling
+ * DriverManager.getConnection() for every database operation, connections are borrowed from this pool and
+ * returned to it when the caller closes the PooledConnection handle.
+ *
+ * Features:
+ * - Bounded: at most maxSize connections are open at any time. A Semaphore hands out one permit per borrowed connection.
+ * - Warm-up: warmUp() opens minIdle connections up front so the first customers do not pay the connection cost.
+ * - Max-wait timeout: if every connection is in use, borrow() waits up to maxWaitMillis and then throws an SQLException.
+ * - Idle eviction: a background task closes connections that have been idle longer than idleTimeoutMillis,
+ *   but never shrinks the pool below minIdle.
+ * - Metrics: borrowed, idle and total connections, number of waiting threads, borrow/timeout counts and wait times.
+ * - Statement caching: every pooled connection keeps up to statementCacheSize PreparedStatements (see PooledConnection),
+ *   and the pool adds up their hit/miss counters.
+ *
+ * Idle connections are kept in a deque and reused most-recently-used first, so a lightly loaded system keeps
+ * reusing a few warm connections while the rarely used ones age out and get evicted.
+ */
+
+public class ConnectionPool {
+    private static final Logger log = Logger.getLogger(ConnectionPool.class);
+    private final String dbURL;
+    private final int minIdle;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits; // one permit per connection that may be borrowed
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // pool-level metrics
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger borrowedConnections = new AtomicInteger();
+    private final AtomicInteger waitingThreads = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    /**
+     * @param dbURL             the JDBC URL used to open new connections
+     * @param minIdle           the number of connections opened by warmUp() and never evicted
+     * @param maxSize           the maximum number of connections open at the same time
+     * @param maxWaitMillis     how long borrow() waits for a free connection before giving up
+     * @param idleTimeoutMillis how long a connection may stay idle before it is evicted
+     * @param statementCacheSize how many PreparedStatements each connection keeps cached
+     */
+    public ConnectionPool(String dbURL, int minIdle, int maxSize, long maxWaitMillis, long idleTimeoutMillis,
+                          int statementCacheSize) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: minIdle=" + minIdle + ", maxSize=" + maxSize);
+        }
+        this.dbURL = dbURL;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true); // fair, so waiting threads are served in arrival order
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ConnectionPool-evictor");
+            thread.setDaemon(true); // must not keep the JVM alive after the windows are closed
+            return thread;
+        });
+        long evictionInterval = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // Opens connections until minIdle connections are ready in the pool.
+    public void warmUp() throws SQLException {
+        while (totalConnections.get() < minIdle && !closed) {
+            idleConnections.offerFirst(openConnection());
+        }
+        log.info("Connection pool warmed up", "connections", totalConnections.get());
+    }
+
+    /**
+     * Borrows a connection from the pool. The caller must close the returned handle (ideally with
+     * try-with-resources), which gives the connection back to the pool rather than closing it.
+     *
+     * @return a pooled connection handle
+     * @throws SQLException if no connection becomes free within maxWaitMillis, or a new connection cannot be opened
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long waitStart = System.nanoTime();
+        waitingThreads.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waitingThreads.decrementAndGet();
+        }
+        recordWait(System.nanoTime() - waitStart);
+        if (!acquired) {
+            timeoutCount.increment();
+            throw new SQLException("Timed out after " + maxWaitMillis + "ms waiting for a database connection ("
+                    + borrowedConnections.get() + "/" + maxSize + " in use)");
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                if (pooled.isUsable()) {
+                    break;
+                }
+                discard(pooled); // closed underneath us (e.g. database shut down), throw it away and try the next one
+            }
+            if (pooled == null) {
+                pooled = openConnection();
+            }
+            borrowedConnections.incrementAndGet();
+            borrowCount.increment();
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            permits.release(); // the permit must not leak if opening the connection failed
+            throw e;
+        }
+    }
+
+    // Called by PooledConnection.close(): resets the connection and puts it back into the idle deque.
+    void release(PooledConnection pooled) {
+        borrowedConnections.decrementAndGet();
+        try {
+            if (closed || !pooled.resetForReuse()) {
+                discard(pooled);
+            } else {
+                pooled.markIdle();
+                idleConnections.offerFirst(pooled); // most recently used first
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Closes idle connections that exceeded idleTimeoutMillis, keeping at least minIdle connections open.
+    private void evictIdleConnections() {
+        long now = System.nanoTime();
+        Iterator<PooledConnection> oldestFirst = idleConnections.descendingIterator();
+        while (oldestFirst.hasNext() && totalConnections.get() > minIdle) {
+            PooledConnection pooled = oldestFirst.next();
+            if (now - pooled.getLastUsedNanos() < TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+                break; // the rest of the deque was used more recently
+            }
+            if (idleConnections.remove(pooled)) {
+                discard(pooled);
+                evictedCount.increment();
+            }
+        }
+    }
+
+    // Closes every idle connection and rejects further borrowing. Borrowed connections are closed when released.
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(dbURL);
+        totalConnections.incrementAndGet();
+        return new PooledConnection(connection, this, statementCacheSize);
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        pooled.closePhysically();
+    }
+
+    // Called by PooledConnection.prepareStatement() to add up the statement cache counters of all connections
+    void recordStatementCacheHit() { statementCacheHits.increment(); }
+    void recordStatementCacheMiss() { statementCacheMisses.increment(); }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    // a set of getter methods for pool metrics
+    public int getMaxSize() { return maxSize; }
+    public int getTotalConnections() { return totalConnections.get(); }
+    public int getIdleConnections() { return idleConnections.size(); }
+    public int getBorrowedConnections() { return borrowedConnections.get(); }
+    public int getWaitingThreads() { return waitingThreads.get(); }
+    public long getBorrowCount() { return borrowCount.sum(); }
+    public long getTimeoutCount() { return timeoutCount.sum(); }
+    public long getEvictedCount() { return evictedCount.sum(); }
+    public double getTotalWaitMillis() { return totalWaitNanos.sum() / 1_000_000.0; }
+    public double getMaxWaitMillis() { return maxWaitNanos.get() / 1_000_000.0; }
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.sum() + timeoutCount.sum();
+        return borrows == 0 ? 0 : getTotalWaitMillis() / borrows;
+    }
+    public long getStatementCacheHits() { return statementCacheHits.sum(); }
+    public long getStatementCacheMisses() { return statementCacheMisses.sum(); }
+    public double getStatementCacheHitRate() {
+        long lookups = statementCacheHits.sum() + statementCacheMisses.sum();
+        return lookups == 0 ? 0 : (double) statementCacheHits.sum() / lookups;
+    }
+
+    // A one-line summary of the pool metrics, handy for printing or logging.
+    public String metricsSummary() {
+        return String.format("ConnectionPool[total=%d, idle=%d, borrowed=%d, waiting=%d, borrows=%d, timeouts=%d, " +
+                        "evicted=%d, avgWait=%.3fms, maxWait=%.3fms, stmtCacheHits=%d, stmtCacheMisses=%d]",
+                getTotalConnections(), getIdleConnections(), getBorrowedConnections(), getWaitingThreads(),
+                getBorrowCount(), getTimeoutCount(), getEvictedCount(), getAverageWaitMillis(), getMaxWaitMillis(),
+                getStatementCacheHits(), getStatementCacheMisses());
+    }
+}
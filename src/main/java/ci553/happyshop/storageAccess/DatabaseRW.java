@@ -4,6 +4,7 @@ import ci553.happyshop.catalogue.Product;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * The DatabaseRW interface defines the contract for interacting with the product database.
@@ -29,7 +30,13 @@ import java.util.ArrayList;
 public interface DatabaseRW {
 
     /**
-     * Searches for products by a keyword, which may match the product ID or appear in the description.
+     * Searches for products by a keyword, which may match the product ID or the description, ignoring case:
+     * - "*" matches every product;
+     * - a keyword ending in '*' (eg "usb*") matches the descriptions starting with it;
+     * - any other keyword matches the descriptions with a word starting with each of its words
+     *   (eg "usb dr" matches "USB2 drive", but "sb" does not).
+     * Every implementation finds the same products. They come in product ID order, except that
+     * CachingDatabaseRW ranks the matches of a keyword without '*' by relevance, best match first.
      *
      * @param keyword the keyword to search for
      * @return a list of products matching the keyword
@@ -37,6 +44,18 @@ public interface DatabaseRW {
      */
     ArrayList<Product> searchProduct(String keyword) throws SQLException;
 
+    /**
+     * Returns one page of the results of searchProduct(keyword), ordered by product ID.
+     * Pages use keyset pagination: pass null to get the first page, then the previous page's next cursor.
+     * An exact product ID match is returned as a single, last page, like searchProduct() does.
+     *
+     * @param keyword        the keyword to search for, or "*" for all products
+     * @param afterProductId the cursor (product ID) to continue after, or null for the first page
+     * @param pageSize       the maximum number of products on the page
+     * @return the page of products, with the cursor for the next page if there is one
+     */
+    ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException;
+
     /**
      * Searches for a product by its unique product ID.
      * @param productId the product ID
@@ -44,6 +63,23 @@ public interface DatabaseRW {
      */
     Product searchByProductId(String productId) throws SQLException;
 
+    /**
+     * Fetches several products at once, in a single round trip rather than one query per product.
+     * @param productIds the product IDs to fetch; duplicates are ignored
+     * @return the products that exist, ordered by product ID (IDs that are not found are left out)
+     */
+    ArrayList<Product> searchByProductIds(Collection<String> productIds) throws SQLException;
+
+    /**
+     * Suggests products for a search box as the user types.
+     * A product is suggested if its product ID, its description, or any word of its description starts with the prefix.
+     *
+     * @param prefix what the user has typed so far (case is ignored)
+     * @param limit  the maximum number of suggestions to return
+     * @return up to limit suggested products
+     */
+    ArrayList<Product> suggestProducts(String prefix, int limit) throws SQLException;
+
     /**
      * Attempts to purchase (reduce stocks of) the given list of products.
      * Behavior:
@@ -1,12 +1,32 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.utility.MetricsRegistry;
+import ci553.happyshop.utility.MetricsReporter;
+import ci553.happyshop.utility.SimpleMetricsRegistry;
+import ci553.happyshop.utility.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
 /**
  * The DatabaseRWFactory class centralizes database configuration and object creation.
  * It acts as a factory pattern to provide flexible instantiation of the DatabaseRW interface.
  *
  * Responsibilities:
  * - Holds the database URL used to connect to the database.
- * - Creates instances of DatabaseRW (e.g., DerbyRW, MySQLRW, SQLiteRW).
+ * - Owns the ConnectionPool shared by all DatabaseRW instances, so every client reuses the same open connections.
+ * - Owns the ProductCatalogueCache shared by all DatabaseRW instances, so searches are answered from memory.
+ * - Owns the MetricsRegistry that records the latency of every DatabaseRW call, plus pool and cache gauges.
+ * - Owns the StockChangePublisher that tells open screens which products have been changed by any DatabaseRW.
+ * - Creates instances of DatabaseRW (e.g., DerbyRW, MySQLRW, SQLiteRW), wrapped in a CachingDatabaseRW,
+ *   a PublishingDatabaseRW and a MetricsDatabaseRW.
+ * - With -Dhappyshop.db=memory, creates MemoryRW instead: the products are held in memory and persisted
+ *   in a write-ahead log (happyshop.memoryDir, default happyShopMemoryDB). On its first start it is filled
+ *   with the products of the Derby database. It needs no catalogue cache, as it is already in memory.
  *
  * Benefits:
  * - Database Abstraction: Keeps the system decoupled from specific database implementations.
@@ -21,14 +41,185 @@ package ci553.happyshop.storageAccess;
  */
 
 public class DatabaseRWFactory {
+    private static final Logger log = Logger.getLogger(DatabaseRWFactory.class);
 
     public static String dbURL = "jdbc:derby:happyShopDB"; //or other database URL in the future (eg MySQLRW or SQLiteRW)
 
+    // Connection pool settings
+    private static final int POOL_MIN_IDLE = 2;                 // connections opened at warm-up and never evicted
+    private static final int POOL_MAX_SIZE = 10;                // upper bound of open connections
+    private static final long POOL_MAX_WAIT_MILLIS = 5_000;     // how long a caller waits for a free connection
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = 60_000; // idle connections above POOL_MIN_IDLE are closed after this
+    private static final int STATEMENT_CACHE_SIZE = 32;         // PreparedStatements cached per pooled connection
+
+    // Catalogue cache settings
+    private static final long CATALOGUE_MAX_SNAPSHOT_AGE_MILLIS = 60_000; // re-read the whole table after this
+
+    // Stock change settings: how long changes are gathered before open screens are told about them
+    private static final long STOCK_CHANGE_COALESCE_MILLIS = Long.getLong("happyshop.stockChanges.coalesceMillis", 100);
+
+    // Metrics settings: set -Dhappyshop.metricsDumpSeconds=30 to log the metrics every 30 seconds
+    private static final long METRICS_DUMP_SECONDS = Long.getLong("happyshop.metricsDumpSeconds", 0);
+
+    // Backend settings: -Dhappyshop.db=memory selects MemoryRW instead of Derby
+    private static final boolean MEMORY_BACKEND = "memory".equalsIgnoreCase(System.getProperty("happyshop.db", "derby"));
+    private static final String MEMORY_DIR = System.getProperty("happyshop.memoryDir", "happyShopMemoryDB");
+    private static final boolean MEMORY_FSYNC = Boolean.getBoolean("happyshop.memory.fsync"); // wait for the disk on every change
+    private static final int MEMORY_SNAPSHOT_EVERY_RECORDS = 10_000;
+
+    private static ConnectionPool connectionPool; // created on first use, shared by all DatabaseRW instances
+    private static MemoryRW memoryRW;             // created on first use when the memory backend is selected
+    private static ProductCatalogueCache catalogueCache; // created on first use, shared by all DatabaseRW instances
+    private static MetricsRegistry metricsRegistry;      // created on first use, shared by all DatabaseRW instances
+    private static StockChangePublisher stockChangePublisher; // created on first use, shared by all DatabaseRW instances
+
+    // True if -Dhappyshop.db=memory selected MemoryRW, eg for tools that write to Derby directly otherwise
+    public static boolean isMemoryBackend() {
+        return MEMORY_BACKEND;
+    }
+
+    /**
+     * Returns the connection pool shared by all DatabaseRW instances, creating and warming it up on first use.
+     * The database schema is migrated (see SchemaMigrator) before the pool is handed out.
+     */
+    public static synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool(dbURL, POOL_MIN_IDLE, POOL_MAX_SIZE,
+                    POOL_MAX_WAIT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS, STATEMENT_CACHE_SIZE);
+            try {
+                connectionPool.warmUp();
+            } catch (SQLException e) {
+                // Not fatal: connections will be opened on demand, and the error will surface there
+                log.warn("Connection pool warm-up failed", e);
+            }
+            try (PooledConnection pooled = connectionPool.borrow()) {
+                SchemaMigrator.migrate(pooled.getConnection()); // bring databases made before a schema change up to date
+            } catch (SQLException e) {
+                log.error("Schema migration failed, name searches will fail until it succeeds", e);
+            }
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Returns the in-memory product catalogue shared by all DatabaseRW instances.
+     */
+    public static synchronized ProductCatalogueCache getCatalogueCache() {
+        if (catalogueCache == null) {
+            catalogueCache = new ProductCatalogueCache(CATALOGUE_MAX_SNAPSHOT_AGE_MILLIS);
+        }
+        return catalogueCache;
+    }
+
     /**
-     * Creates an instance of DatabaseRW (currently returning DerbyRW, but can be modified to return other implementations).
+     * Returns the publisher of the product changes made through any DatabaseRW, for screens to subscribe to.
+     */
+    public static synchronized StockChangePublisher getStockChangePublisher() {
+        if (stockChangePublisher == null) {
+            stockChangePublisher = new StockChangePublisher(STOCK_CHANGE_COALESCE_MILLIS);
+        }
+        return stockChangePublisher;
+    }
+
+    /**
+     * Returns the registry holding the metrics of all DatabaseRW instances. Call dump() on it to see them.
+     * On first use, gauges for the connection pool and catalogue cache are registered, and if
+     * happyshop.metricsDumpSeconds is set, a MetricsReporter starts logging the metrics on that schedule.
+     */
+    public static synchronized MetricsRegistry getMetricsRegistry() {
+        if (metricsRegistry == null) {
+            metricsRegistry = new SimpleMetricsRegistry();
+            if (MEMORY_BACKEND) {
+                metricsRegistry.registerGauge("MemoryRW", () -> getMemoryRW().metricsSummary());
+            } else {
+                metricsRegistry.registerGauge("ConnectionPool", () -> getConnectionPool().metricsSummary());
+                metricsRegistry.registerGauge("ProductCatalogueCache", () -> getCatalogueCache().metricsSummary());
+            }
+            metricsRegistry.registerGauge("StockChangePublisher", () -> getStockChangePublisher().metricsSummary());
+            if (METRICS_DUMP_SECONDS > 0) {
+                new MetricsReporter(metricsRegistry, log::info).start(METRICS_DUMP_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+        return metricsRegistry;
+    }
+
+    /**
+     * Returns the MemoryRW shared by all DatabaseRW instances, opening (and recovering) it on first use.
+     * A new, empty store is filled once with the products of the Derby database, if there is one.
+     */
+    public static synchronized MemoryRW getMemoryRW() {
+        if (memoryRW == null) {
+            try {
+                memoryRW = new MemoryRW(Path.of(MEMORY_DIR), MEMORY_FSYNC, MEMORY_SNAPSHOT_EVERY_RECORDS);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open the memory database in " + MEMORY_DIR, e);
+            }
+            if (memoryRW.isNew()) {
+                importFromDerby(memoryRW);
+            }
+        }
+        return memoryRW;
+    }
+
+    // Copies every product of the Derby database into a new MemoryRW, through a small pool closed afterwards
+    private static void importFromDerby(MemoryRW target) {
+        ConnectionPool importPool = new ConnectionPool(dbURL, 0, 1,
+                POOL_MAX_WAIT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS, STATEMENT_CACHE_SIZE);
+        try {
+            target.importProducts(new DerbyRW(importPool).searchProduct("*"));
+            target.checkpoint(); // so the next start loads a snapshot rather than replaying the import
+            log.info("Memory database filled from Derby", "products", target.getProductCount());
+        } catch (SQLException | IOException e) {
+            log.warn("Could not import the products from Derby, the memory database starts empty", e);
+        } finally {
+            importPool.close();
+        }
+    }
+
+    /**
+     * Creates an instance of DatabaseRW (DerbyRW, or MemoryRW if happyshop.db=memory).
+     * A DerbyRW is wrapped in a CachingDatabaseRW so product lookups are served from the shared catalogue cache;
+     * either is wrapped in a PublishingDatabaseRW so open screens hear about its writes,
+     * and in a MetricsDatabaseRW so every call is counted and timed.
      */
     public static DatabaseRW createDatabaseRW() {
-        return new DerbyRW(); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+        if (MEMORY_BACKEND) {
+            DatabaseRW publishingRW = new PublishingDatabaseRW(getMemoryRW(), getStockChangePublisher());
+            return new MetricsDatabaseRW(publishingRW, getMetricsRegistry());
+        }
+        DatabaseRW derbyRW = new DerbyRW(getConnectionPool()); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+        DatabaseRW cachingRW = new CachingDatabaseRW(derbyRW, getCatalogueCache());
+        DatabaseRW publishingRW = new PublishingDatabaseRW(cachingRW, getStockChangePublisher());
+        return new MetricsDatabaseRW(publishingRW, getMetricsRegistry());
+    }
+
+    /**
+     * Closes the shared connection pool and shuts Derby down cleanly, so the next start does not need
+     * to recover the database (and closes the MemoryRW, with a final snapshot). Used by the headless
+     * runtime when it stops; DatabaseRW instances must not be used afterwards.
+     */
+    public static synchronized void shutdown() {
+        if (stockChangePublisher != null) {
+            stockChangePublisher.close();
+            stockChangePublisher = null;
+        }
+        if (memoryRW != null) {
+            memoryRW.close();
+            memoryRW = null;
+        }
+        if (connectionPool == null) {
+            return; // the database was never opened
+        }
+        connectionPool.close();
+        connectionPool = null;
+        try {
+            DriverManager.getConnection("jdbc:derby:;shutdown=true");
+        } catch (SQLException e) {
+            // Derby reports a successful shutdown as an SQLException with state XJ015
+            if (!"XJ015".equals(e.getSQLState())) {
+                log.warn("Derby shutdown failed", e);
+            }
+        }
     }
 }
 
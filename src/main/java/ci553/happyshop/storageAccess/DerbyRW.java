@@ -1,9 +1,18 @@
 package ci553.happyshop.storageAccess;
 
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.utility.LogLevel;
+import ci553.happyshop.utility.Logger;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -17,11 +26,31 @@ import java.util.concurrent.locks.ReentrantLock;
  * "inStock INT," +
  * "CHECK (inStock >= 0)" +
  * ")",
+ * plus, added by SchemaMigrator:
+ * "descriptionLower VARCHAR(100) GENERATED ALWAYS AS (LOWER(description))", indexed by ProductDescLowerIdx
+ *
+ * Name searches compare against descriptionLower, so no row is lower-cased at query time.
+ * A keyword ending in '*' (eg "usb*") is a prefix search: descriptions starting with it,
+ * found with an index range scan. Any other keyword matches the descriptions with a word starting with
+ * each of its words, as DatabaseRW.searchProduct() describes.
  */
 
 public class DerbyRW implements DatabaseRW {
-    private static String dbURL = DatabaseRWFactory.dbURL; // Shared by all instances
+    private static final Logger log = Logger.getLogger(DerbyRW.class);
+    private final ConnectionPool connectionPool; // Shared by all instances, owned by DatabaseRWFactory
     private Lock lock = new ReentrantLock(); // Each instance has its own lock
+    private static final int MAX_PURCHASE_ATTEMPTS = 5; // purchaseStocks gives up after this many lock conflicts
+    private static final int MAX_IN_LIST_SIZE = 64;     // most product IDs fetched by one searchByProductIds query
+
+    // Uses the connection pool shared by the whole system
+    public DerbyRW() {
+        this(DatabaseRWFactory.getConnectionPool());
+    }
+
+    // Uses the given connection pool, eg. one pointing at a different database
+    public DerbyRW(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
 
     //search product by product Id or name, return a list of products or null
     //search by Id at first, if get null, search by product name
@@ -40,7 +69,95 @@ public class DerbyRW implements DatabaseRW {
 
         // If still no products found, print a message
         if (productList.isEmpty()) {
-            System.out.println("Product " + keyword + " not found.");
+            log.debug("Product not found", "keyword", keyword);
+        }
+        return productList;
+    }
+
+    //search by product Id or name like searchProduct(), but return one page of results ordered by productID
+    //keyset pagination: each page continues after the last productID of the previous page (the cursor)
+    //used by the customer and warehouse ListViews, which fetch the next page as the user scrolls
+    public ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        if (afterProductId == null) { // an exact product ID match is a page of its own
+            Product product = searchByProductId(keyword);
+            if (product != null) {
+                ArrayList<Product> productList = new ArrayList<>();
+                productList.add(product);
+                return new ProductPage(productList, null);
+            }
+        }
+
+        String query;
+        if (keyword.equals("*")) {
+            query = "SELECT * FROM ProductTable WHERE productID > ? " +
+                    "ORDER BY productID FETCH FIRST ? ROWS ONLY";
+        } else if (descriptionParameter(keyword) == null) {
+            return new ProductPage(new ArrayList<>(), null); // no words to search for
+        } else {
+            query = "SELECT * FROM ProductTable WHERE productID > ? AND " + descriptionCondition(keyword) + " " +
+                    "ORDER BY productID FETCH FIRST ? ROWS ONLY";
+        }
+        ArrayList<Product> rows = new ArrayList<>();
+        String cursor = afterProductId == null ? "" : afterProductId;
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            PreparedStatement stmt = pooled.prepareStatement(query); // cached, not closed here
+            // the SQL condition can let through rows matchesKeyword() leaves out, so read on until the page is full
+            while (rows.size() <= pageSize) {
+                int index = 1;
+                stmt.setString(index++, cursor);
+                if (!keyword.equals("*")) {
+                    stmt.setString(index++, descriptionParameter(keyword));
+                }
+                stmt.setInt(index, pageSize + 1); // one extra row tells us whether there is a next page
+                int read = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Product product = makeProObjFromDbRecord(rs);
+                        read++;
+                        cursor = product.getProductId();
+                        if (matchesKeyword(keyword, product)) {
+                            rows.add(product);
+                        }
+                    }
+                }
+                if (read <= pageSize) {
+                    break; // the end of the table
+                }
+            }
+        }
+        return ProductPage.fromRows(rows, pageSize);
+    }
+
+    //fetch several products by Id with one "WHERE productID IN (?, ?, ...)" query, ordered by productID
+    //The number of placeholders is rounded up to a power of two (the spare ones repeat the last Id), so only
+    //a handful of different SQL strings exist and they stay in the connection's statement cache.
+    //Very long lists are split into chunks of MAX_IN_LIST_SIZE Ids.
+    public ArrayList<Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        ArrayList<String> ids = new ArrayList<>(new TreeSet<>(productIds)); // sorted, without duplicates
+        ArrayList<Product> productList = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return productList;
+        }
+
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size()));
+                int placeholders = Integer.highestOneBit(chunk.size());
+                if (placeholders < chunk.size()) {
+                    placeholders *= 2;
+                }
+                String query = "SELECT * FROM ProductTable WHERE productID IN ("
+                        + String.join(", ", Collections.nCopies(placeholders, "?")) + ") ORDER BY productID";
+                PreparedStatement pstmt = pooled.prepareStatement(query); // cached, not closed here
+                for (int i = 0; i < placeholders; i++) {
+                    pstmt.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        productList.add(makeProObjFromDbRecord(rs));
+                    }
+                }
+            }
         }
         return productList;
     }
@@ -50,22 +167,21 @@ public class DerbyRW implements DatabaseRW {
         Product product = null;
         String query = "SELECT * FROM ProductTable WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            PreparedStatement pstmt = pooled.prepareStatement(query); // cached, not closed here
             // Set the productId parameter
             pstmt.setString(1, proId);
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
                     product = makeProObjFromDbRecord(rs);
-                    System.out.println("Product " + proId + " found.");
                 } else {
-                    System.out.println("Product " + proId + " not found.");
+                    log.debug("Product not found", "productId", proId);
                 }
 
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.error("Database query error, search by ID", e, "productId", proId);
         }
         return product;
     }
@@ -78,32 +194,98 @@ public class DerbyRW implements DatabaseRW {
         // If user enters "*" -> return all products
         if (name.equals("*")) {
             query = "SELECT * FROM ProductTable";
+        } else if (descriptionParameter(name) == null) {
+            return productList; // no words to search for
         } else {
-            query = "SELECT * FROM ProductTable WHERE LOWER(description) LIKE LOWER(?)";
+            query = "SELECT * FROM ProductTable WHERE " + descriptionCondition(name);
         }
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            PreparedStatement stmt = pooled.prepareStatement(query); // cached, not closed here
 
             if (!name.equals("*")) {
-                stmt.setString(1, "%" + name.toLowerCase() + "%");
+                stmt.setString(1, descriptionParameter(name));
             }
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    productList.add(makeProObjFromDbRecord(rs));
+                    Product product = makeProObjFromDbRecord(rs);
+                    if (matchesKeyword(name, product)) {
+                        productList.add(product);
+                    }
                 }
                 if (productList.isEmpty()) {
-                    System.out.println("Product " + name + " not found.");
+                    log.debug("Product not found", "name", name);
                 }
             }
 
         } catch (SQLException e) {
-            System.out.println("Database query error, search by name: " + name + " " + e.getMessage());
+            log.error("Database query error, search by name", e, "name", name);
         }
 
         return productList;
     }
 
 
+    //suggest products whose ID, description or a word of the description starts with the prefix
+    //used for the type-ahead suggestions of the customer search box
+    public ArrayList<Product> suggestProducts(String prefix, int limit) throws SQLException {
+        ArrayList<Product> productList = new ArrayList<>();
+        String lowerPrefix = prefix.trim().toLowerCase();
+        if (lowerPrefix.isEmpty() || limit <= 0) {
+            return productList;
+        }
+        String query = "SELECT * FROM ProductTable " +
+                "WHERE productID LIKE ? OR descriptionLower LIKE ? OR descriptionLower LIKE ? " +
+                "ORDER BY productID FETCH FIRST ? ROWS ONLY";
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            PreparedStatement stmt = pooled.prepareStatement(query); // cached, not closed here
+            stmt.setString(1, lowerPrefix + "%");
+            stmt.setString(2, lowerPrefix + "%");       // description starts with the prefix
+            stmt.setString(3, "% " + lowerPrefix + "%"); // a later word starts with the prefix
+            stmt.setInt(4, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    productList.add(makeProObjFromDbRecord(rs));
+                }
+            }
+        }
+        return productList;
+    }
+
+    //a name search: "usb*" -> descriptionLower LIKE 'usb%' (prefix, an index range scan);
+    //"usb dr" -> every word of the keyword must start a word of the description, as in the catalogue cache's
+    //ProductSearchIndex. LOCATE('usb', descriptionLower) > 0 on the longest word narrows the rows in SQL, and
+    //matchesKeyword() checks the rest. LOCATE keeps Derby from scanning the whole index for a '%usb%' pattern
+    //it cannot see in advance, which is slower than reading the table.
+    private static boolean isPrefixSearch(String keyword) {
+        return keyword.length() > 1 && keyword.endsWith("*");
+    }
+
+    private static String descriptionCondition(String keyword) {
+        return isPrefixSearch(keyword) ? "descriptionLower LIKE ?" : "LOCATE(?, descriptionLower) > 0";
+    }
+
+    //the LIKE pattern, or the longest word of the keyword; null if the keyword has no words
+    private static String descriptionParameter(String keyword) {
+        String lowerKeyword = keyword.toLowerCase();
+        if (isPrefixSearch(keyword)) {
+            return lowerKeyword.substring(0, lowerKeyword.length() - 1) + "%";
+        }
+        String longest = null;
+        for (String word : ProductSearchIndex.tokenize(lowerKeyword)) {
+            if (longest == null || word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        return longest;
+    }
+
+    private static boolean matchesKeyword(String keyword, Product product) {
+        if (keyword.equals("*") || isPrefixSearch(keyword)) {
+            return true; // the SQL condition is exact
+        }
+        return ProductSearchIndex.matchesAll(product.getProductDescription(), ProductSearchIndex.tokenize(keyword));
+    }
+
     //make a Product object from the database record
     private Product makeProObjFromDbRecord(ResultSet rs) throws SQLException {
         Product product = null;
@@ -114,94 +296,147 @@ public class DerbyRW implements DatabaseRW {
         int inStock = rs.getInt("inStock");
         product = new Product(productId, description, imagePath, unitPrice, inStock);
 
-        // Show product details
-        System.out.println("Product ID: " + productId);
-        System.out.println("Description: " + description);
-        System.out.println("Image: " + imagePath);
-        System.out.println("unitPrice: " + unitPrice);
-
-        // Check availability and display message
-        if (inStock <= 0) {
-            System.out.println("Product " + productId + " is NOT in stock");
-        } else if (inStock < 10) {
-            System.out.println("Product " + productId + "low stock warning!" + inStock + " units left.");
-        } else {
-            System.out.println("Product " + productId + " is available");
-        }
-
-        System.out.println("-----"); // Divider for readability
+        // called for every row of every search, so only at DEBUG level (free when DEBUG is off)
+        log.debug("Product read", "productId", productId, "unitPrice", unitPrice, "inStock", inStock);
         return product;
     }
 
+    //logs a whole ProductTable row at DEBUG level, eg before and after an update
+    private void logRecord(String message, ResultSet rs) throws SQLException {
+        if (log.isDebugEnabled()) {
+            log.log(LogLevel.DEBUG, message, "productId", rs.getString("productID"),
+                    "description", rs.getString("description"), "unitPrice", rs.getDouble("unitPrice"),
+                    "inStock", rs.getInt("inStock"), "image", rs.getString("image"));
+        }
+    }
+
+    //Buys the products in proList, all or nothing.
+    //Optimistic and lock-free: instead of reading the stock first and holding a Java lock while we decide,
+    //each line is a conditional update that only succeeds if there is still enough stock:
+    //    UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?
+    //An update count of 1 means the line was bought, 0 means not enough stock (or no such product).
+    //All lines run as one batch in one transaction; if any line got 0 the whole transaction is rolled back.
+    //Derby locks only the rows being updated, so checkouts of different products run in parallel.
+    //If Derby reports a deadlock or lock timeout, the transaction is rolled back and tried again.
     public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
-        lock.lock();  // Lock the critical section to prevent concurrent access
-        ArrayList<Product> insufficientProducts = new ArrayList<>();
+        // Update rows in productID order, so two checkouts never wait for each other's rows in opposite order
+        ArrayList<Product> orderedList = new ArrayList<>(proList);
+        orderedList.sort(Comparator.comparing(Product::getProductId));
 
-        String checkSql = "SELECT inStock FROM ProductTable WHERE productId = ?";
-        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productId = ?";
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return tryPurchaseStocks(orderedList);
+            } catch (SQLException e) {
+                if (!isLockConflict(e)) {
+                    throw e; // logged where it happened
+                }
+                if (attempt >= MAX_PURCHASE_ATTEMPTS) {
+                    log.error("Lock conflicts while purchasing stock, giving up", e, "attempts", attempt);
+                    throw e;
+                }
+                log.warn("Lock conflict while purchasing stock, retrying", "sqlState", e.getSQLState(), "attempt", attempt);
+                backOff(attempt);
+            }
+        }
+    }
 
+    // One attempt at purchaseStocks: returns the insufficient products, or throws if the transaction failed.
+    private ArrayList<Product> tryPurchaseStocks(ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> insufficientProducts = new ArrayList<>();
+        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?";
 
-        // Use try-with-resources for Connection and PreparedStatements
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            Connection conn = pooled.getConnection();
             conn.setAutoCommit(false); // Turn off auto-commit for transaction
 
-            // Use a second try-with-resources for the PreparedStatements
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-                 PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
-
-                boolean allSufficient = true; // Flag to track if all products have sufficient stock
-
+            // The PreparedStatement comes from the connection's statement cache and stays open for reuse
+            PreparedStatement updateStmt = pooled.prepareStatement(updateSql);
+            try {
                 for (Product product : proList) {
-                    checkStmt.setString(1, product.getProductId());
-                    ResultSet rs = checkStmt.executeQuery();
+                    updateStmt.setInt(1, product.getOrderedQuantity());
+                    updateStmt.setString(2, product.getProductId());
+                    updateStmt.setInt(3, product.getOrderedQuantity());
+                    updateStmt.addBatch();
+                }
+                int[] updateCounts = updateStmt.executeBatch();
 
-                    if (rs.next()) {
-                        int currentStock = rs.getInt("inStock");
-                        int newStock = currentStock - product.getOrderedQuantity();
-
-                        // Debugging: Print values before update
-                        System.out.println("Product ID: " + product.getProductId());
-                        System.out.println("Before change: " + currentStock);
-                        System.out.println("Quantity Ordered: " + product.getOrderedQuantity());
-
-                        if (newStock >= 0) { // Ensure stock doesn't go negative
-                            updateStmt.setInt(1, product.getOrderedQuantity());
-                            updateStmt.setString(2, product.getProductId());
-                            updateStmt.addBatch();
-
-                            // Debugging: Print values after update
-                            System.out.println("After change: " + newStock);
-                            System.out.println("Update successful for Product ID: " + product.getProductId());
-                        } else {
-                            insufficientProducts.add(product);
-                            allSufficient = false; // Mark that there's at least one insufficient product
-                            System.out.println("Not enough stock for Product ID: " + product.getProductId());
-                        }
-                        System.out.println("--------------------------------");
+                for (int i = 0; i < updateCounts.length; i++) {
+                    if (updateCounts[i] == 0) { // the condition inStock >= ordered quantity did not hold
+                        insufficientProducts.add(proList.get(i));
+                        log.debug("Not enough stock", "productId", proList.get(i).getProductId(),
+                                "ordered", proList.get(i).getOrderedQuantity());
                     }
                 }
 
-                if (allSufficient) {
-                    // If all products have sufficient stock, execute the batch and commit
-                    updateStmt.executeBatch();
-                    conn.commit();  // Commit all updates if all updates succeed
-                    System.out.println("Database update successful.");
+                if (insufficientProducts.isEmpty()) {
+                    conn.commit();  // Commit all updates if every line had enough stock
+                    log.debug("Stock purchased", "lines", proList.size());
                 } else {
                     // If there's insufficient stock for any product, rollback the entire transaction
                     conn.rollback();
-                    System.out.println("Insufficient stock for some products, all updates rolled back.");
+                    log.info("Insufficient stock, purchase rolled back", "lines", proList.size(),
+                            "insufficient", insufficientProducts.size());
                 }
-
             } catch (SQLException e) {
+                updateStmt.clearBatch(); // the cached statement must not carry these updates into the next call
                 conn.rollback();  // Rollback if anything failed inside
-                System.out.println("Database update error, update failed");
+                if (!isLockConflict(e)) { // a lock conflict is retried by purchaseStocks, which logs it
+                    log.error("Database update error, purchase rolled back", e);
+                }
+                throw e;
             }
-        } finally {
-            lock.unlock(); // Always release the lock after the operation
         }
+        if (!insufficientProducts.isEmpty()) {
+            insufficientProducts = withCurrentStock(insufficientProducts);
+        }
+        return insufficientProducts;
+    }
 
+    // The stock figures in the trolley are from when the customer searched. Re-reads the stock of the
+    // insufficient products (in one query) so the customer is told how many are really available now.
+    private ArrayList<Product> withCurrentStock(ArrayList<Product> insufficientProducts) throws SQLException {
+        ArrayList<String> ids = new ArrayList<>();
+        for (Product product : insufficientProducts) {
+            ids.add(product.getProductId());
+        }
+        HashMap<String, Product> current = new HashMap<>();
+        for (Product product : searchByProductIds(ids)) {
+            current.put(product.getProductId(), product);
+        }
 
-        return insufficientProducts;
+        ArrayList<Product> result = new ArrayList<>();
+        for (Product ordered : insufficientProducts) {
+            Product now = current.get(ordered.getProductId());
+            if (now == null) { // the product has been deleted meanwhile
+                now = new Product(ordered.getProductId(), ordered.getProductDescription(),
+                        ordered.getProductImageName(), ordered.getUnitPrice(), 0);
+            }
+            now.setOrderedQuantity(ordered.getOrderedQuantity());
+            result.add(now);
+        }
+        return result;
+    }
+
+    // Deadlocks (40001) and lock timeouts (40XL1, 40XL2) are worth retrying, other errors are not.
+    // A failed batch may report the lock error as the next exception of a BatchUpdateException.
+    private static boolean isLockConflict(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            String state = current.getSQLState();
+            if ("40001".equals(state) || "40XL1".equals(state) || "40XL2".equals(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Waits a little longer after every failed attempt, with some randomness so the retries don't collide again
+    private static void backOff(int attempt) throws SQLException {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 10L * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying a purchase", e);
+        }
     }
 
 
@@ -216,22 +451,18 @@ public class DerbyRW implements DatabaseRW {
                 "inStock = ? " +
                 "WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            // statements come from the connection's statement cache, so they are not closed here
+            PreparedStatement selectStmt = pooled.prepareStatement(selectSql);
+            PreparedStatement updateStmt = pooled.prepareStatement(updateSql);
 
-            // Print Before Update
+            // Log Before Update
             selectStmt.setString(1, id);
             try (ResultSet rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    System.out.println("Before Update:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                    System.out.println("Image: " + rs.getString("image"));
+                    logRecord("Before update", rs);
                 } else {
-                    System.out.println("Product not found: " + id);
+                    log.warn("Product not found for update", "productId", id);
                     return; // Exit if product doesn't exist
                 }
             }
@@ -244,15 +475,12 @@ public class DerbyRW implements DatabaseRW {
             updateStmt.setString(5, id);
             updateStmt.executeUpdate();
 
-            // Print After Update
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    System.out.println("After Update:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                    System.out.println("image: " + rs.getString("image"));
+            log.info("Product updated", "productId", id, "inStock", stock);
+            if (log.isDebugEnabled()) { // re-reading the row is only worth it when someone will see it
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        logRecord("After update", rs);
+                    }
                 }
             }
         } finally {
@@ -266,22 +494,19 @@ public class DerbyRW implements DatabaseRW {
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
         String deleteSql = "DELETE FROM ProductTable WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
-            conn.setAutoCommit(true); // Set auto-commit to true immediately
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            // statements come from the connection's statement cache, so they are not closed here
+            PreparedStatement selectStmt = pooled.prepareStatement(selectSql);
+            PreparedStatement deleteStmt = pooled.prepareStatement(deleteSql);
+            pooled.getConnection().setAutoCommit(true); // Set auto-commit to true immediately
 
-            // print product details before deletion
+            // log product details before deletion
             selectStmt.setString(1, proId);
             try (ResultSet rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    System.out.println("Before delete:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
+                    logRecord("Before delete", rs);
                 } else {
-                    System.out.println("Product not found: " + proId);
+                    log.warn("Product not found for delete", "productId", proId);
                     return; // Exit if product does not exist
                 }
             }
@@ -289,7 +514,7 @@ public class DerbyRW implements DatabaseRW {
             // delete from database
             deleteStmt.setString(1, proId);
             deleteStmt.executeUpdate();
-            System.out.println("Product " + proId + " deleted from database.");
+            log.info("Product deleted", "productId", proId);
         } finally {
             lock.unlock(); // Always release the lock after the operation
         }
@@ -300,17 +525,18 @@ public class DerbyRW implements DatabaseRW {
     public boolean isProIdAvailable(String proId) throws SQLException {
         String query = "SELECT COUNT(*) FROM ProductTable WHERE productID = ?";
         //the count of records that match the given proId.
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            PreparedStatement stmt = pooled.prepareStatement(query); // cached, not closed here
             stmt.setString(1, proId);
-            ResultSet rs = stmt.executeQuery();
-            // the rs is the COUNT(*) result (a single number): how many records that match the given proId.
-            // If count > 0, the ID is already in the database, so it's not available, return false
-            // If count = 0, the ID is available, return true
-            if (rs.next()) { // Move cursor to the first (and only) row
-                int count = rs.getInt(1); // Get the first column value (the count)
-                if (count == 0) return true;
-                else return false;
+            try (ResultSet rs = stmt.executeQuery()) { // close it so the pooled connection is handed back clean
+                // the rs is the COUNT(*) result (a single number): how many records that match the given proId.
+                // If count > 0, the ID is already in the database, so it's not available, return false
+                // If count = 0, the ID is available, return true
+                if (rs.next()) { // Move cursor to the first (and only) row
+                    int count = rs.getInt(1); // Get the first column value (the count)
+                    if (count == 0) return true;
+                    else return false;
+                }
             }
             return false; // Default case (should not happen)
         }
@@ -320,12 +546,14 @@ public class DerbyRW implements DatabaseRW {
     //warehouse adds a new product to database
     public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
         lock.lock();
-        String insertSql = "INSERT INTO ProductTable VALUES(?, ?, ?, ?, ?)";
+        String insertSql = "INSERT INTO ProductTable(productID, description, unitPrice, image, inStock) "
+                + "VALUES(?, ?, ?, ?, ?)"; // descriptionLower is generated
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement insertStmt = conn.prepareStatement(insertSql);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
-            conn.setAutoCommit(true); // Set auto-commit to true immediately
+        try (PooledConnection pooled = connectionPool.borrow()) {
+            // statements come from the connection's statement cache, so they are not closed here
+            PreparedStatement insertStmt = pooled.prepareStatement(insertSql);
+            PreparedStatement selectStmt = pooled.prepareStatement(selectSql);
+            pooled.getConnection().setAutoCommit(true); // Set auto-commit to true immediately
             insertStmt.setString(1, id);
             insertStmt.setString(2, des);
             insertStmt.setDouble(3, price);
@@ -333,13 +561,13 @@ public class DerbyRW implements DatabaseRW {
             insertStmt.setInt(5, stock);
             selectStmt.setString(1, id);
             insertStmt.executeUpdate();
-            ResultSet rs = selectStmt.executeQuery();
-            if (rs.next()) { //print the inserted record
-                System.out.println("Insert successful for Product ID: \" + id");
-                System.out.println("ID: " + rs.getString("productID"));
-                System.out.println("Description: " + rs.getString("description"));
-                System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                System.out.println("Stock: " + rs.getInt("inStock"));
+            log.info("Product inserted", "productId", id, "inStock", stock);
+            if (log.isDebugEnabled()) { // re-reading the row is only worth it when someone will see it
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) { //log the inserted record
+                        logRecord("Inserted", rs);
+                    }
+                }
             }
         } finally {
             lock.unlock(); // Always release the lock after the operation
@@ -0,0 +1,316 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.Logger;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * FileOrderStore keeps each order as a text file (eg 12.txt) with the order as it was placed, and the
+ * order's current state and times in an OrderStateFile (orders/orderStates.dat):
+ * - A new order's file is written to orders/ordered.
+ * - Ordered to Progressing is one small write to the state file; the order file is not touched.
+ * - Progressing to Collected is one small write, then the file is moved unchanged (renamed) to orders/collected,
+ *   so orders/ordered only ever holds the orders not yet collected.
+ * readOrder() fills the current state and times into the text, so it reads as an order file always has.
+ * So a collected file also reads that way on its own, a background thread later writes its final state and
+ * times into it; until then (or if the shop stops first) it holds the order as placed, and readOrder() is unaffected.
+ *
+ * Orders placed before the state file existed (or without one, see the no-argument constructor) are kept
+ * the original way: the state and times are edited into the file, which is moved to the folder of its state
+ * (orders/ordered, progressing or collected) by OrderFileManager.
+ *
+ * With a MappedOrderDetailStore, each new order's text is also copied into memory-mapped storage until the
+ * order is collected, and the states of the orders not yet collected are remembered, so readOrder()
+ * (eg a picker opening an order) builds the text from memory instead of reading files. Other orders are
+ * read from their files.
+ */
+
+public class FileOrderStore implements OrderStore {
+    private static final Logger log = Logger.getLogger(FileOrderStore.class);
+
+    private final Path orderedPath = StorageLocation.orderedPath;
+    private final Path progressingPath = StorageLocation.progressingPath;
+    private final Path collectedPath = StorageLocation.collectedPath;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final OrderStateFile states;          // null to keep the state in the order files
+    private final MappedOrderDetailStore details; // null to always read the files
+    private final Map<Integer, OrderStateFile.Entry> knownStates = new ConcurrentHashMap<>(); // uncollected orders in the state file
+    private final ExecutorService collectedWriter;  // fills in collected files, null without a state file
+
+    public FileOrderStore() {
+        this(null, null);
+    }
+
+    public FileOrderStore(OrderStateFile states, MappedOrderDetailStore details) {
+        this.states = states;
+        this.details = details;
+        this.collectedWriter = states == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FileOrderStore-collected");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //write order details to file for the orderId in orderedPath (ie. orders/ordered)
+    public void createOrder(int orderId, String orderDetail) throws IOException {
+        OrderFileManager.createOrderFile(orderedPath, orderId, orderDetail);
+        if (details != null) {
+            details.put(orderId, orderDetail);
+        }
+        if (states != null) {
+            OrderStateFile.Entry entry = new OrderStateFile.Entry(OrderState.Ordered, null, null);
+            states.write(orderId, entry);
+            knownStates.put(orderId, entry);
+        }
+    }
+
+    //record the new orderState in the state file, or for an order without a slot,
+    //change orderState in order file and move the file to new state folder
+    public boolean changeState(int orderId, OrderState newState) throws IOException {
+        String now = LocalDateTime.now().format(TIME_FORMAT);
+        OrderStateFile.Entry entry = slotOf(orderId);
+        if (entry == null) {
+            boolean changed = changeStateInFile(orderId, newState, now);
+            if (changed && newState == OrderState.Collected) {
+                forgetDetails(orderId);
+            }
+            return changed;
+        }
+        switch (newState) {
+            case Progressing:
+                if (entry.state != OrderState.Ordered) {
+                    log.warn("Order not found in the expected state", "orderId", orderId, "newState", newState);
+                    return false;
+                }
+                entry = new OrderStateFile.Entry(newState, now, null);
+                states.write(orderId, entry);
+                knownStates.put(orderId, entry);
+                return true;
+            case Collected:
+                if (entry.state == OrderState.Collected && Files.exists(orderedPath.resolve(orderId + ".txt"))) {
+                    forgetDetails(orderId);
+                    moveToCollected(orderId, entry); // collected, but stopped before its file was moved
+                }
+                if (entry.state != OrderState.Progressing) {
+                    log.warn("Order not found in the expected state", "orderId", orderId, "newState", newState);
+                    return false;
+                }
+                OrderStateFile.Entry collected = new OrderStateFile.Entry(newState, entry.progressingDateTime, now);
+                states.write(orderId, collected);
+                knownStates.remove(orderId); // collected orders are rarely read again, so they are read from the file
+                forgetDetails(orderId);
+                moveToCollected(orderId, collected);
+                return true;
+            default:
+                return false; // an order never goes back to Ordered
+        }
+    }
+
+    // The original way, for orders placed before the state file existed
+    private boolean changeStateInFile(int orderId, OrderState newState, String now) throws IOException {
+        switch (newState) {
+            case Progressing:
+                return OrderFileManager.updateAndMoveOrderFile(orderId, newState, orderedPath, progressingPath, now);
+            case Collected:
+                return OrderFileManager.updateAndMoveOrderFile(orderId, newState, progressingPath, collectedPath, now);
+            default:
+                return false; // an order never goes back to Ordered
+        }
+    }
+
+    // From the state file if the order has a slot there, otherwise from the folder its file is in
+    public OrderState stateOf(int orderId) throws IOException {
+        OrderStateFile.Entry entry = slotOf(orderId);
+        if (entry != null) {
+            return entry.state;
+        }
+        if (Files.exists(progressingPath.resolve(orderId + ".txt"))) {
+            return OrderState.Progressing;
+        }
+        if (Files.exists(orderedPath.resolve(orderId + ".txt"))) {
+            return OrderState.Ordered;
+        }
+        return Files.exists(collectedPath.resolve(orderId + ".txt")) ? OrderState.Collected : null;
+    }
+
+    // The text from the mapped copy or the file (looked for in the folders from the latest state back),
+    // with the state and times from the state file if the order has a slot there
+    public String readOrder(int orderId) throws IOException {
+        OrderStateFile.Entry entry = slotOf(orderId);
+        String text = details == null ? null : details.get(orderId);
+        if (text == null) {
+            text = readOrderFile(orderId);
+        }
+        if (entry == null || entry.state == OrderState.Ordered) {
+            return text; // as placed, or an order file kept up to date the original way
+        }
+        return OrderFileManager.withStateAndTimes(text, entry.state, entry.progressingDateTime, entry.collectedDateTime);
+    }
+
+    private String readOrderFile(int orderId) throws IOException {
+        for (Path dir : new Path[]{progressingPath, orderedPath, collectedPath}) {
+            if (Files.exists(dir.resolve(orderId + ".txt"))) {
+                return OrderFileManager.readOrderFile(dir, orderId);
+            }
+        }
+        throw new IOException("Order file not found: " + orderId + ".txt");
+    }
+
+    // The ordered and progressing folders are listed at once, and the state slots read in parallel,
+    // as this is the full scan OrderHub falls back to when it has no snapshot of its order map
+    public TreeMap<Integer, OrderState> loadUncollectedOrders() throws IOException {
+        CompletableFuture<ArrayList<Integer>> progressingIds = CompletableFuture.supplyAsync(() -> orderIdsLoader(progressingPath));
+        ArrayList<Integer> orderedIds = orderIdsLoader(orderedPath);
+        Map<Integer, OrderStateFile.Entry> slots = new ConcurrentHashMap<>();
+        if (states != null) {
+            try {
+                orderedIds.parallelStream().forEach(orderId -> {
+                    try {
+                        OrderStateFile.Entry entry = states.read(orderId);
+                        if (entry != null) {
+                            slots.put(orderId, entry);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        for (Integer orderId : orderedIds) {
+            OrderStateFile.Entry entry = slots.get(orderId);
+            if (entry == null) {
+                orders.put(orderId, OrderState.Ordered); // its file has its state
+            } else if (entry.state == OrderState.Collected) {
+                forgetDetails(orderId);
+                moveToCollected(orderId, entry); // collected, but stopped before its file was moved
+            } else {
+                orders.put(orderId, entry.state);
+                knownStates.put(orderId, entry);
+            }
+        }
+        for (Integer orderId : progressingIds.join()) {
+            orders.put(orderId, OrderState.Progressing);
+        }
+        return orders;
+    }
+
+    // The IDs of the collected orders too, eg to copy every order into a JournalOrderStore
+    TreeMap<Integer, OrderState> loadAllOrders() throws IOException {
+        TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        for (Integer orderId : orderIdsLoader(collectedPath)) {
+            orders.put(orderId, OrderState.Collected);
+        }
+        orders.putAll(loadUncollectedOrders());
+        return orders;
+    }
+
+    public void close() throws IOException {
+        if (collectedWriter != null) {
+            collectedWriter.shutdown();
+            try {
+                collectedWriter.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (details != null) {
+            details.close();
+        }
+        if (states != null) {
+            states.close();
+        }
+        knownStates.clear();
+    }
+
+    // The order's slot in the state file, from memory for the orders not yet collected
+    private OrderStateFile.Entry slotOf(int orderId) throws IOException {
+        if (states == null) {
+            return null;
+        }
+        OrderStateFile.Entry entry = knownStates.get(orderId);
+        return entry != null ? entry : states.read(orderId);
+    }
+
+    // Drops a collected order's mapped copy, so its segment can go once all its orders are collected
+    private void forgetDetails(int orderId) {
+        if (details != null) {
+            details.remove(orderId);
+        }
+    }
+
+    // Moves the collected order's file, unchanged, from orders/ordered to orders/collected: a rename, whatever the
+    // size of the order. If the shop stops before the file is moved, loadUncollectedOrders() moves it.
+    private void moveToCollected(int orderId, OrderStateFile.Entry collected) throws IOException {
+        Path orderFile = orderedPath.resolve(orderId + ".txt");
+        if (!Files.exists(orderFile)) {
+            log.warn("Order file not found", "path", orderFile);
+            return;
+        }
+        Path collectedFile = collectedPath.resolve(orderId + ".txt");
+        Files.move(orderFile, collectedFile, StandardCopyOption.REPLACE_EXISTING);
+        collectedWriter.execute(() -> fillInCollected(collectedFile, collected));
+    }
+
+    // Writes the final state and times into a collected file, on the collectedWriter thread. The text goes into
+    // a temp file that then replaces the old one, so the file always holds a whole order.
+    private void fillInCollected(Path collectedFile, OrderStateFile.Entry collected) {
+        Path tempFile = collectedFile.resolveSibling(collectedFile.getFileName() + ".tmp");
+        try {
+            String text = OrderFileManager.withStateAndTimes(Files.readString(collectedFile, StandardCharsets.UTF_8),
+                    collected.state, collected.progressingDateTime, collected.collectedDateTime);
+            Files.writeString(tempFile, text, StandardCharsets.UTF_8);
+            Files.move(tempFile, collectedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Collected order file not filled in, it is still read with its state", "path", collectedFile);
+        }
+    }
+
+    // Loads a list of order IDs from the specified directory, from the file names alone
+    // (no file is opened or looked at, so listing a folder of many orders stays quick).
+    private ArrayList<Integer> orderIdsLoader(Path dir) {
+        ArrayList<Integer> orderIds = new ArrayList<>();
+
+        if (Files.exists(dir) && Files.isDirectory(dir)) {
+            try (Stream<Path> fileStream = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) fileStream::iterator) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.endsWith(".txt")) { // Ensure it's a .txt file
+                        try {
+                            orderIds.add(Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.'))));
+                        } catch (NumberFormatException e) {
+                            log.warn("Invalid order file name", "fileName", fileName);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Error reading order directory", e, "dir", dir);
+            }
+            log.debug("Order directory listed", "dir", dir, "orders", orderIds.size());
+        } else {
+            log.warn("Order directory does not exist", "dir", dir);
+        }
+        return orderIds;
+    }
+}
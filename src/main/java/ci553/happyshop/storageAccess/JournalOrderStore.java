@@ -0,0 +1,309 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JournalOrderStore keeps all orders in one append-only journal instead of one text file per order.
+ * With tens of thousands of orders a day, creating, rewriting and moving a file per order (FileOrderStore)
+ * keeps the file system busy with directory updates; here every change is one append to an open file.
+ *
+ * The journal is a WriteAheadLog (CRC-framed records in numbered segment files) with two kinds of record:
+ * - CREATED: the order ID and the order's text as it was placed (Order.orderDetails()).
+ * - STATE: the order ID, its new state and the time it changed.
+ *
+ * An in-memory index holds, for each order, where its CREATED record is (segment and byte offset) and its
+ * current state and times, so a state change is a small append and a read is one positioned read.
+ * The index is rebuilt by replaying the journal at startup; a torn record from a crash is cut off.
+ * readOrder() puts the current state and times into the stored text, so it reads exactly like an order file.
+ *
+ * Segments and retention:
+ * - A segment is closed and the next one started once it reaches segmentBytes.
+ * - When there are more than retainSegments segments, the oldest ones are deleted, but only once every
+ *   order created in them has been collected (their details are then gone, as with a deleted order file).
+ *   The newer segments are never deleted before an older one.
+ *
+ * OrderJournalExporter writes the orders back out as one text file per order, on demand.
+ * All public methods are synchronized: OrderHub calls them under its own lock, the exporter from its own thread.
+ */
+
+public class JournalOrderStore implements OrderStore {
+    private static final Logger log = Logger.getLogger(JournalOrderStore.class);
+
+    private static final byte CREATED = 1;
+    private static final byte STATE = 2;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Where an order's CREATED record is, and what has happened to the order since
+    private static final class OrderEntry {
+        final long segment;
+        final long position;
+        OrderState state = OrderState.Ordered;
+        String progressingDateTime; // null until it happens
+        String collectedDateTime;
+
+        OrderEntry(long segment, long position) {
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    private final WriteAheadLog journal;
+    private final long segmentBytes;
+    private final int retainSegments;
+    private final TreeMap<Integer, OrderEntry> index = new TreeMap<>();
+    private final HashMap<Long, Integer> uncollectedBySegment = new HashMap<>(); // orders created in a segment, not yet collected
+    private boolean isNew;
+    private long deletedSegments = 0;
+
+    /**
+     * Opens the journal in dir (creating it if needed) and rebuilds the index from it.
+     *
+     * @param fsync          wait until each record is on disk (survives a power cut, but slower)
+     * @param segmentBytes   the size at which a segment is closed and the next one started
+     * @param retainSegments how many segments to keep at least, before fully collected ones are deleted
+     */
+    public JournalOrderStore(Path dir, boolean fsync, long segmentBytes, int retainSegments) throws IOException {
+        this.journal = new WriteAheadLog(dir, fsync);
+        this.segmentBytes = segmentBytes;
+        this.retainSegments = Math.max(1, retainSegments);
+        long start = System.nanoTime();
+        journal.replayAndOpen(0, this::replayRecord);
+        isNew = index.isEmpty();
+        log.info("Order journal opened", "orders", index.size(), "dir", dir,
+                "millis", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // True if the journal holds no orders yet, eg so OrderStoreFactory can copy the existing order files in
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public synchronized void createOrder(int orderId, String orderDetail) throws IOException {
+        if (index.containsKey(orderId)) {
+            log.warn("Order already exists in the journal", "orderId", orderId);
+            return;
+        }
+        long position = journal.append(createdRecord(orderId, orderDetail));
+        addEntry(orderId, new OrderEntry(journal.getSegment(), position));
+        isNew = false;
+        rollIfFull();
+    }
+
+    public synchronized boolean changeState(int orderId, OrderState newState) throws IOException {
+        OrderEntry entry = index.get(orderId);
+        // the same moves as FileOrderStore: Ordered to Progressing, Progressing to Collected
+        OrderState expected = newState == OrderState.Progressing ? OrderState.Ordered
+                : newState == OrderState.Collected ? OrderState.Progressing : null;
+        if (entry == null || entry.state != expected) {
+            log.warn("Order not found in the expected state", "orderId", orderId, "newState", newState);
+            return false;
+        }
+        String time = LocalDateTime.now().format(TIME_FORMAT);
+        journal.append(stateRecord(orderId, newState, time));
+        applyState(entry, newState, time);
+        rollIfFull();
+        return true;
+    }
+
+    /**
+     * Copies an order from somewhere else (eg an order file) with the state and times it already has.
+     * The times are taken from its text; nothing is done if the order is already in the journal.
+     */
+    public synchronized void importOrder(int orderId, String orderText, OrderState state) throws IOException {
+        if (index.containsKey(orderId)) {
+            return;
+        }
+        createOrder(orderId, orderText);
+        if (state == OrderState.Ordered) {
+            return;
+        }
+        String progressing = fieldOf(orderText, "ProgressingDateTime");
+        String collected = fieldOf(orderText, "CollectedDateTime");
+        OrderEntry entry = index.get(orderId);
+        journal.append(stateRecord(orderId, OrderState.Progressing, progressing));
+        applyState(entry, OrderState.Progressing, progressing);
+        if (state == OrderState.Collected) {
+            journal.append(stateRecord(orderId, OrderState.Collected, collected));
+            applyState(entry, OrderState.Collected, collected);
+        }
+        rollIfFull();
+    }
+
+    public synchronized OrderState stateOf(int orderId) {
+        OrderEntry entry = index.get(orderId);
+        return entry == null ? null : entry.state;
+    }
+
+    public synchronized String readOrder(int orderId) throws IOException {
+        OrderEntry entry = index.get(orderId);
+        if (entry == null) {
+            throw new IOException("Order not found in the journal: " + orderId);
+        }
+        ByteBuffer payload = journal.readAt(entry.segment, entry.position);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array(), 0, payload.limit()));
+        if (in.readByte() != CREATED || in.readInt() != orderId) {
+            throw new IOException("Order journal index points at the wrong record for order " + orderId);
+        }
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        return render(new String(text, StandardCharsets.UTF_8), entry);
+    }
+
+    public synchronized TreeMap<Integer, OrderState> loadUncollectedOrders() {
+        TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        for (Map.Entry<Integer, OrderEntry> e : index.entrySet()) {
+            if (e.getValue().state != OrderState.Collected) {
+                orders.put(e.getKey(), e.getValue().state);
+            }
+        }
+        return orders;
+    }
+
+    // Every order in the journal with its state, eg for OrderJournalExporter
+    public synchronized TreeMap<Integer, OrderState> loadAllOrders() {
+        TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        for (Map.Entry<Integer, OrderEntry> e : index.entrySet()) {
+            orders.put(e.getKey(), e.getValue().state);
+        }
+        return orders;
+    }
+
+    public synchronized void close() throws IOException {
+        journal.close();
+    }
+
+    // One line with the journal's size, for the metrics dump
+    public synchronized String metricsSummary() {
+        return String.format("JournalOrderStore[orders=%d, segment=%d, records=%d, deletedSegments=%d]",
+                index.size(), journal.getSegment(), journal.getAppendedRecords(), deletedSegments);
+    }
+
+    // ---------- index ----------
+
+    private void addEntry(int orderId, OrderEntry entry) {
+        index.put(orderId, entry);
+        uncollectedBySegment.merge(entry.segment, 1, Integer::sum);
+    }
+
+    private void applyState(OrderEntry entry, OrderState state, String time) {
+        entry.state = state;
+        if (state == OrderState.Progressing) {
+            entry.progressingDateTime = time;
+        } else if (state == OrderState.Collected) {
+            entry.collectedDateTime = time;
+            uncollectedBySegment.merge(entry.segment, -1, Integer::sum);
+        }
+    }
+
+    // Rebuilds the index from one record of the journal during startup
+    private void replayRecord(long segment, long position, ByteBuffer payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array(), 0, payload.limit()));
+        byte type = in.readByte();
+        int orderId = in.readInt();
+        switch (type) {
+            case CREATED -> addEntry(orderId, new OrderEntry(segment, position));
+            case STATE -> {
+                OrderState state = OrderState.values()[in.readByte()];
+                String time = in.readUTF();
+                OrderEntry entry = index.get(orderId);
+                if (entry != null) { // otherwise its segment was deleted, the order is long collected
+                    applyState(entry, state, time);
+                }
+            }
+            default -> throw new IOException("Unknown order journal record type " + type);
+        }
+    }
+
+    // ---------- segments ----------
+
+    // Starts the next segment once the current one is full, then deletes old segments nobody needs
+    private void rollIfFull() throws IOException {
+        if (journal.getSegmentBytes() < segmentBytes) {
+            return;
+        }
+        long next = journal.rotate();
+        log.debug("Order journal segment rolled", "segment", next);
+        ArrayList<Long> segments = journal.getSegments();
+        for (int i = 0; i < segments.size() - retainSegments; i++) {
+            long oldest = segments.get(i);
+            if (uncollectedBySegment.getOrDefault(oldest, 0) > 0) {
+                break; // an order in it is still open; newer segments wait for it
+            }
+            journal.deleteSegment(oldest);
+            uncollectedBySegment.remove(oldest);
+            Iterator<OrderEntry> entries = index.values().iterator();
+            while (entries.hasNext()) {
+                if (entries.next().segment == oldest) {
+                    entries.remove();
+                }
+            }
+            deletedSegments++;
+            log.info("Old order journal segment deleted", "segment", oldest);
+        }
+    }
+
+    // ---------- records and text ----------
+
+    private static byte[] createdRecord(int orderId, String orderDetail) {
+        byte[] text = orderDetail.getBytes(StandardCharsets.UTF_8); // may be longer than writeUTF allows
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length + 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(CREATED);
+            out.writeInt(orderId);
+            out.writeInt(text.length);
+            out.write(text);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen when writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] stateRecord(int orderId, OrderState state, String time) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(STATE);
+            out.writeInt(orderId);
+            out.writeByte(state.ordinal());
+            out.writeUTF(time);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen when writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    // The stored text with the current state and times filled in, the same way OrderFileManager edits a file
+    private static String render(String orderText, OrderEntry entry) {
+        if (entry.state == OrderState.Ordered) {
+            return orderText; // as placed
+        }
+        return OrderFileManager.withStateAndTimes(orderText, entry.state, entry.progressingDateTime, entry.collectedDateTime);
+    }
+
+    // The value after "name:" on the line starting with name, or "" if there is none
+    private static String fieldOf(String orderText, String name) {
+        for (String line : orderText.split("\n")) {
+            if (line.startsWith(name)) {
+                int colon = line.indexOf(':');
+                return colon < 0 ? "" : line.substring(colon + 1).trim();
+            }
+        }
+        return "";
+    }
+}
@@ -0,0 +1,285 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * MappedOrderDetailStore keeps a copy of each order's details (the text of Order.orderDetails(), which never
+ * changes once the order is placed) in memory-mapped segment files, so a picker's read is a lookup and a decode
+ * from memory instead of opening, reading and closing an order file.
+ *
+ * New records are appended to the current segment, a file of segmentBytes mapped whole; when it is full the
+ * next segment is started. Each record is [int orderId][int length][int CRC32 of the text][text in UTF-8] and
+ * never crosses a segment, so the rest of a segment that cannot hold the next record is left empty (an orderId
+ * of 0 ends a segment). An in-memory index maps each order ID to its segment and the position of its record.
+ *
+ * Collected orders are not read again, so remove() drops them from the index, and a segment is deleted as soon
+ * as none of its orders is left (other than the current one, which is still being written). The files therefore
+ * only hold roughly the orders waiting to be picked, and opening the store only scans those.
+ *
+ * When the store is opened:
+ * - each segment is read (not mapped) and the records of the orders that are not collected are indexed,
+ *   stopping at the first record whose CRC does not match (eg cut off by a crash);
+ * - a segment with no such orders is deleted, the others are mapped read-only and never written again;
+ * - writing starts in a new segment, so a damaged record is never written over and no file is ever truncated
+ *   (which some systems, eg Windows, refuse while the file is mapped).
+ *
+ * It is a copy for reading, not where orders are kept: FileOrderStore still writes the order files, and
+ * reads the file for any order that is not here (placed before the store existed, or too large for a segment).
+ * The folder can be deleted at any time while the shop is stopped.
+ *
+ * The files live in one folder (orders/orderDetails):
+ *     details-000001.dat    segments
+ *
+ * Example Usage:
+ *     MappedOrderDetailStore details = new MappedOrderDetailStore(Path.of("orders/orderDetails"), 4 << 20, orderId -> false);
+ *     details.put(12, orderDetail);
+ *     String text = details.get(12); // null if order 12 is not stored
+ *     details.remove(12);            // once order 12 is collected
+ */
+
+public class MappedOrderDetailStore {
+    private static final Logger log = Logger.getLogger(MappedOrderDetailStore.class);
+
+    private static final int HEADER_BYTES = 12; // orderId, length, CRC
+    private static final String SEGMENT_PREFIX = "details-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    // A mapped segment file and how many of its records are still in the index
+    private static final class Segment {
+        private final long number;
+        private final MappedByteBuffer buffer;
+        private int liveRecords = 0;
+
+        private Segment(long number, MappedByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final HashMap<Integer, Long> index = new HashMap<>(); // orderId -> segment number << 32 | record position
+    private final CRC32 crc = new CRC32();
+    private Segment current;       // the segment new records go into
+    private int writePosition = 0; // in the current segment
+    private long storedBytes = 0;
+    private long droppedSegments = 0;
+    private int tooLarge = 0;
+
+    /**
+     * Opens (or creates) the folder, deletes the segments whose orders are all collected, and rebuilds the index
+     * from the records in the others.
+     *
+     * @param segmentBytes the size of each segment file, which is also the largest record that can be stored
+     * @param collected    tells whether an order is collected, so its record can be left out of the index
+     */
+    public MappedOrderDetailStore(Path dir, int segmentBytes, IntPredicate collected) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        long lastNumber = 0;
+        for (long number : segmentNumbers()) {
+            openSegment(number, collected);
+            lastNumber = number;
+        }
+        startSegment(lastNumber + 1);
+        log.info("Order detail store opened", "orders", index.size(), "segments", segments.size(),
+                "millis", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Stores the details of an order; nothing is done if the order is already stored.
+     * Returns false if the text is too large for a segment, in which case the order file has to be read.
+     */
+    public synchronized boolean put(int orderId, String orderDetail) throws IOException {
+        if (index.containsKey(orderId)) {
+            return true;
+        }
+        byte[] text = orderDetail.getBytes(StandardCharsets.UTF_8);
+        int recordBytes = HEADER_BYTES + text.length;
+        if (recordBytes > segmentBytes) {
+            tooLarge++;
+            return false;
+        }
+        if (writePosition + recordBytes > segmentBytes) {
+            Segment full = current;
+            startSegment(full.number + 1); // the rest of the full segment stays zero, which ends it when scanning
+            if (full.liveRecords == 0) {
+                dropSegment(full);
+            }
+        }
+        MappedByteBuffer buffer = current.buffer;
+        crc.reset();
+        crc.update(text, 0, text.length);
+        // the text and length first, the order ID last: a record is only seen once its ID is written
+        buffer.put(writePosition + HEADER_BYTES, text);
+        buffer.putInt(writePosition + 4, text.length);
+        buffer.putInt(writePosition + 8, (int) crc.getValue());
+        buffer.putInt(writePosition, orderId);
+        index.put(orderId, current.number << 32 | writePosition);
+        current.liveRecords++;
+        writePosition += recordBytes;
+        storedBytes += recordBytes;
+        return true;
+    }
+
+    // The details of the order, or null if it is not stored here
+    public synchronized String get(int orderId) {
+        Long location = index.get(orderId);
+        if (location == null) {
+            return null;
+        }
+        MappedByteBuffer buffer = segments.get(location >>> 32).buffer;
+        int position = (int) (long) location;
+        byte[] text = new byte[buffer.getInt(position + 4)];
+        buffer.get(position + HEADER_BYTES, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    public synchronized boolean contains(int orderId) {
+        return index.containsKey(orderId);
+    }
+
+    /**
+     * Forgets the details of a collected order, and deletes its segment if no other order in it is left.
+     */
+    public synchronized void remove(int orderId) {
+        Long location = index.remove(orderId);
+        if (location == null) {
+            return;
+        }
+        Segment segment = segments.get(location >>> 32);
+        storedBytes -= HEADER_BYTES + segment.buffer.getInt((int) (long) location + 4);
+        segment.liveRecords--;
+        if (segment.liveRecords == 0 && segment != current) {
+            dropSegment(segment);
+        }
+    }
+
+    // One line for the metrics registry: stored orders, bytes and mapped segments
+    public synchronized String metricsSummary() {
+        return String.format("MappedOrderDetailStore[orders=%d, bytes=%d, segments=%d, droppedSegments=%d, tooLarge=%d]",
+                index.size(), storedBytes, segments.size(), droppedSegments, tooLarge);
+    }
+
+    /**
+     * Writes the current segment out and stops using the files. The mappings themselves are released by the
+     * garbage collector, so the store must not be used afterwards.
+     */
+    public synchronized void close() throws IOException {
+        current.buffer.force();
+        segments.clear();
+        index.clear();
+    }
+
+    // ---------- segments ----------
+
+    // The numbers of the segment files in the folder, oldest first
+    private ArrayList<Long> segmentNumbers() throws IOException {
+        ArrayList<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        log.warn("Invalid order detail segment name", "fileName", name);
+                    }
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private Path segmentPath(long number) {
+        return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // Reads an existing segment and indexes the records of the orders not yet collected; maps it read-only
+    // if there are any, and deletes it otherwise. It is read rather than mapped first, so it can be deleted.
+    private void openSegment(long number, IntPredicate collected) throws IOException {
+        Path path = segmentPath(number);
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        HashMap<Integer, Integer> records = new HashMap<>(); // orderId -> position, of the orders to keep
+        long recordBytes = 0;
+        int position = 0;
+        while (position + HEADER_BYTES <= bytes.limit()) {
+            int orderId = bytes.getInt(position);
+            if (orderId == 0) {
+                break; // the end of this segment's records
+            }
+            int length = bytes.getInt(position + 4);
+            if (length < 0 || position + HEADER_BYTES + length > bytes.limit()) {
+                log.warn("Damaged order detail record, later records are ignored", "segment", number, "position", position);
+                break;
+            }
+            crc.reset();
+            crc.update(bytes.array(), position + HEADER_BYTES, length);
+            if ((int) crc.getValue() != bytes.getInt(position + 8)) {
+                log.warn("Damaged order detail record, later records are ignored", "segment", number, "position", position);
+                break;
+            }
+            if (!collected.test(orderId)) {
+                records.put(orderId, position);
+                recordBytes += HEADER_BYTES + length;
+            }
+            position += HEADER_BYTES + length;
+        }
+        if (records.isEmpty()) {
+            Files.delete(path);
+            droppedSegments++;
+            return;
+        }
+        Segment segment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            segment = new Segment(number, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        segments.put(number, segment);
+        for (var record : records.entrySet()) {
+            index.put(record.getKey(), number << 32 | record.getValue());
+        }
+        segment.liveRecords = records.size();
+        storedBytes += recordBytes;
+    }
+
+    // Creates and maps a new, empty segment to write into
+    private void startSegment(long number) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            current = new Segment(number, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+        segments.put(number, current);
+        writePosition = 0;
+    }
+
+    // Deletes a segment none of whose orders is left. Some systems (eg Windows) refuse to delete a file that
+    // is still mapped; it is then deleted when the store is next opened, as its orders are all collected.
+    private void dropSegment(Segment segment) {
+        segments.remove(segment.number);
+        droppedSegments++;
+        try {
+            Files.delete(segmentPath(segment.number));
+        } catch (IOException e) {
+            log.debug("Order detail segment still mapped, deleted at the next start", "segment", segment.number);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * MemoryProductTable is the ProductTable of MemoryRW, held in memory as columns rather than as objects:
+ * one array per column (ids, descriptions, prices, images, stocks), where a product is a slot number.
+ * Stock and price are plain int and double arrays, so a purchase changes numbers in place and creates no objects.
+ *
+ * The ID index is a ConcurrentHashMap (ID -> slot) for lookups and a ConcurrentSkipListMap (ID -> slot) for scans
+ * in productID order (as Derby's ORDER BY productID would), where the keyset pagination cursor is a tailMap().
+ * Both are changed in place, so an insert or delete costs O(log n), and loadLocked() fills an empty table
+ * (eg from a snapshot) in one go, sizing the columns once.
+ * The lower-case description is stored too, so name searches do not lower-case every row every time.
+ *
+ * Concurrency: a StampedLock. Readers use an optimistic read: they read without locking and then check
+ * that no writer came in between; only if one did, they read again under the read lock. Searches therefore
+ * never block each other and almost never block on purchases. All changes are made under the write lock,
+ * by MemoryRW, which also writes them to its write-ahead log while holding it, so the log order is the change order.
+ *
+ * The methods ending in "Locked" must only be called while holding the write lock (see writeLock()).
+ */
+
+class MemoryProductTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Decides whether a row belongs in a scan, from its ID and lower-case description
+    @FunctionalInterface
+    interface RowFilter {
+        boolean matches(String id, String descriptionLower);
+    }
+
+    /**
+     * The column arrays. When they are full, a Columns twice the size is published; everything else (inserts,
+     * updates, deletes and purchases) changes the arrays of the current Columns in place. A product is only
+     * added to the index once its row is written, and removed from the index before its row is cleared.
+     */
+    private static final class Columns {
+        final String[] ids;
+        final String[] descriptions;
+        final String[] descriptionsLower;
+        final String[] images;
+        final double[] prices;
+        final int[] stocks;
+
+        Columns(int capacity) {
+            this(new String[capacity], new String[capacity], new String[capacity], new String[capacity],
+                    new double[capacity], new int[capacity]);
+        }
+
+        Columns(String[] ids, String[] descriptions, String[] descriptionsLower, String[] images, double[] prices,
+                int[] stocks) {
+            this.ids = ids;
+            this.descriptions = descriptions;
+            this.descriptionsLower = descriptionsLower;
+            this.images = images;
+            this.prices = prices;
+            this.stocks = stocks;
+        }
+
+        Product product(int slot) {
+            return new Product(ids[slot], descriptions[slot], images[slot], prices[slot], stocks[slot]);
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY);
+    private final ConcurrentHashMap<String, Integer> slotById = new ConcurrentHashMap<>();         // written under the lock
+    private final ConcurrentSkipListMap<String, Integer> slotsInIdOrder = new ConcurrentSkipListMap<>(); // the same, sorted
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>(); // slots of deleted products, written under the lock
+    private int usedSlots = 0;                                        // slots handed out so far, written under the lock
+
+    // ---------- reads, any thread, no lock needed ----------
+
+    int size() {
+        return slotById.size();
+    }
+
+    // The product with this ID, or null
+    Product get(String id) {
+        return read(c -> {
+            Integer slot = slotById.get(id);
+            return slot == null ? null : c.product(slot);
+        });
+    }
+
+    // The products with these IDs that exist, sorted by ID, without duplicates
+    ArrayList<Product> getAll(Iterable<String> ids) {
+        return read(c -> {
+            LinkedHashSet<Integer> slots = new LinkedHashSet<>(); // without duplicates
+            for (String id : ids) {
+                Integer slot = slotById.get(id);
+                if (slot != null) {
+                    slots.add(slot);
+                }
+            }
+            ArrayList<Product> products = new ArrayList<>(slots.size());
+            for (int slot : slots) {
+                products.add(c.product(slot));
+            }
+            products.sort(null); // Product is Comparable by product ID
+            return products;
+        });
+    }
+
+    /**
+     * Returns up to limit products in productID order, starting after afterId (null for the start),
+     * that the filter accepts (null accepts every row).
+     */
+    ArrayList<Product> scan(String afterId, RowFilter filter, int limit) {
+        return read(c -> {
+            ArrayList<Product> products = new ArrayList<>();
+            Iterable<Integer> slots = afterId == null ? slotsInIdOrder.values()
+                    : slotsInIdOrder.tailMap(afterId, false).values(); // the IDs after the cursor
+            for (int slot : slots) {
+                if (products.size() == limit) {
+                    break;
+                }
+                if (filter == null || filter.matches(c.ids[slot], c.descriptionsLower[slot])) {
+                    products.add(c.product(slot));
+                }
+            }
+            return products;
+        });
+    }
+
+    // Optimistic read first; if a writer got in meanwhile (or the unlocked read saw a half-made change, eg an index
+    // entry for a slot past the end of the arrays it read), read again locked.
+    private <T> T read(Function<Columns, T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.apply(columns);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // a torn read, eg a slot being reused; the locked read below gets it right
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.apply(columns);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // ---------- writes, only with the write lock held ----------
+
+    long writeLock() { return lock.writeLock(); }
+    void unlockWrite(long stamp) { lock.unlockWrite(stamp); }
+
+    boolean containsLocked(String id) {
+        return slotById.containsKey(id);
+    }
+
+    // The stock of a product, or -1 if there is no such product
+    int stockLocked(String id) {
+        Integer slot = slotById.get(id);
+        return slot == null ? -1 : columns.stocks[slot];
+    }
+
+    Product getLocked(String id) {
+        Integer slot = slotById.get(id);
+        return slot == null ? null : columns.product(slot);
+    }
+
+    void addStockLocked(String id, int delta) {
+        columns.stocks[slotById.get(id)] += delta;
+    }
+
+    void updateLocked(String id, String description, double price, String image, int stock) {
+        Columns c = columns;
+        int slot = slotById.get(id);
+        c.descriptions[slot] = description;
+        c.descriptionsLower[slot] = lowerCase(description);
+        c.prices[slot] = price;
+        c.images[slot] = image;
+        c.stocks[slot] = stock;
+    }
+
+    void insertLocked(String id, String description, double price, String image, int stock) {
+        Columns c = columns;
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.pop();
+        } else {
+            if (usedSlots == c.ids.length) {
+                c = grow(c);
+                columns = c;
+            }
+            slot = usedSlots++;
+        }
+        writeRow(c, slot, id, description, price, image, stock);
+        slotById.put(id, slot);
+        slotsInIdOrder.put(id, slot);
+    }
+
+    void deleteLocked(String id) {
+        Columns c = columns;
+        int slot = slotById.remove(id);
+        slotsInIdOrder.remove(id);
+        c.ids[slot] = null; // let the strings be garbage collected
+        c.descriptions[slot] = null;
+        c.descriptionsLower[slot] = null;
+        c.images[slot] = null;
+        freeSlots.push(slot);
+    }
+
+    /**
+     * Fills the empty table with the given products (with distinct IDs), eg from a snapshot: the columns are
+     * sized once for all of them and each product goes straight into its slot and the index.
+     */
+    void loadLocked(List<Product> products) {
+        if (!slotById.isEmpty()) {
+            throw new IllegalStateException("loadLocked() needs an empty table");
+        }
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < products.size()) {
+            capacity *= 2;
+        }
+        Columns c = new Columns(capacity);
+        for (int slot = 0; slot < products.size(); slot++) {
+            Product p = products.get(slot);
+            writeRow(c, slot, p.getProductId(), p.getProductDescription(), p.getUnitPrice(), p.getProductImageName(),
+                    p.getStockQuantity());
+            slotById.put(p.getProductId(), slot);
+            slotsInIdOrder.put(p.getProductId(), slot);
+        }
+        freeSlots.clear();
+        usedSlots = products.size();
+        columns = c;
+    }
+
+    // Every product, in ID order, for a snapshot
+    ArrayList<Product> allLocked() {
+        Columns c = columns;
+        ArrayList<Product> products = new ArrayList<>(slotById.size());
+        for (int slot : slotsInIdOrder.values()) {
+            products.add(c.product(slot));
+        }
+        return products;
+    }
+
+    private static void writeRow(Columns c, int slot, String id, String description, double price, String image, int stock) {
+        c.ids[slot] = id;
+        c.descriptions[slot] = description;
+        c.descriptionsLower[slot] = lowerCase(description);
+        c.prices[slot] = price;
+        c.images[slot] = image;
+        c.stocks[slot] = stock;
+    }
+
+    // Doubles the column arrays; the caller publishes them
+    private static Columns grow(Columns c) {
+        int capacity = c.ids.length * 2;
+        return new Columns(Arrays.copyOf(c.ids, capacity), Arrays.copyOf(c.descriptions, capacity),
+                Arrays.copyOf(c.descriptionsLower, capacity), Arrays.copyOf(c.images, capacity),
+                Arrays.copyOf(c.prices, capacity), Arrays.copyOf(c.stocks, capacity));
+    }
+
+    private static String lowerCase(String text) {
+        return text == null ? "" : text.toLowerCase();
+    }
+}
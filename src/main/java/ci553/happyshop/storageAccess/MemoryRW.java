@@ -0,0 +1,598 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.utility.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * MemoryRW is a DatabaseRW that keeps the ProductTable in memory (see MemoryProductTable) instead of in Derby,
+ * for deployments where every search and checkout must be as fast as possible.
+ * Select it with -Dhappyshop.db=memory (see DatabaseRWFactory).
+ *
+ * Persistence:
+ * - Every change (insert, update, delete, purchase) is first appended to a write-ahead log (WriteAheadLog),
+ *   and only then applied in memory. A change that could not be logged is not made, and the caller gets an SQLException.
+ * - Every SNAPSHOT_EVERY_RECORDS changes, a snapshot of the whole table is written in the background,
+ *   and the log segments it covers are deleted, so the log does not grow forever.
+ * - On start, the last snapshot is loaded and the log written after it is replayed,
+ *   so a restart (or a crash) ends up with every change that was logged.
+ *
+ * The files live in one folder (happyShopMemoryDB by default):
+ *     snapshot.dat      the last snapshot, with the number of the first log segment it does not cover
+ *     wal-000001.log    log segments
+ *
+ * Semantics follow DerbyRW:
+ * - purchaseStocks is all or nothing: if any line does not have enough stock, no stock changes, and the
+ *   insufficient products are returned with their current stock. Lines for the same product add up.
+ * - inStock can never become negative (Derby's CHECK (inStock >= 0)): such an update or insert fails with
+ *   SQLState 23513, a duplicate product ID with 23505, a too long value with 22001, like Derby reports them.
+ * - Updating or deleting a product that does not exist does nothing, as in DerbyRW.
+ * - Name searches match descriptions with a word starting with each word of the keyword, ignoring case, or
+ *   start with the keyword if it ends in '*'. Unlike Derby's LIKE, % and _ in a keyword are matched literally.
+ */
+
+public class MemoryRW implements DatabaseRW {
+    private static final Logger log = Logger.getLogger(MemoryRW.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x48534D31; // "HSM1"
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final int MAX_ID_LENGTH = 4;           // productID CHAR(4)
+    private static final int MAX_TEXT_LENGTH = 100;       // description and image VARCHAR(100)
+
+    // The kinds of write-ahead log records
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+    private static final byte PURCHASE = 4;
+
+    private final Path dir;
+    private final int snapshotEveryRecords;
+    private final MemoryProductTable table = new MemoryProductTable();
+    private final WriteAheadLog wal;
+    private final boolean isNew; // no snapshot and no log were found: a brand new, empty store
+    private long recordsSinceSnapshot = 0; // written under the table's write lock
+    private boolean closed = false;        // written under the table's write lock
+
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MemoryRW-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean(false);
+    private final AtomicLong snapshotCount = new AtomicLong();
+    private volatile long lastSnapshotMillis = 0;
+
+    /**
+     * Opens the store in dir, creating it if needed, and recovers the table from the snapshot and log found there.
+     *
+     * @param dir                  the folder holding the snapshot and log files
+     * @param fsync                true to wait for every change to reach the disk (slower, survives power loss)
+     * @param snapshotEveryRecords how many changes to log before taking the next snapshot
+     */
+    public MemoryRW(Path dir, boolean fsync, int snapshotEveryRecords) throws IOException {
+        this.dir = dir;
+        this.snapshotEveryRecords = snapshotEveryRecords;
+        this.wal = new WriteAheadLog(dir, fsync);
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+
+        long stamp = table.writeLock();
+        try {
+            Path snapshot = dir.resolve(SNAPSHOT_FILE);
+            long firstSegment = Files.exists(snapshot) ? loadSnapshot(snapshot) : 1;
+            try (var files = Files.list(dir)) {
+                isNew = !Files.exists(snapshot) && files.noneMatch(p -> p.getFileName().toString().startsWith("wal-"));
+            }
+            wal.replayAndOpen(firstSegment, this::replayRecord);
+        } finally {
+            table.unlockWrite(stamp);
+        }
+        log.info("Memory database opened", "dir", dir, "products", table.size(),
+                "millis", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // True if the store was just created, eg so the factory can fill it from the Derby database once
+    public boolean isNew() { return isNew; }
+
+    public int getProductCount() { return table.size(); }
+
+    // ---------- reads ----------
+
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        Product product = table.get(keyword);
+        if (product != null) {
+            ArrayList<Product> productList = new ArrayList<>();
+            productList.add(product);
+            return productList;
+        }
+        return table.scan(null, nameFilter(keyword), Integer.MAX_VALUE);
+    }
+
+    public ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        if (afterProductId == null) { // an exact product ID match is a page of its own
+            Product product = table.get(keyword);
+            if (product != null) {
+                ArrayList<Product> productList = new ArrayList<>();
+                productList.add(product);
+                return new ProductPage(productList, null);
+            }
+        }
+        return ProductPage.fromRows(table.scan(afterProductId, nameFilter(keyword), pageSize + 1), pageSize);
+    }
+
+    public Product searchByProductId(String productId) throws SQLException {
+        return table.get(productId);
+    }
+
+    public ArrayList<Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        return table.getAll(productIds);
+    }
+
+    public ArrayList<Product> suggestProducts(String prefix, int limit) throws SQLException {
+        String lowerPrefix = prefix.trim().toLowerCase();
+        if (lowerPrefix.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String wordPrefix = " " + lowerPrefix;
+        return table.scan(null, (id, description) -> id.startsWith(lowerPrefix)
+                || description.startsWith(lowerPrefix) || description.contains(wordPrefix), limit);
+    }
+
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return table.get(productId) == null;
+    }
+
+    // "*" matches every product, "usb*" the descriptions starting with usb, anything else the descriptions with a word
+    // starting with each word of the keyword (ignoring case), as DatabaseRW.searchProduct() describes
+    private static MemoryProductTable.RowFilter nameFilter(String keyword) {
+        if (keyword.equals("*")) {
+            return null;
+        }
+        String lowerKeyword = keyword.toLowerCase();
+        if (lowerKeyword.length() > 1 && lowerKeyword.endsWith("*")) {
+            String prefix = lowerKeyword.substring(0, lowerKeyword.length() - 1);
+            return (id, description) -> description.startsWith(prefix);
+        }
+        List<String> words = ProductSearchIndex.tokenize(lowerKeyword);
+        return (id, description) -> ProductSearchIndex.matchesAll(description, words);
+    }
+
+    // ---------- writes: check, log, then apply, all under the write lock ----------
+
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> orderedList = new ArrayList<>(proList);
+        orderedList.sort(Comparator.comparing(Product::getProductId)); // same order as DerbyRW reports them
+
+        long stamp = table.writeLock();
+        try {
+            checkOpen();
+            // Lines are checked one after another, like DerbyRW's batch of conditional updates:
+            // two lines for the same product must both fit into its stock.
+            HashMap<String, Integer> stockLeft = new HashMap<>();
+            ArrayList<Product> insufficientProducts = new ArrayList<>();
+            for (Product line : orderedList) {
+                String id = line.getProductId();
+                int stock = stockLeft.computeIfAbsent(id, table::stockLocked);
+                if (stock < 0 || stock < line.getOrderedQuantity()) { // -1: no such product
+                    insufficientProducts.add(line);
+                } else {
+                    stockLeft.put(id, stock - line.getOrderedQuantity());
+                }
+            }
+            if (!insufficientProducts.isEmpty()) {
+                log.info("Insufficient stock, purchase rolled back", "lines", orderedList.size(),
+                        "insufficient", insufficientProducts.size());
+                return withCurrentStock(insufficientProducts);
+            }
+
+            appendToLog(purchaseRecord(orderedList));
+            for (Product line : orderedList) {
+                table.addStockLocked(line.getProductId(), -line.getOrderedQuantity());
+            }
+            log.debug("Stock purchased", "lines", orderedList.size());
+            return insufficientProducts;
+        } finally {
+            table.unlockWrite(stamp);
+        }
+    }
+
+    // The insufficient products with their stock as it is now (0 if deleted), keeping the ordered quantity
+    private ArrayList<Product> withCurrentStock(ArrayList<Product> insufficientProducts) {
+        ArrayList<Product> result = new ArrayList<>();
+        for (Product ordered : insufficientProducts) {
+            Product now = table.getLocked(ordered.getProductId());
+            if (now == null) {
+                now = new Product(ordered.getProductId(), ordered.getProductDescription(),
+                        ordered.getProductImageName(), ordered.getUnitPrice(), 0);
+            }
+            now.setOrderedQuantity(ordered.getOrderedQuantity());
+            result.add(now);
+        }
+        return result;
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException {
+        checkValues(id, des, imageName, stock);
+        long stamp = table.writeLock();
+        try {
+            checkOpen();
+            if (!table.containsLocked(id)) {
+                log.warn("Product not found for update", "productId", id);
+                return;
+            }
+            appendToLog(productRecord(UPDATE, id, des, price, imageName, stock));
+            table.updateLocked(id, des, price, imageName, stock);
+            log.info("Product updated", "productId", id, "inStock", stock);
+        } finally {
+            table.unlockWrite(stamp);
+        }
+    }
+
+    public void deleteProduct(String proId) throws SQLException {
+        long stamp = table.writeLock();
+        try {
+            checkOpen();
+            if (!table.containsLocked(proId)) {
+                log.warn("Product not found for delete", "productId", proId);
+                return;
+            }
+            appendToLog(deleteRecord(proId));
+            table.deleteLocked(proId);
+            log.info("Product deleted", "productId", proId);
+        } finally {
+            table.unlockWrite(stamp);
+        }
+    }
+
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        checkValues(id, des, image, stock);
+        long stamp = table.writeLock();
+        try {
+            checkOpen();
+            if (table.containsLocked(id)) {
+                throw new SQLException("Product ID already exists: " + id, "23505");
+            }
+            appendToLog(productRecord(INSERT, id, des, price, image, stock));
+            table.insertLocked(id, des, price, image, stock);
+            log.info("Product inserted", "productId", id, "inStock", stock);
+        } finally {
+            table.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copies products (eg every product of the Derby database) into the store, replacing any with the same ID.
+     * Used by DatabaseRWFactory to fill a new store once.
+     */
+    public void importProducts(Collection<Product> products) throws SQLException {
+        for (Product p : products) { // logged as inserts, which replay as "insert or replace"
+            checkValues(p.getProductId(), p.getProductDescription(), p.getProductImageName(), p.getStockQuantity());
+            long stamp = table.writeLock();
+            try {
+                checkOpen();
+                appendToLog(productRecord(INSERT, p.getProductId(), p.getProductDescription(), p.getUnitPrice(),
+                        p.getProductImageName(), p.getStockQuantity()));
+                putLocked(p.getProductId(), p.getProductDescription(), p.getUnitPrice(),
+                        p.getProductImageName(), p.getStockQuantity());
+            } finally {
+                table.unlockWrite(stamp);
+            }
+        }
+        log.info("Products imported", "products", products.size());
+    }
+
+    // The same limits Derby enforces through the ProductTable column types and CHECK constraint
+    private static void checkValues(String id, String description, String image, int stock) throws SQLException {
+        if (id == null || id.isEmpty()) {
+            throw new SQLException("Product ID must not be empty", "23502");
+        }
+        if (id.length() > MAX_ID_LENGTH || (description != null && description.length() > MAX_TEXT_LENGTH)
+                || (image != null && image.length() > MAX_TEXT_LENGTH)) {
+            throw new SQLException("Value too long for ProductTable: " + id, "22001");
+        }
+        if (stock < 0) {
+            throw new SQLException("inStock must not be negative: " + id, "23513");
+        }
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("The memory database is closed", "08003");
+        }
+    }
+
+    // Writes a change to the log (before it is applied). When enough changes have piled up, a snapshot is
+    // started first, so the snapshot holds every change before this one and the new segment starts with it.
+    private void appendToLog(byte[] record) throws SQLException {
+        if (recordsSinceSnapshot >= snapshotEveryRecords && snapshotRunning.compareAndSet(false, true)) {
+            recordsSinceSnapshot = 0;
+            try {
+                startSnapshotLocked(false);
+            } catch (IOException e) {
+                // Only the snapshot is put off until the next attempt; the log still holds every change
+                log.error("Starting a snapshot failed", e);
+            }
+        }
+        try {
+            wal.append(record);
+        } catch (IOException e) {
+            log.error("Write-ahead log append failed, change not made", e);
+            throw new SQLException("Could not write the change to the log", "58030", e);
+        }
+        recordsSinceSnapshot++;
+    }
+
+    // ---------- snapshots ----------
+
+    /**
+     * Takes a snapshot now and waits for it, then deletes the log segments it covers.
+     */
+    public void checkpoint() throws IOException {
+        while (!snapshotRunning.compareAndSet(false, true)) { // let a background snapshot finish first
+            Thread.yield();
+        }
+        long stamp = table.writeLock();
+        try {
+            if (closed) {
+                snapshotRunning.set(false);
+                return;
+            }
+            recordsSinceSnapshot = 0;
+            startSnapshotLocked(true);
+        } finally {
+            table.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * With the write lock held: starts a new log segment and copies the table, so the copy holds exactly the
+     * changes of the older segments. The copy is then written out in the background (or right away if wait
+     * is true), and only once it is safely on disk are the older segments deleted.
+     */
+    private void startSnapshotLocked(boolean wait) throws IOException {
+        long firstSegment;
+        ArrayList<Product> rows;
+        try {
+            firstSegment = wal.rotate();
+            rows = table.allLocked();
+        } catch (IOException e) {
+            snapshotRunning.set(false);
+            throw e;
+        }
+        Runnable write = () -> {
+            try {
+                long start = System.nanoTime();
+                writeSnapshot(rows, firstSegment);
+                wal.deleteSegmentsBefore(firstSegment);
+                snapshotCount.incrementAndGet();
+                lastSnapshotMillis = (System.nanoTime() - start) / 1_000_000;
+                log.info("Snapshot written", "products", rows.size(), "segment", firstSegment, "millis", lastSnapshotMillis);
+            } catch (IOException e) {
+                log.error("Snapshot failed, the log is kept instead", e); // recovery still works from the older snapshot
+            } finally {
+                snapshotRunning.set(false);
+            }
+        };
+        if (wait) {
+            write.run();
+        } else {
+            snapshotWriter.execute(write);
+        }
+    }
+
+    // Written to a temporary file first and then renamed, so a crash never leaves half a snapshot behind
+    private void writeSnapshot(ArrayList<Product> rows, long firstSegment) throws IOException {
+        Path temp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(firstSegment);
+            out.writeInt(rows.size());
+            for (Product p : rows) {
+                out.writeUTF(p.getProductId());
+                writeText(out, p.getProductDescription());
+                out.writeDouble(p.getUnitPrice());
+                writeText(out, p.getProductImageName());
+                out.writeInt(p.getStockQuantity());
+            }
+            out.flush();
+            new DataOutputStream(file).writeLong(crc.getValue()); // after the checked data, not part of it
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Loads the snapshot into the (empty) table in one go once its checksum is verified, so a damaged snapshot
+    // leaves nothing half loaded; returns the first log segment to replay after it
+    private long loadSnapshot(Path snapshot) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(snapshot));
+             DataInputStream in = new DataInputStream(new CheckedInputStream(file, crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a HappyShop memory snapshot: " + snapshot);
+            }
+            long firstSegment = in.readLong();
+            int count = in.readInt();
+            ArrayList<Product> rows = new ArrayList<>(Math.min(Math.max(count, 0), 1 << 20)); // a damaged count is caught below
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String description = readText(in);
+                double price = in.readDouble();
+                String image = readText(in);
+                rows.add(new Product(id, description, image, price, in.readInt()));
+            }
+            long expectedCrc = crc.getValue();
+            if (new DataInputStream(file).readLong() != expectedCrc) {
+                throw new IOException("Snapshot damaged (checksum mismatch): " + snapshot);
+            }
+            table.loadLocked(rows);
+            return firstSegment;
+        }
+    }
+
+    // ---------- log records ----------
+
+    private static byte[] productRecord(byte type, String id, String des, double price, String image, int stock) {
+        return encode(out -> {
+            out.writeByte(type);
+            out.writeUTF(id);
+            writeText(out, des);
+            out.writeDouble(price);
+            writeText(out, image);
+            out.writeInt(stock);
+        });
+    }
+
+    private static byte[] deleteRecord(String id) {
+        return encode(out -> {
+            out.writeByte(DELETE);
+            out.writeUTF(id);
+        });
+    }
+
+    private static byte[] purchaseRecord(ArrayList<Product> lines) {
+        return encode(out -> {
+            out.writeByte(PURCHASE);
+            out.writeInt(lines.size());
+            for (Product line : lines) {
+                out.writeUTF(line.getProductId());
+                out.writeInt(line.getOrderedQuantity());
+            }
+        });
+    }
+
+    // Inserts the product, or replaces it if the ID exists
+    private void putLocked(String id, String des, double price, String image, int stock) {
+        if (table.containsLocked(id)) {
+            table.updateLocked(id, des, price, image, stock);
+        } else {
+            table.insertLocked(id, des, price, image, stock);
+        }
+    }
+
+    // Applies one record found in the log during recovery; the change was checked before it was logged
+    private void replayRecord(ByteBuffer payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array(), 0, payload.limit()));
+        byte type = in.readByte();
+        switch (type) {
+            case INSERT, UPDATE -> {
+                String id = in.readUTF();
+                String des = readText(in);
+                double price = in.readDouble();
+                String image = readText(in);
+                putLocked(id, des, price, image, in.readInt());
+            }
+            case DELETE -> {
+                String id = in.readUTF();
+                if (table.containsLocked(id)) {
+                    table.deleteLocked(id);
+                }
+            }
+            case PURCHASE -> {
+                int lines = in.readInt();
+                for (int i = 0; i < lines; i++) {
+                    String id = in.readUTF();
+                    int quantity = in.readInt();
+                    if (table.containsLocked(id)) {
+                        table.addStockLocked(id, -quantity);
+                    }
+                }
+            }
+            default -> throw new IOException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen when writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    // description and image may be null, which writeUTF does not allow
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        out.writeBoolean(text != null);
+        if (text != null) {
+            out.writeUTF(text);
+        }
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // ---------- lifecycle and metrics ----------
+
+    /**
+     * Takes a final snapshot (so the next start has no log to replay) and closes the log.
+     * Further changes fail with an SQLException; reads keep working on the in-memory table.
+     */
+    public void close() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            log.error("Final snapshot failed, the log will be replayed on the next start", e);
+        }
+        long stamp = table.writeLock();
+        try {
+            closed = true;
+            wal.close();
+        } catch (IOException e) {
+            log.error("Closing the write-ahead log failed", e);
+        } finally {
+            table.unlockWrite(stamp);
+        }
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One line with the store's size and persistence counters, for the metrics dump
+    public String metricsSummary() {
+        return String.format("MemoryRW[products=%d, walSegment=%d, walRecords=%d, snapshots=%d, lastSnapshot=%dms]",
+                table.size(), wal.getSegment(), wal.getAppendedRecords(), snapshotCount.get(), lastSnapshotMillis);
+    }
+}
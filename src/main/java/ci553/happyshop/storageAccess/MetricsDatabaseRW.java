@@ -0,0 +1,118 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.utility.MetricsRegistry;
+import ci553.happyshop.utility.OperationMetrics;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * MetricsDatabaseRW is a decorator that measures every call to the wrapped DatabaseRW.
+ *
+ * For each method it records, in the given MetricsRegistry under "DatabaseRW.<method>":
+ * - the number of calls,
+ * - the number of calls that threw an exception,
+ * - a latency histogram, so p50/p95/p99/max can be reported (see LatencyHistogram).
+ *
+ * The decorator changes nothing else: arguments, results and exceptions are passed through untouched.
+ * DatabaseRWFactory wraps it around all the other decorators, so it measures what the clients actually wait for.
+ */
+
+public class MetricsDatabaseRW implements DatabaseRW {
+    private final DatabaseRW delegate;
+
+    // looked up once, so recording a call is just a clock read and a few counter updates
+    private final OperationMetrics searchProduct;
+    private final OperationMetrics searchProductPage;
+    private final OperationMetrics searchByProductId;
+    private final OperationMetrics searchByProductIds;
+    private final OperationMetrics suggestProducts;
+    private final OperationMetrics purchaseStocks;
+    private final OperationMetrics updateProduct;
+    private final OperationMetrics deleteProduct;
+    private final OperationMetrics insertNewProduct;
+    private final OperationMetrics isProIdAvailable;
+
+    public MetricsDatabaseRW(DatabaseRW delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        searchProduct = registry.operation("DatabaseRW.searchProduct");
+        searchProductPage = registry.operation("DatabaseRW.searchProductPage");
+        searchByProductId = registry.operation("DatabaseRW.searchByProductId");
+        searchByProductIds = registry.operation("DatabaseRW.searchByProductIds");
+        suggestProducts = registry.operation("DatabaseRW.suggestProducts");
+        purchaseStocks = registry.operation("DatabaseRW.purchaseStocks");
+        updateProduct = registry.operation("DatabaseRW.updateProduct");
+        deleteProduct = registry.operation("DatabaseRW.deleteProduct");
+        insertNewProduct = registry.operation("DatabaseRW.insertNewProduct");
+        isProIdAvailable = registry.operation("DatabaseRW.isProIdAvailable");
+    }
+
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        return measure(searchProduct, () -> delegate.searchProduct(keyword));
+    }
+
+    public ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        return measure(searchProductPage, () -> delegate.searchProductPage(keyword, afterProductId, pageSize));
+    }
+
+    public Product searchByProductId(String productId) throws SQLException {
+        return measure(searchByProductId, () -> delegate.searchByProductId(productId));
+    }
+
+    public ArrayList<Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        return measure(searchByProductIds, () -> delegate.searchByProductIds(productIds));
+    }
+
+    public ArrayList<Product> suggestProducts(String prefix, int limit) throws SQLException {
+        return measure(suggestProducts, () -> delegate.suggestProducts(prefix, limit));
+    }
+
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        return measure(purchaseStocks, () -> delegate.purchaseStocks(proList));
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException {
+        measure(updateProduct, () -> {
+            delegate.updateProduct(id, des, price, imageName, stock);
+            return null;
+        });
+    }
+
+    public void deleteProduct(String id) throws SQLException {
+        measure(deleteProduct, () -> {
+            delegate.deleteProduct(id);
+            return null;
+        });
+    }
+
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        measure(insertNewProduct, () -> {
+            delegate.insertNewProduct(id, des, price, image, stock);
+            return null;
+        });
+    }
+
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return measure(isProIdAvailable, () -> delegate.isProIdAvailable(productId));
+    }
+
+    // A DatabaseRW call, so measure() can time it
+    @FunctionalInterface
+    private interface DatabaseCall<T> {
+        T call() throws SQLException;
+    }
+
+    private static <T> T measure(OperationMetrics metrics, DatabaseCall<T> databaseCall) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = databaseCall.call();
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(System.nanoTime() - start, failed);
+        }
+    }
+}
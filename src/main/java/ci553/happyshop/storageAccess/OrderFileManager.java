@@ -1,6 +1,7 @@
 package ci553.happyshop.storageAccess;
 
 import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.Logger;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -39,10 +40,13 @@ import java.time.format.DateTimeFormatter;
  * When the order state changes, this class updates the corresponding timestamp and moves the file to the appropriate folder.
  *  1. update state from Ordered to Progressing, (then move the file to progressing folder)
  *  2. update state from Progressing to Collected (then move the file to collected folder)
+ * FileOrderStore only does this for orders placed before orders/orderStates.dat existed; newer orders keep
+ * their state in that file (see OrderStateFile) and their order file is left as it was placed.
  * </p>
  */
 
 public class OrderFileManager {
+    private static final Logger log = Logger.getLogger(OrderFileManager.class);
 
     //Creates a new order file in the specified directory with the given content.
     public static void createOrderFile(Path dir, int orderId, String orderDetail) throws IOException {
@@ -53,11 +57,11 @@ public class OrderFileManager {
             try (BufferedWriter writer = Files.newBufferedWriter(path)) {
                 writer.write(orderDetail);
                 writer.newLine();
-                System.out.println(path + " created");
+                log.debug("Order file created", "path", path);
             }
         }
         else{
-            System.out.println(path + " already exists");
+            log.warn("Order file already exists", "path", path);
         }
     }
 
@@ -66,17 +70,24 @@ public class OrderFileManager {
     //Progressing state in orders/progressing
     //Collected state in orders/collected
     public static boolean updateAndMoveOrderFile(int orderId, OrderState newState, Path sourceDir, Path targetDir) throws IOException {
+        String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        return updateAndMoveOrderFile(orderId, newState, sourceDir, targetDir, now);
+    }
+
+    // The same, with the time to record given (eg so a copy of the order elsewhere gets the very same time)
+    public static boolean updateAndMoveOrderFile(int orderId, OrderState newState, Path sourceDir, Path targetDir,
+                                                 String dateTime) throws IOException {
         String orderFileName = String.valueOf(orderId)+".txt";
         Path sourcePath = sourceDir.resolve(orderFileName);
         Path targetPath = targetDir.resolve(orderFileName);
         if (Files.exists(sourcePath)) {
-            updateOrderStateAndTime(sourceDir,orderId,newState); //Edit the file to update order state and add time
+            updateOrderStateAndTime(sourceDir,orderId,newState,dateTime); //Edit the file to update order state and add time
             if(!sourceDir.equals(targetDir)) //Move the file only if the source and destination are different
                 Files.move(sourcePath,targetPath);
             return true;
         }
         else{
-            System.out.println(sourcePath + " not found in ");
+            log.warn("Order file not found", "path", sourcePath);
             return false;
         }
     }
@@ -86,7 +97,7 @@ public class OrderFileManager {
      * This method creates a temporary file with the updated content and replaces
      * the original file once updates are complete.
      */
-    private static void updateOrderStateAndTime(Path sourceDir, int orderId, OrderState newState) throws IOException {
+    private static void updateOrderStateAndTime(Path sourceDir, int orderId, OrderState newState, String dateTime) throws IOException {
         String orderFileName = String.valueOf(orderId)+".txt";
         String tempFileName = String.valueOf(orderId) + "_temp.txt";
         Path sourcePath = sourceDir.resolve(orderFileName);
@@ -99,9 +110,9 @@ public class OrderFileManager {
                 if (line.startsWith("State")) {
                     line = "State: " + newState;
                 } else if (newState.equals(OrderState.Progressing) && line.startsWith("ProgressingDateTime")) {
-                    line = "ProgressingDateTime: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                    line = "ProgressingDateTime: " + dateTime;
                 } else if (newState.equals(OrderState.Collected) && line.startsWith("CollectedDateTime")) {
-                    line = "CollectedDateTime: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                    line = "CollectedDateTime: " + dateTime;
                 }
                 writer.write(line);
                 writer.newLine();
@@ -112,7 +123,7 @@ public class OrderFileManager {
         try {
             Files.move(tempFilePath, sourcePath, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            System.err.println("Move failed: " + e.getMessage());
+            log.error("Order file move failed", e, "path", sourcePath);
             Files.deleteIfExists(tempFilePath); // Delete temp file ONLY IF move failed and it still exists
         }
     }
@@ -127,4 +138,29 @@ public class OrderFileManager {
         }
         return String.join("\n", Files.readAllLines(path));
     }
+
+    /**
+     * Puts the state and times into the text of an order as it was placed (Order.orderDetails()), the same way
+     * updateOrderStateAndTime edits an order file; a null time leaves its line as it is.
+     * Used by the stores that keep the text and the state apart (JournalOrderStore, FileOrderStore's mapped copy).
+     */
+    static String withStateAndTimes(String orderText, OrderState state, String progressingDateTime, String collectedDateTime) {
+        StringBuilder sb = new StringBuilder(orderText.length() + 64);
+        String[] lines = orderText.split("\n", -1); // -1 keeps a trailing empty line, as readOrderFile does
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.startsWith("State")) {
+                line = "State: " + state;
+            } else if (progressingDateTime != null && line.startsWith("ProgressingDateTime")) {
+                line = "ProgressingDateTime: " + progressingDateTime;
+            } else if (collectedDateTime != null && line.startsWith("CollectedDateTime")) {
+                line = "CollectedDateTime: " + collectedDateTime;
+            }
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append(line);
+        }
+        return sb.toString();
+    }
 }
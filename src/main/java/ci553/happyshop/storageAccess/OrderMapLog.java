@@ -0,0 +1,304 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * OrderMapLog lets OrderHub start from a snapshot of its map of uncollected orders (order ID to state)
+ * instead of listing the order folders, which takes longer the more orders are waiting.
+ *
+ * It works like MemoryRW's persistence:
+ * - Every change OrderHub makes to the map (an order placed, progressing or collected) is appended to a
+ *   write-ahead log (WriteAheadLog) right after the order store has recorded it.
+ * - Every snapshotEveryRecords changes, the map is written to a snapshot in the background, together with
+ *   its sequence marker: the first log segment it does not cover. The older segments are then deleted.
+ * - open() loads the snapshot and replays the log written after it.
+ *
+ * The order store stays where orders are kept. If the snapshot is missing or damaged (or the log cannot be
+ * replayed), open() returns null; OrderHub then scans the order store and starts again from a new snapshot.
+ * Deleting the folder therefore only costs one full scan at the next start.
+ *
+ * The files live in one folder (orders/orderMap):
+ *     snapshot.dat      the last snapshot, with the number of the first log segment it does not cover
+ *     wal-000001.log    log segments
+ *
+ * All public methods are synchronized; OrderHub calls them under its own lock. The background snapshot
+ * writer takes the same lock before it touches the log.
+ */
+
+public class OrderMapLog {
+    private static final Logger log = Logger.getLogger(OrderMapLog.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x48534F31; // "HSO1"
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    // The kinds of log records
+    private static final byte PUT = 1;     // the order is placed or changed state: orderId, state
+    private static final byte REMOVE = 2;  // the order is collected, so no longer loaded at startup: orderId
+
+    private final Path dir;
+    private final int snapshotEveryRecords;
+    private final WriteAheadLog wal;
+    private long recordsSinceSnapshot = 0;
+
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OrderMapLog-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean snapshotRunning = false; // guarded by this, like the log itself
+    private boolean invalidated = false;
+    private final AtomicLong snapshotCount = new AtomicLong();
+    private volatile long lastSnapshotMillis = 0;
+
+    /**
+     * @param dir                  the folder holding the snapshot and log files
+     * @param snapshotEveryRecords how many changes to log before taking the next snapshot
+     */
+    public OrderMapLog(Path dir, int snapshotEveryRecords) {
+        this.dir = dir;
+        this.snapshotEveryRecords = snapshotEveryRecords;
+        this.wal = new WriteAheadLog(dir, false); // the order store has the orders; this only saves a scan
+    }
+
+    /**
+     * Recovers the map of uncollected orders from the snapshot and the log after it, and opens the log
+     * for appending. Returns null if there is no usable snapshot; the caller then scans the order store
+     * and calls checkpoint() with what it found.
+     */
+    public synchronized TreeMap<Integer, OrderState> open() throws IOException {
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try {
+                long firstSegment = loadSnapshot(snapshot, orders);
+                wal.replayAndOpen(firstSegment, payload -> replayRecord(payload, orders));
+                log.info("Order map recovered from its snapshot", "orders", orders.size(), "segment", firstSegment,
+                        "millis", (System.nanoTime() - start) / 1_000_000);
+                return orders;
+            } catch (IOException e) {
+                log.warn("Order map snapshot or log unusable, the orders are scanned instead", "dir", dir);
+                Files.deleteIfExists(snapshot);
+            }
+        }
+        // Start a fresh segment after any left over; checkpoint() deletes them once the scan is saved
+        ArrayList<Long> segments = wal.getSegments();
+        wal.replayAndOpen(segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1, payload -> { });
+        return null;
+    }
+
+    // The order is placed or has changed state
+    public synchronized void put(int orderId, OrderState state) throws IOException {
+        wal.append(new byte[]{PUT, (byte) (orderId >>> 24), (byte) (orderId >>> 16), (byte) (orderId >>> 8),
+                (byte) orderId, (byte) state.ordinal()});
+        recordsSinceSnapshot++;
+    }
+
+    // The order is collected, so it is left out of the map at the next start
+    public synchronized void remove(int orderId) throws IOException {
+        wal.append(new byte[]{REMOVE, (byte) (orderId >>> 24), (byte) (orderId >>> 16), (byte) (orderId >>> 8),
+                (byte) orderId});
+        recordsSinceSnapshot++;
+    }
+
+    // True once enough changes have been logged that the next snapshot should be taken
+    public synchronized boolean snapshotDue() {
+        return recordsSinceSnapshot >= snapshotEveryRecords && !snapshotRunning;
+    }
+
+    /**
+     * Starts a new log segment and writes the uncollected orders as the snapshot covering the older ones.
+     * The orders must be exactly the map after the last change logged (OrderHub calls this under its lock).
+     * The snapshot is written in the background, or right away if wait is true. Only writing the file runs
+     * outside the lock; putting it in place and deleting the log segments it covers run under it, as the log
+     * itself is not thread-safe.
+     */
+    public synchronized void checkpoint(Map<Integer, OrderState> uncollectedOrders, boolean wait) throws IOException {
+        while (snapshotRunning) { // let a background snapshot finish first
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the order map snapshot");
+            }
+        }
+        long firstSegment = wal.rotate();
+        snapshotRunning = true;
+        recordsSinceSnapshot = 0;
+        TreeMap<Integer, OrderState> orders = new TreeMap<>(uncollectedOrders);
+        Runnable write = () -> {
+            try {
+                long start = System.nanoTime();
+                Path written = writeSnapshot(orders, firstSegment);
+                synchronized (this) {
+                    if (invalidated) { // the orders changed without being logged, so this snapshot is no good
+                        Files.deleteIfExists(written);
+                        return;
+                    }
+                    Files.move(written, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    wal.deleteSegmentsBefore(firstSegment);
+                }
+                snapshotCount.incrementAndGet();
+                lastSnapshotMillis = (System.nanoTime() - start) / 1_000_000;
+                log.info("Order map snapshot written", "orders", orders.size(), "segment", firstSegment,
+                        "millis", lastSnapshotMillis);
+            } catch (IOException e) {
+                log.error("Order map snapshot failed, the log is kept instead", e); // the older snapshot still works
+            } finally {
+                synchronized (this) {
+                    snapshotRunning = false;
+                    notifyAll();
+                }
+            }
+        };
+        if (wait) {
+            write.run();
+        } else {
+            snapshotWriter.execute(write);
+        }
+    }
+
+    /**
+     * Forgets the snapshot (including one still being written) and closes the log, so the next start scans
+     * the order store. Used when a change could not be logged or recorded, as the snapshot and log would no
+     * longer match the orders. The log must not be used afterwards.
+     */
+    public synchronized void invalidate() {
+        invalidated = true;
+        try {
+            Files.deleteIfExists(dir.resolve(SNAPSHOT_FILE));
+        } catch (IOException e) {
+            log.error("Could not delete the order map snapshot", e, "dir", dir);
+        }
+        try {
+            wal.close();
+        } catch (IOException e) {
+            log.error("Closing the order map log failed", e);
+        }
+        snapshotWriter.shutdown();
+    }
+
+    /**
+     * Takes a final snapshot of the given orders (so the next start has no log to replay) and closes the log.
+     */
+    public synchronized void close(Map<Integer, OrderState> uncollectedOrders) {
+        try {
+            checkpoint(uncollectedOrders, true);
+        } catch (IOException e) {
+            log.error("Final order map snapshot failed, the log will be replayed on the next start", e);
+        }
+        try {
+            wal.close();
+        } catch (IOException e) {
+            log.error("Closing the order map log failed", e);
+        }
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One line with the log's persistence counters, for the metrics dump
+    public synchronized String metricsSummary() {
+        return String.format("OrderMapLog[walSegment=%d, walRecords=%d, snapshots=%d, lastSnapshot=%dms]",
+                wal.getSegment(), wal.getAppendedRecords(), snapshotCount.get(), lastSnapshotMillis);
+    }
+
+    // ---------- snapshot and log records ----------
+
+    // Written to a temporary file, which the caller renames to the snapshot, so a crash never leaves half a
+    // snapshot behind. Returns the temporary file.
+    private Path writeSnapshot(TreeMap<Integer, OrderState> orders, long firstSegment) throws IOException {
+        Path temp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(firstSegment);
+            out.writeInt(orders.size());
+            for (Map.Entry<Integer, OrderState> order : orders.entrySet()) {
+                out.writeInt(order.getKey());
+                out.writeByte(order.getValue().ordinal());
+            }
+            out.flush();
+            new DataOutputStream(file).writeLong(crc.getValue()); // after the checked data, not part of it
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        return temp;
+    }
+
+    // Loads the snapshot into orders; returns the first log segment to replay after it.
+    // The file is read whole and checked in one go: at 5 bytes an order, even 100,000 orders are only 500 KB.
+    private static long loadSnapshot(Path snapshot, TreeMap<Integer, OrderState> orders) throws IOException {
+        byte[] bytes = Files.readAllBytes(snapshot);
+        if (bytes.length < 24) {
+            throw new IOException("Order map snapshot too short: " + snapshot);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (in.getLong(bytes.length - 8) != crc.getValue()) {
+            throw new IOException("Order map snapshot damaged (checksum mismatch): " + snapshot);
+        }
+        if (in.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a HappyShop order map snapshot: " + snapshot);
+        }
+        long firstSegment = in.getLong();
+        int count = in.getInt();
+        if (count < 0 || count * 5L != bytes.length - 24) {
+            throw new IOException("Order map snapshot has the wrong size: " + snapshot);
+        }
+        for (int i = 0; i < count; i++) {
+            orders.put(in.getInt(), stateOf(in.get()));
+        }
+        return firstSegment;
+    }
+
+    private static void replayRecord(ByteBuffer payload, TreeMap<Integer, OrderState> orders) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array(), 0, payload.limit()));
+        byte type = in.readByte();
+        int orderId = in.readInt();
+        switch (type) {
+            case PUT -> orders.put(orderId, stateOf(in.readByte()));
+            case REMOVE -> orders.remove(orderId);
+            default -> throw new IOException("Unknown order map log record type " + type);
+        }
+    }
+
+    private static OrderState stateOf(byte ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= OrderState.values().length) {
+            throw new IOException("Unknown order state " + ordinal + " in the order map");
+        }
+        return OrderState.values()[ordinal];
+    }
+}
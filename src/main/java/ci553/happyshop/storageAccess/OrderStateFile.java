@@ -0,0 +1,228 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * OrderStateFile keeps the parts of an order that change (its state and the times it changed) apart from
+ * its text, in one file of fixed-width slots. Changing an order's state is then one small write in place,
+ * whatever the size of the order.
+ *
+ * Each order has two slots of SLOT_BYTES, starting at byte N * 2 * SLOT_BYTES for order N, and the writes
+ * alternate between them: a new state goes into the slot not holding the latest one, with the next sequence
+ * number. A read takes the undamaged slot with the higher sequence number, so a write cut off by a crash only
+ * loses that change, and the order keeps the state it had before (instead of reading as if it had none).
+ *
+ * A slot is [byte state][19 bytes ProgressingDateTime][19 bytes CollectedDateTime][padding][int sequence][int CRC32],
+ * 64 bytes in all, so a slot never spans two disk pages and is written with a single positional write.
+ * An empty slot (all zeros) is unused; a slot whose CRC does not match is counted and logged.
+ *
+ * The slots of order 0 (never an order ID) hold the file's header, so a file in another layout is recognised.
+ * The file is sparse: the slots of order IDs that were never used take no disk space on most file systems.
+ *
+ * Example Usage:
+ *     OrderStateFile states = new OrderStateFile(Path.of("orders/orderStates.dat"), false);
+ *     states.write(12, new OrderStateFile.Entry(OrderState.Progressing, "2025-03-11 19:58:02", null));
+ *     OrderStateFile.Entry entry = states.read(12); // null if order 12 is not here
+ */
+
+public class OrderStateFile {
+    private static final Logger log = Logger.getLogger(OrderStateFile.class);
+
+    private static final int MAGIC = 0x48535332;  // "HSS2", at the start of the file
+    private static final int SLOT_BYTES = 64;
+    private static final int ORDER_BYTES = 2 * SLOT_BYTES; // two alternating slots
+    private static final int TIME_BYTES = 19;  // yyyy-MM-dd HH:mm:ss
+    private static final int SEQUENCE_OFFSET = SLOT_BYTES - 8;
+    private static final int CRC_OFFSET = SLOT_BYTES - 4;
+
+    // A slot's sequence number when it is unused or damaged; written slots start at 1
+    private static final int EMPTY = 0;
+    private static final int DAMAGED = -1;
+
+    // An order's state and the times it changed; a time is null until it happens
+    public static final class Entry {
+        public final OrderState state;
+        public final String progressingDateTime;
+        public final String collectedDateTime;
+
+        public Entry(OrderState state, String progressingDateTime, String collectedDateTime) {
+            this.state = state;
+            this.progressingDateTime = progressingDateTime;
+            this.collectedDateTime = collectedDateTime;
+        }
+    }
+
+    private final FileChannel channel;
+    private final boolean fsync;
+    private final CRC32 crc = new CRC32();
+    private long writes = 0;
+    private final AtomicLong damagedSlots = new AtomicLong();
+
+    /**
+     * Opens (or creates) the state file. A file written with one slot per order is converted first.
+     *
+     * @param fsync wait until each write is on disk (survives a power cut, but slower)
+     */
+    public OrderStateFile(Path file, boolean fsync) throws IOException {
+        if (Files.exists(file) && Files.size(file) > 0 && readMagic(file) == 0) {
+            convertOneSlotFile(file);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fsync = fsync;
+        if (channel.size() == 0) {
+            writeFully(ByteBuffer.allocate(4).putInt(0, MAGIC), 0);
+        } else if (readMagic(file) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a HappyShop order state file: " + file);
+        }
+    }
+
+    // Writes the order's state into the slot not holding its latest state
+    public synchronized void write(int orderId, Entry entry) throws IOException {
+        ByteBuffer pair = readPair(orderId);
+        int first = sequenceOf(pair, 0);
+        int second = sequenceOf(pair, SLOT_BYTES);
+        int sequence = Math.max(first, second) + 1; // a damaged slot (-1) is written over
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+        slot.put(0, (byte) (entry.state.ordinal() + 1)); // 0 is an empty slot
+        putTime(slot, 1, entry.progressingDateTime);
+        putTime(slot, 1 + TIME_BYTES, entry.collectedDateTime);
+        slot.putInt(SEQUENCE_OFFSET, sequence);
+        crc.reset();
+        crc.update(slot.array(), 0, CRC_OFFSET);
+        slot.putInt(CRC_OFFSET, (int) crc.getValue());
+        writeFully(slot, (long) orderId * ORDER_BYTES + (sequence % 2 == 1 ? 0 : SLOT_BYTES));
+        if (fsync) {
+            channel.force(false);
+        }
+        writes++;
+    }
+
+    // The order's latest state and times, or null if the order has no undamaged slot.
+    // Not synchronized: positional reads are safe from many threads at once, eg a parallel scan at startup.
+    public Entry read(int orderId) throws IOException {
+        ByteBuffer pair = readPair(orderId);
+        int first = sequenceOf(pair, 0);
+        int second = sequenceOf(pair, SLOT_BYTES);
+        if (first == DAMAGED || second == DAMAGED) {
+            damagedSlots.incrementAndGet();
+            log.warn("Damaged order state slot, the order's previous state is used", "orderId", orderId);
+        }
+        if (first <= EMPTY && second <= EMPTY) {
+            return null;
+        }
+        int offset = first > second ? 0 : SLOT_BYTES;
+        return new Entry(OrderState.values()[pair.get(offset) - 1], getTime(pair, offset + 1),
+                getTime(pair, offset + 1 + TIME_BYTES));
+    }
+
+    // One line for the metrics registry: slot writes and damaged slots found
+    public synchronized String metricsSummary() {
+        return String.format("OrderStateFile[writes=%d, damagedSlots=%d]", writes, damagedSlots.get());
+    }
+
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    // ---------- slots ----------
+
+    // Both slots of the order; past the end of the file they read as empty
+    private ByteBuffer readPair(int orderId) throws IOException {
+        ByteBuffer pair = ByteBuffer.allocate(ORDER_BYTES);
+        long position = (long) orderId * ORDER_BYTES;
+        while (pair.hasRemaining()) {
+            if (channel.read(pair, position + pair.position()) < 0) {
+                break;
+            }
+        }
+        return pair;
+    }
+
+    // The sequence number of the slot at offset, EMPTY if it was never written, or DAMAGED if its CRC is wrong
+    private static int sequenceOf(ByteBuffer pair, int offset) {
+        int state = pair.get(offset);
+        if (state == 0) {
+            return EMPTY;
+        }
+        CRC32 slotCrc = new CRC32();
+        slotCrc.update(pair.array(), offset, CRC_OFFSET);
+        int sequence = pair.getInt(offset + SEQUENCE_OFFSET);
+        if ((int) slotCrc.getValue() != pair.getInt(offset + CRC_OFFSET) || state > OrderState.values().length
+                || sequence <= 0) {
+            return DAMAGED;
+        }
+        return sequence;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static int readMagic(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            in.read(magic, 0);
+            return magic.getInt(0);
+        }
+    }
+
+    // Copies a file with one slot per order (whose first slot, order 0, is empty) into the two-slot layout.
+    // The old slots had no sequence number, and a damaged one is left out, as it was when read.
+    private static void convertOneSlotFile(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        OrderStateFile converted = new OrderStateFile(temp, false);
+        int orders = 0;
+        try (FileChannel old = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+            CRC32 slotCrc = new CRC32();
+            for (int orderId = 1; (long) orderId * SLOT_BYTES < old.size(); orderId++) {
+                slot.clear();
+                old.read(slot, (long) orderId * SLOT_BYTES);
+                int state = slot.get(0);
+                slotCrc.reset();
+                slotCrc.update(slot.array(), 0, CRC_OFFSET);
+                if (state > 0 && state <= OrderState.values().length && (int) slotCrc.getValue() == slot.getInt(CRC_OFFSET)) {
+                    converted.write(orderId, new Entry(OrderState.values()[state - 1], getTime(slot, 1), getTime(slot, 1 + TIME_BYTES)));
+                    orders++;
+                }
+            }
+        } finally {
+            converted.close();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Order state file converted to two slots per order", "orders", orders, "file", file);
+    }
+
+    private static void putTime(ByteBuffer slot, int offset, String time) {
+        if (time == null || time.isBlank()) {
+            return; // left as zeros
+        }
+        byte[] bytes = time.getBytes(StandardCharsets.US_ASCII);
+        slot.put(offset, bytes, 0, Math.min(bytes.length, TIME_BYTES));
+    }
+
+    private static String getTime(ByteBuffer slot, int offset) {
+        if (slot.get(offset) == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[TIME_BYTES];
+        slot.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII).trim();
+    }
+}
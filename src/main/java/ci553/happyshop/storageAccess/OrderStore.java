@@ -0,0 +1,36 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.IOException;
+import java.util.TreeMap;
+
+/**
+ * Interface for storing orders: their details (as the text of Order.orderDetails()) and their state.
+ *
+ * OrderHub keeps the order map in memory; an OrderStore is where the orders survive a restart.
+ * Implementations:
+ * - FileOrderStore: one text file per order, moved between the ordered, progressing and collected folders.
+ * - JournalOrderStore: an append-only journal of order-created and state-changed records.
+ * OrderStoreFactory chooses one (happyshop.orderStore=files or journal).
+ */
+
+public interface OrderStore {
+    // Stores a new order in the Ordered state; orderDetail is the text of Order.orderDetails()
+    void createOrder(int orderId, String orderDetail) throws IOException;
+
+    // Moves the order to the new state and records the time; returns false if the order is not stored
+    boolean changeState(int orderId, OrderState newState) throws IOException;
+
+    // The state the store has recorded for the order, or null if the order is not stored
+    OrderState stateOf(int orderId) throws IOException;
+
+    // The order in the human-readable layout of an order file, with its current state and times
+    String readOrder(int orderId) throws IOException;
+
+    // The orders not yet collected and their states, for OrderHub to rebuild its order map at startup
+    TreeMap<Integer, OrderState> loadUncollectedOrders() throws IOException;
+
+    // Releases any open files; the store must not be used afterwards
+    void close() throws IOException;
+}
@@ -0,0 +1,166 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.Logger;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The OrderStoreFactory chooses where orders are stored, like DatabaseRWFactory does for products.
+ *
+ * - By default (happyshop.orderStore=files) orders are text files in orders/ordered and collected, with their
+ *   states and times in orders/orderStates.dat (FileOrderStore, OrderStateFile), and a memory-mapped copy of
+ *   the uncollected orders' details in orders/orderDetails for fast reads (MappedOrderDetailStore;
+ *   -Dhappyshop.orderDetails.mapped=false to read the files only).
+ * - With -Dhappyshop.orderStore=journal they are kept in an append-only journal in orders/journal
+ *   (JournalOrderStore). On its first start the journal is filled with the existing order files, which are
+ *   left where they are; OrderJournalExporter writes order files back out from the journal on demand.
+ *
+ * Example Usage:
+ *     OrderStore store = OrderStoreFactory.getOrderStore();
+ */
+
+public class OrderStoreFactory {
+    private static final Logger log = Logger.getLogger(OrderStoreFactory.class);
+
+    // Store settings: -Dhappyshop.orderStore=journal selects JournalOrderStore
+    private static final boolean JOURNAL = "journal".equalsIgnoreCase(System.getProperty("happyshop.orderStore", "files"));
+    private static final Path JOURNAL_DIR = StorageLocation.ordersPath.resolve("journal");
+    private static final boolean JOURNAL_FSYNC = Boolean.getBoolean("happyshop.orderJournal.fsync"); // wait for the disk on every change
+    private static final long JOURNAL_SEGMENT_BYTES = 8L << 20; // 8 MB, some 20,000 orders of a few lines
+    private static final int JOURNAL_RETAIN_SEGMENTS = 16;      // older segments go once all their orders are collected
+    private static final Path STATES_FILE = StorageLocation.ordersPath.resolve("orderStates.dat");
+    private static final boolean STATES_FSYNC = Boolean.getBoolean("happyshop.orderStates.fsync"); // wait for the disk on every change
+    private static final Path ORDER_MAP_DIR = StorageLocation.ordersPath.resolve("orderMap");
+    private static final int ORDER_MAP_SNAPSHOT_EVERY = 10_000; // changes logged between order map snapshots
+    private static final boolean MAPPED_DETAILS = Boolean.parseBoolean(System.getProperty("happyshop.orderDetails.mapped", "true"));
+    private static final Path MAPPED_DETAILS_DIR = StorageLocation.ordersPath.resolve("orderDetails");
+    private static final Path OLD_MAPPED_DETAILS_FILE = StorageLocation.ordersPath.resolve("orderDetails.dat"); // before segments
+    private static final int MAPPED_DETAILS_SEGMENT_BYTES = 4 << 20; // 4 MB, some 10,000 orders of a few lines
+
+    private static OrderStore orderStore; // created on first use, shared by the whole JVM
+
+    // True if -Dhappyshop.orderStore=journal selected JournalOrderStore
+    public static boolean isJournal() {
+        return JOURNAL;
+    }
+
+    /**
+     * Returns the OrderStore shared by the whole JVM, opening it on first use.
+     */
+    public static synchronized OrderStore getOrderStore() {
+        if (orderStore == null) {
+            orderStore = JOURNAL ? openJournal() : openFiles();
+        }
+        return orderStore;
+    }
+
+    private static JournalOrderStore openJournal() {
+        JournalOrderStore journal;
+        try {
+            journal = new JournalOrderStore(JOURNAL_DIR, JOURNAL_FSYNC, JOURNAL_SEGMENT_BYTES, JOURNAL_RETAIN_SEGMENTS);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the order journal in " + JOURNAL_DIR, e);
+        }
+        if (journal.isNew()) {
+            importOrderFiles(journal);
+        }
+        DatabaseRWFactory.getMetricsRegistry().registerGauge("JournalOrderStore", journal::metricsSummary);
+        return journal;
+    }
+
+    private static FileOrderStore openFiles() {
+        OrderStateFile states = openStateFile();
+        if (!MAPPED_DETAILS) {
+            return new FileOrderStore(states, null);
+        }
+        MappedOrderDetailStore details;
+        try {
+            Files.deleteIfExists(OLD_MAPPED_DETAILS_FILE); // only a copy of the order files, which are still there
+            details = new MappedOrderDetailStore(MAPPED_DETAILS_DIR, MAPPED_DETAILS_SEGMENT_BYTES, orderId -> isCollected(states, orderId));
+        } catch (IOException e) {
+            log.error("Could not open the order detail store, order files are read instead", e, "dir", MAPPED_DETAILS_DIR);
+            return new FileOrderStore(states, null);
+        }
+        DatabaseRWFactory.getMetricsRegistry().registerGauge("MappedOrderDetailStore", details::metricsSummary);
+        return new FileOrderStore(states, details);
+    }
+
+    // True if the state file says the order is collected; an order whose state cannot be read is kept
+    private static boolean isCollected(OrderStateFile states, int orderId) {
+        try {
+            OrderStateFile.Entry entry = states.read(orderId);
+            return entry != null && entry.state == OrderState.Collected;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // The state file is where the orders' states are, so the order files cannot be used without it
+    private static OrderStateFile openStateFile() {
+        OrderStateFile states;
+        try {
+            states = new OrderStateFile(STATES_FILE, STATES_FSYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the order state file " + STATES_FILE, e);
+        }
+        DatabaseRWFactory.getMetricsRegistry().registerGauge("OrderStateFile", states::metricsSummary);
+        return states;
+    }
+
+    /**
+     * Returns a new OrderMapLog, so OrderHub can start from a snapshot of its order map instead of a scan
+     * of the order folders; null with the order journal, whose index is rebuilt in memory when it opens.
+     */
+    public static OrderMapLog openOrderMapLog() {
+        if (JOURNAL) {
+            return null;
+        }
+        OrderMapLog orderMapLog = new OrderMapLog(ORDER_MAP_DIR, ORDER_MAP_SNAPSHOT_EVERY);
+        DatabaseRWFactory.getMetricsRegistry().registerGauge("OrderMapLog", orderMapLog::metricsSummary);
+        return orderMapLog;
+    }
+
+    // Copies every existing order file, with its state and times, into a new journal
+    private static void importOrderFiles(JournalOrderStore journal) {
+        FileOrderStore files = new FileOrderStore(openStateFile(), null);
+        int imported = 0;
+        try {
+            for (Map.Entry<Integer, OrderState> order : files.loadAllOrders().entrySet()) {
+                try {
+                    journal.importOrder(order.getKey(), files.readOrder(order.getKey()), order.getValue());
+                    imported++;
+                } catch (IOException e) {
+                    log.warn("Order file could not be copied into the journal", "orderId", order.getKey());
+                }
+            }
+            files.close();
+        } catch (IOException e) {
+            log.error("Reading the order files failed, the journal is missing some orders", e);
+        }
+        if (imported > 0) {
+            log.info("Order journal filled from the order files", "orders", imported);
+        }
+    }
+
+    /**
+     * Closes the order store, so a journal's last records are on disk. Used by the headless runtime
+     * when it stops; the store must not be used afterwards.
+     */
+    public static synchronized void shutdown() {
+        if (orderStore == null) {
+            return;
+        }
+        try {
+            orderStore.close();
+        } catch (IOException e) {
+            log.warn("Closing the order store failed", e);
+        }
+        orderStore = null;
+    }
+}
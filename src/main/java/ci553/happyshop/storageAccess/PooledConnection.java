@@ -0,0 +1,145 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A PooledConnection is the handle returned by ConnectionPool.borrow().
+ *
+ * It wraps a real JDBC connection. Closing the handle does not close the connection,
+ * it gives it back to the pool so the next caller can reuse it:
+ *
+ *     try (PooledConnection pooled = pool.borrow()) {
+ *         Connection conn = pooled.getConnection();
+ *         ...
+ *     } // connection returned to the pool here
+ *
+ * Each pooled connection also owns a statement cache keyed by SQL text. prepareStatement(sql) returns the
+ * PreparedStatement compiled the last time this connection saw the same SQL, so Derby does not parse and
+ * compile the statement again. The cache is bounded and evicts the least recently used statement when full.
+ * Cached statements belong to the connection: callers must not close them, only their ResultSets.
+ *
+ * A handle must only be used by the thread that borrowed it, and must not be used after it is closed.
+ */
+
+public class PooledConnection implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(PooledConnection.class);
+    private final Connection connection;
+    private final ConnectionPool pool;
+    private long lastUsedNanos = System.nanoTime(); // when the connection was last given back to the pool
+
+    // SQL text -> compiled statement, in access order so the eldest entry is the least recently used one.
+    // Only the borrowing thread touches it, so a plain LinkedHashMap is enough.
+    private final LinkedHashMap<String, PreparedStatement> statementCache;
+    private long statementCacheHits = 0;
+    private long statementCacheMisses = 0;
+
+    PooledConnection(Connection connection, ConnectionPool pool, int statementCacheSize) {
+        this.connection = connection;
+        this.pool = pool;
+        this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns a PreparedStatement for the given SQL, reusing the one cached on this connection if there is one.
+     * The returned statement must not be closed by the caller; it stays open for the next borrower.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement statement = statementCache.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            statementCacheHits++;
+            pool.recordStatementCacheHit();
+            return statement;
+        }
+        statementCacheMisses++;
+        pool.recordStatementCacheMiss();
+        statement = connection.prepareStatement(sql);
+        statementCache.put(sql, statement);
+        return statement;
+    }
+
+    // a set of getter methods for the statement cache metrics of this connection
+    public int getCachedStatementCount() { return statementCache.size(); }
+    public long getStatementCacheHits() { return statementCacheHits; }
+    public long getStatementCacheMisses() { return statementCacheMisses; }
+
+    // Returns the connection to the pool.
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+
+    long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    void markIdle() {
+        lastUsedNanos = System.nanoTime();
+    }
+
+    boolean isUsable() {
+        try {
+            return !connection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Puts the connection back into a clean state before the next borrower gets it:
+     * any unfinished transaction is rolled back and auto-commit is switched back on.
+     * @return false if the connection is broken and should be discarded instead of reused
+     */
+    boolean resetForReuse() {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void closePhysically() {
+        for (PreparedStatement statement : statementCache.values()) {
+            closeQuietly(statement);
+        }
+        statementCache.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close pooled connection", e);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close cached statement", e);
+        }
+    }
+}
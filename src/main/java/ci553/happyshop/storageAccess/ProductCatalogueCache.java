@@ -0,0 +1,323 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ProductCatalogueCache holds an in-memory snapshot of ProductTable that is shared by all CachingDatabaseRW instances.
+ *
+ * Responsibilities:
+ * - Loads the whole ProductTable on first use, and again once the snapshot is older than maxSnapshotAgeMillis,
+ *   so changes made outside this JVM are picked up eventually.
+ * - Serves product ID lookups from memory, and description searches from a ProductSearchIndex kept in step
+ *   with the snapshot (multi-term, prefix matching, ranked by relevance).
+ * - Serves '*' prefix searches (eg "usb*") from an index of the lowercase descriptions sorted by description,
+ *   so the descriptions starting with the prefix are one range of it, found without reading the others.
+ * - Serves type-ahead suggestions from a ProductSuggester term index, also kept in step with the snapshot.
+ * - Refreshes or removes single entries after a write was committed through a CachingDatabaseRW.
+ * - Records hit/miss counts and how stale the snapshot is.
+ *
+ * Readers never block: entries live in a ConcurrentSkipListMap sorted by product ID (so "*" searches come back
+ * in ID order, like the database does). Writers (loads, refreshes, puts and removes) are serialised by synchronizing
+ * on the cache, so a full reload cannot overwrite a single-entry refresh that happened while it was reading the table,
+ * and the entries, search index and suggester always change together. A product read through from the database is
+ * only stored if nothing was written since the read started (putIfNoWriteSince), so an old read cannot overwrite
+ * the figures a later refresh stored.
+ *
+ * Product objects are mutable (the customer client sets the ordered quantity on them), so the cache only ever
+ * hands out copies and never the objects it stores.
+ */
+
+public class ProductCatalogueCache {
+    private final long maxSnapshotAgeMillis;
+
+    private final ConcurrentSkipListMap<String, CacheEntry> entries = new ConcurrentSkipListMap<>();
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex(); // over the descriptions in entries
+    private final ProductSuggester suggester = new ProductSuggester();       // over the IDs and descriptions in entries
+    // lowercase description + '\0' + product ID -> product ID, for every entry; see descriptionKey()
+    private final ConcurrentSkipListMap<String, String> byDescription = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded = false;
+    private volatile long lastFullLoadNanos = 0;
+    private long writeCount = 0; // guarded by this; counts every change of the entries, see putIfNoWriteSince()
+
+    // metrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder fullLoads = new LongAdder();
+    private final LongAdder entryRefreshes = new LongAdder();
+
+    // A cached product together with the time it was read from the database
+    private static final class CacheEntry {
+        private final Product product;
+        private final long loadedAtNanos;
+
+        private CacheEntry(Product product, long loadedAtNanos) {
+            this.product = product;
+            this.loadedAtNanos = loadedAtNanos;
+        }
+    }
+
+    /**
+     * @param maxSnapshotAgeMillis how old the snapshot may get before the whole table is read again
+     */
+    public ProductCatalogueCache(long maxSnapshotAgeMillis) {
+        this.maxSnapshotAgeMillis = maxSnapshotAgeMillis;
+    }
+
+    // Loads the snapshot from the source if it was never loaded or has become too old.
+    void ensureFresh(DatabaseRW source) throws SQLException {
+        if (!loaded || System.nanoTime() - lastFullLoadNanos > TimeUnit.MILLISECONDS.toNanos(maxSnapshotAgeMillis)) {
+            reload(source);
+        }
+    }
+
+    // Reads the whole ProductTable from the source and replaces the snapshot.
+    synchronized void reload(DatabaseRW source) throws SQLException {
+        long now = System.nanoTime();
+        if (loaded && now - lastFullLoadNanos <= TimeUnit.MILLISECONDS.toNanos(maxSnapshotAgeMillis)) {
+            return; // another thread reloaded it while we were waiting for the lock
+        }
+        ArrayList<Product> allProducts = source.searchProduct("*");
+        // Replace entries in place rather than clearing first, so concurrent readers never see an empty catalogue
+        HashSet<String> loadedIds = new HashSet<>();
+        HashSet<String> loadedDescriptionKeys = new HashSet<>();
+        for (Product product : allProducts) {
+            entries.put(product.getProductId(), new CacheEntry(copyOf(product), now));
+            loadedIds.add(product.getProductId());
+            byDescription.put(descriptionKey(product), product.getProductId());
+            loadedDescriptionKeys.add(descriptionKey(product));
+        }
+        entries.keySet().retainAll(loadedIds);
+        byDescription.keySet().retainAll(loadedDescriptionKeys);
+        searchIndex.rebuild(allProducts);
+        suggester.rebuild(allProducts);
+        lastFullLoadNanos = now;
+        loaded = true;
+        writeCount++;
+        fullLoads.increment();
+    }
+
+    // Forces the next ensureFresh() to read the whole table again.
+    public void invalidateAll() {
+        loaded = false;
+    }
+
+    /**
+     * Re-reads a single product from the source after it was changed, or removes it if it no longer exists.
+     */
+    synchronized void refresh(String productId, DatabaseRW source) throws SQLException {
+        Product product = source.searchByProductId(productId);
+        if (product == null) {
+            remove(productId);
+        } else {
+            put(product);
+        }
+        entryRefreshes.increment();
+    }
+
+    /**
+     * Re-reads several products from the source with one multi-get, removing those that no longer exist.
+     */
+    synchronized void refreshAll(Collection<String> productIds, DatabaseRW source) throws SQLException {
+        HashSet<String> missingIds = new HashSet<>(productIds);
+        for (Product product : source.searchByProductIds(productIds)) {
+            put(product);
+            missingIds.remove(product.getProductId());
+        }
+        for (String productId : missingIds) {
+            remove(productId);
+        }
+        entryRefreshes.add(productIds.size());
+    }
+
+    // Stores a product that was just read from the database, after a write committed through a CachingDatabaseRW.
+    synchronized void put(Product product) {
+        CacheEntry previous = entries.put(product.getProductId(), new CacheEntry(copyOf(product), System.nanoTime()));
+        if (previous != null) {
+            byDescription.remove(descriptionKey(previous.product));
+        }
+        byDescription.put(descriptionKey(product), product.getProductId());
+        searchIndex.add(product);
+        suggester.add(copyOf(product));
+        writeCount++;
+    }
+
+    synchronized void remove(String productId) {
+        CacheEntry previous = entries.remove(productId);
+        if (previous != null) {
+            byDescription.remove(descriptionKey(previous.product));
+        }
+        searchIndex.remove(productId);
+        suggester.remove(productId);
+        writeCount++;
+    }
+
+    // A mark to take before reading products through from the database, for putIfNoWriteSince().
+    synchronized long writeMark() {
+        return writeCount;
+    }
+
+    /**
+     * Stores products read through from the database, unless the cache was written to since the mark was taken.
+     * A write since then (eg refreshAll() after a purchase) may have stored newer figures than the ones read,
+     * which must not be overwritten; the products are then simply read through again next time.
+     */
+    synchronized void putIfNoWriteSince(Collection<Product> products, long mark) {
+        if (writeCount != mark) {
+            return;
+        }
+        for (Product product : products) {
+            put(product);
+        }
+    }
+
+    // Returns a copy of the cached product, or null if it is not in the snapshot.
+    Product get(String productId) {
+        CacheEntry entry = entries.get(productId);
+        return entry == null ? null : copyOf(entry.product);
+    }
+
+    boolean contains(String productId) {
+        return entries.containsKey(productId);
+    }
+
+    // Returns copies of all products whose description matches every term of the keyword, best match first.
+    // A keyword ending in '*' only matches descriptions starting with it, in product ID order (see descriptionPrefix).
+    ArrayList<Product> searchByDescription(String keyword) {
+        ArrayList<Product> productList = new ArrayList<>();
+        String prefix = descriptionPrefix(keyword);
+        if (prefix != null) {
+            for (String productId : idsStartingWith(prefix)) {
+                CacheEntry entry = entries.get(productId);
+                if (entry != null) {
+                    productList.add(copyOf(entry.product));
+                }
+            }
+            return productList;
+        }
+        for (String productId : searchIndex.search(keyword)) {
+            CacheEntry entry = entries.get(productId);
+            if (entry != null) { // may have been removed between the index lookup and now
+                productList.add(copyOf(entry.product));
+            }
+        }
+        return productList;
+    }
+
+    // Returns up to limit products after the given product ID in ID order, all products if keyword is "*",
+    // otherwise only those whose description matches the keyword.
+    ArrayList<Product> pageAfter(String keyword, String afterProductId, int limit) {
+        ArrayList<Product> productList = new ArrayList<>();
+        if (keyword.equals("*")) {
+            Iterable<CacheEntry> after = afterProductId == null ? entries.values()
+                    : entries.tailMap(afterProductId, false).values();
+            for (CacheEntry entry : after) {
+                if (productList.size() == limit) {
+                    break;
+                }
+                productList.add(copyOf(entry.product));
+            }
+            return productList;
+        }
+        String prefix = descriptionPrefix(keyword);
+        TreeSet<String> matchingIds = prefix != null ? idsStartingWith(prefix) : new TreeSet<>(searchIndex.search(keyword));
+        Iterable<String> after = afterProductId == null ? matchingIds : matchingIds.tailSet(afterProductId, false);
+        for (String productId : after) {
+            if (productList.size() == limit) {
+                break;
+            }
+            CacheEntry entry = entries.get(productId);
+            if (entry != null) {
+                productList.add(copyOf(entry.product));
+            }
+        }
+        return productList;
+    }
+
+    // The lowercase prefix of a keyword ending in '*' (eg "usb*" -> "usb"), or null for any other keyword.
+    // The search index matches words anywhere in a description, so these are looked up in byDescription
+    // instead, like DerbyRW's LIKE 'usb%' and MemoryRW's startsWith.
+    private static String descriptionPrefix(String keyword) {
+        if (keyword.length() > 1 && keyword.endsWith("*")) {
+            return keyword.substring(0, keyword.length() - 1).toLowerCase();
+        }
+        return null;
+    }
+
+    // The IDs of the products whose description starts with the lowercase prefix, in product ID order.
+    // Their keys are the range from the prefix up to the prefix followed by the highest character.
+    private TreeSet<String> idsStartingWith(String lowerPrefix) {
+        return new TreeSet<>(byDescription.subMap(lowerPrefix, true, lowerPrefix + Character.MAX_VALUE, false).values());
+    }
+
+    // The product's key in byDescription: the ID keeps products with the same description apart
+    private static String descriptionKey(Product product) {
+        String description = product.getProductDescription();
+        return (description == null ? "" : description.toLowerCase()) + '\0' + product.getProductId();
+    }
+
+    // Returns up to limit products whose ID, description or a word of the description starts with prefix.
+    ArrayList<Product> suggest(String prefix, int limit) {
+        return suggester.suggest(prefix, limit);
+    }
+
+    // Returns copies of all cached products, ordered by product ID.
+    ArrayList<Product> getAll() {
+        ArrayList<Product> productList = new ArrayList<>(entries.size());
+        for (CacheEntry entry : entries.values()) {
+            productList.add(copyOf(entry.product));
+        }
+        return productList;
+    }
+
+    void recordHit() { hits.increment(); }
+    void recordMiss() { misses.increment(); }
+
+    // a set of getter methods for cache metrics
+    public int getSize() { return entries.size(); }
+    public int getIndexedTermCount() { return searchIndex.getTermCount(); }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getFullLoads() { return fullLoads.sum(); }
+    public long getEntryRefreshes() { return entryRefreshes.sum(); }
+    public double getHitRate() {
+        long lookups = hits.sum() + misses.sum();
+        return lookups == 0 ? 0 : (double) hits.sum() / lookups;
+    }
+
+    // How long ago the whole table was last read, in milliseconds (0 if never loaded).
+    public long getSnapshotAgeMillis() {
+        return loaded ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastFullLoadNanos) : 0;
+    }
+
+    // The age of the stalest entry, ie. the longest time any cached product has gone without being re-read.
+    public long getMaxEntryAgeMillis() {
+        long now = System.nanoTime();
+        long oldest = now;
+        for (CacheEntry entry : entries.values()) {
+            oldest = Math.min(oldest, entry.loadedAtNanos);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(now - oldest);
+    }
+
+    // A one-line summary of the cache metrics, handy for printing or logging.
+    public String metricsSummary() {
+        return String.format("ProductCatalogueCache[size=%d, terms=%d, hits=%d, misses=%d, hitRate=%.1f%%, fullLoads=%d, " +
+                        "entryRefreshes=%d, snapshotAge=%dms, maxEntryAge=%dms]",
+                getSize(), getIndexedTermCount(), getHits(), getMisses(), getHitRate() * 100, getFullLoads(), getEntryRefreshes(),
+                getSnapshotAgeMillis(), getMaxEntryAgeMillis());
+    }
+
+    private static Product copyOf(Product product) {
+        return new Product(product.getProductId(), product.getProductDescription(), product.getProductImageName(),
+                product.getUnitPrice(), product.getStockQuantity());
+    }
+}
@@ -0,0 +1,39 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+
+/**
+ * A ProductPage is one page of search results returned by DatabaseRW.searchProductPage().
+ *
+ * Pages use keyset pagination on productID: results are ordered by product ID, and the next page starts
+ * after the last product ID of this page (the "cursor"). Unlike OFFSET paging, fetching page 100 costs
+ * the same as fetching page 1, and products inserted or deleted meanwhile never make a page skip or repeat rows.
+ */
+
+public class ProductPage {
+    private final ArrayList<Product> products;
+    private final String nextCursor; // the product ID to continue after, or null if this is the last page
+
+    public ProductPage(ArrayList<Product> products, String nextCursor) {
+        this.products = products;
+        this.nextCursor = nextCursor;
+    }
+
+    // a set of getter methods
+    public ArrayList<Product> getProducts() { return products; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor != null; }
+
+    /**
+     * Builds a page from up to pageSize + 1 rows: the extra row only tells us whether there is another page.
+     */
+    static ProductPage fromRows(ArrayList<Product> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new ProductPage(rows, null);
+        }
+        ArrayList<Product> pageProducts = new ArrayList<>(rows.subList(0, pageSize));
+        return new ProductPage(pageProducts, pageProducts.get(pageSize - 1).getProductId());
+    }
+}
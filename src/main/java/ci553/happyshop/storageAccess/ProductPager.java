@@ -0,0 +1,56 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * A ProductPager streams the results of one search page by page.
+ *
+ * Nothing is read when the pager is created; each call to nextPage() fetches the next page from the DatabaseRW
+ * using the cursor of the previous one. The client views create a pager per search and ask for the next page
+ * only when the user scrolls to the bottom of the list, so a "*" search over a large catalogue never loads
+ * every product at once.
+ *
+ * Example Usage:
+ *     ProductPager pager = new ProductPager(databaseRW, "usb", 50);
+ *     ArrayList<Product> firstPage = pager.nextPage();
+ *     if (pager.hasNextPage()) { ArrayList<Product> secondPage = pager.nextPage(); }
+ */
+
+public class ProductPager {
+    private final DatabaseRW databaseRW;
+    private final String keyword;
+    private final int pageSize;
+
+    private String cursor = null;        // product ID the next page starts after, null before the first page
+    private boolean hasNextPage = true;  // unknown until the first page is fetched, so assume there is one
+    private int fetchedCount = 0;        // how many products have been returned so far
+
+    public ProductPager(DatabaseRW databaseRW, String keyword, int pageSize) {
+        this.databaseRW = databaseRW;
+        this.keyword = keyword;
+        this.pageSize = pageSize;
+    }
+
+    public boolean hasNextPage() {
+        return hasNextPage;
+    }
+
+    // Fetches the next page, or returns an empty list if all results were already returned.
+    public ArrayList<Product> nextPage() throws SQLException {
+        if (!hasNextPage) {
+            return new ArrayList<>();
+        }
+        ProductPage page = databaseRW.searchProductPage(keyword, cursor, pageSize);
+        cursor = page.getNextCursor();
+        hasNextPage = page.hasMore();
+        fetchedCount += page.getProducts().size();
+        return page.getProducts();
+    }
+
+    public int getFetchedCount() {
+        return fetchedCount;
+    }
+}
@@ -0,0 +1,230 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The ProductSearchIndex is an in-memory inverted index over product descriptions.
+ *
+ * A LIKE '%keyword%' query cannot use a database index, so every name search used to scan the whole ProductTable.
+ * Instead, each description is split into lowercase terms (eg "40 inch TV" -> "40", "inch", "tv"),
+ * and the index maps each term to the products that contain it (its "postings").
+ *
+ * Searching:
+ * - The query is split into terms the same way. Every query term must match (AND).
+ * - A query term matches any indexed term that starts with it (prefix matching), so "usb" finds "USB2 drive".
+ *   The terms are kept in a sorted TreeMap, so all terms with a prefix are one subMap() range.
+ * - Matches are ranked with BM25: rare terms count more than common ones, repeated terms count more
+ *   (with diminishing returns), and matches in short descriptions count more than in long ones.
+ *   An exact term match scores higher than a prefix match. Ties are broken by product ID.
+ *
+ * The index is updated incrementally with add/remove as products are inserted, edited or deleted.
+ * Reads and writes are guarded by a read-write lock, so many searches can run at the same time.
+ */
+
+public class ProductSearchIndex {
+    // BM25 tuning constants, the usual defaults
+    private static final double K1 = 1.2;  // how quickly repeated occurrences of a term stop adding to the score
+    private static final double B = 0.75;  // how strongly description length normalises the score
+    private static final double PREFIX_MATCH_WEIGHT = 0.8; // a prefix match counts a little less than an exact match
+
+    private final TreeMap<String, HashMap<String, Integer>> postings = new TreeMap<>(); // term -> (productId -> term frequency)
+    private final HashMap<String, List<String>> documentTerms = new HashMap<>();   // productId -> its terms, for removal
+    private long totalTermCount = 0; // sum of all description lengths, for the average length
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Splits text into lowercase terms on anything that is not a letter or digit.
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String term : text.toLowerCase().split("[^\\p{L}\\p{Nd}]+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * True if every query term starts one of the terms of text, ie. whether search() would find a product with
+     * this description. DerbyRW and MemoryRW use it so a keyword matches the same products with or without the cache.
+     */
+    public static boolean matchesAll(String text, List<String> queryTerms) {
+        if (queryTerms.isEmpty()) {
+            return false;
+        }
+        List<String> terms = tokenize(text);
+        for (String queryTerm : queryTerms) {
+            boolean found = false;
+            for (String term : terms) {
+                if (term.startsWith(queryTerm)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Adds a product to the index, replacing any previous version of it.
+    public void add(Product product) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(product.getProductId());
+            addInternal(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Rebuilds the whole index from the given products.
+    public void rebuild(Collection<Product> products) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentTerms.clear();
+            totalTermCount = 0;
+            for (Product product : products) {
+                addInternal(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the products whose descriptions match every term of the query.
+     *
+     * @param query the search text typed by the user, eg "usb dr"
+     * @return matching product IDs, best match first; empty if the query contains no terms
+     */
+    public List<String> search(String query) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            int documentCount = documentTerms.size();
+            double averageLength = documentCount == 0 ? 0 : (double) totalTermCount / documentCount;
+
+            HashMap<String, Double> scores = null; // productId -> score, only products matching all terms so far
+            for (String queryTerm : queryTerms) {
+                HashMap<String, Double> termScores = scoreQueryTerm(queryTerm, documentCount, averageLength);
+                if (scores == null) {
+                    scores = termScores;
+                } else { // AND: keep only products that also match this term
+                    HashMap<String, Double> combined = new HashMap<>();
+                    for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                        Double termScore = termScores.get(entry.getKey());
+                        if (termScore != null) {
+                            combined.put(entry.getKey(), entry.getValue() + termScore);
+                        }
+                    }
+                    scores = combined;
+                }
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+
+            List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+            ranked.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder())
+                    .thenComparing(Map.Entry.comparingByKey()));
+            List<String> productIds = new ArrayList<>(ranked.size());
+            for (Map.Entry<String, Double> entry : ranked) {
+                productIds.add(entry.getKey());
+            }
+            return productIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return documentTerms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Scores every product containing a term that starts with queryTerm. Keeps the best expansion per product.
+    private HashMap<String, Double> scoreQueryTerm(String queryTerm, int documentCount, double averageLength) {
+        HashMap<String, Double> termScores = new HashMap<>();
+        NavigableMap<String, HashMap<String, Integer>> expansions =
+                postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false);
+        for (Map.Entry<String, HashMap<String, Integer>> expansion : expansions.entrySet()) {
+            HashMap<String, Integer> termPostings = expansion.getValue();
+            double weight = expansion.getKey().equals(queryTerm) ? 1.0 : PREFIX_MATCH_WEIGHT;
+            double idf = Math.log(1 + (documentCount - termPostings.size() + 0.5) / (termPostings.size() + 0.5));
+            for (Map.Entry<String, Integer> posting : termPostings.entrySet()) {
+                int termFrequency = posting.getValue();
+                int documentLength = documentTerms.get(posting.getKey()).size();
+                double score = weight * idf * termFrequency * (K1 + 1)
+                        / (termFrequency + K1 * (1 - B + B * documentLength / averageLength));
+                termScores.merge(posting.getKey(), score, Math::max);
+            }
+        }
+        return termScores;
+    }
+
+    private void addInternal(Product product) {
+        String productId = product.getProductId();
+        List<String> terms = tokenize(product.getProductDescription());
+        documentTerms.put(productId, terms);
+        totalTermCount += terms.size();
+        for (String term : terms) {
+            postings.computeIfAbsent(term, t -> new HashMap<>()).merge(productId, 1, Integer::sum);
+        }
+    }
+
+    private void removeInternal(String productId) {
+        List<String> terms = documentTerms.remove(productId);
+        if (terms == null) {
+            return;
+        }
+        totalTermCount -= terms.size();
+        for (String term : terms) {
+            HashMap<String, Integer> termPostings = postings.get(term);
+            if (termPostings != null && termPostings.remove(productId) != null && termPostings.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The ProductSuggester is a sorted term index that powers the type-ahead suggestions of the customer search box.
+ *
+ * Every product is indexed under a few lowercase terms:
+ * - its product ID, eg "0007"
+ * - its whole description, eg "usb drive", so typing the start of the name finds it
+ * - each word of the description, eg "drive", so typing the start of any word finds it.
+ *
+ * The terms are kept in a TreeMap, so all the terms starting with a prefix are next to each other:
+ * suggest(prefix, limit) takes the subMap from the prefix up to the prefix followed by the highest character
+ * and reads it in order, stopping as soon as limit products have been found. The cost therefore depends on
+ * the limit, not on the size of the catalogue or how many products share the prefix.
+ * Only whole words are indexed (not every suffix of them), so the index stays a few entries per product.
+ *
+ * The index is updated incrementally with add/remove as products are inserted, edited or deleted.
+ * A read-write lock lets many lookups run at the same time.
+ */
+
+public class ProductSuggester {
+    private final TreeMap<String, TreeSet<String>> terms = new TreeMap<>(); // term -> IDs of products indexed under it
+    private final HashMap<String, Product> products = new HashMap<>(); // productId -> product, for terms and results
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Adds a product, replacing any previous version of it.
+    public void add(Product product) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(product.getProductId());
+            addInternal(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Rebuilds the whole index from the given products.
+    public void rebuild(Collection<Product> allProducts) {
+        lock.writeLock().lock();
+        try {
+            terms.clear();
+            products.clear();
+            for (Product product : allProducts) {
+                addInternal(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to limit products with a product ID, description, or word of the description starting with prefix.
+     *
+     * @param prefix what the user has typed so far (case is ignored)
+     * @param limit  the maximum number of suggestions
+     * @return the suggested products, in the alphabetical order of the term they matched on
+     */
+    public ArrayList<Product> suggest(String prefix, int limit) {
+        ArrayList<Product> suggestions = new ArrayList<>();
+        String key = prefix.trim().toLowerCase();
+        if (key.isEmpty() || limit <= 0) {
+            return suggestions;
+        }
+        lock.readLock().lock();
+        try {
+            LinkedHashSet<String> foundIds = new LinkedHashSet<>(); // a product can match through several terms
+            search:
+            for (TreeSet<String> productIds : terms.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+                for (String productId : productIds) {
+                    foundIds.add(productId);
+                    if (foundIds.size() == limit) {
+                        break search;
+                    }
+                }
+            }
+            for (String productId : foundIds) {
+                Product product = products.get(productId);
+                suggestions.add(new Product(product.getProductId(), product.getProductDescription(),
+                        product.getProductImageName(), product.getUnitPrice(), product.getStockQuantity()));
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The terms a product is indexed under: its ID, its whole description, and each word of the description.
+    private static List<String> termsOf(Product product) {
+        List<String> keys = new ArrayList<>();
+        keys.add(product.getProductId().trim().toLowerCase());
+        String description = product.getProductDescription() == null ? "" : product.getProductDescription().trim().toLowerCase();
+        if (!description.isEmpty()) {
+            keys.add(description);
+            for (String word : description.split("\\s+")) {
+                keys.add(word);
+            }
+        }
+        return keys;
+    }
+
+    private void addInternal(Product product) {
+        products.put(product.getProductId(), product);
+        for (String term : termsOf(product)) {
+            terms.computeIfAbsent(term, t -> new TreeSet<>()).add(product.getProductId());
+        }
+    }
+
+    private void removeInternal(String productId) {
+        Product product = products.remove(productId);
+        if (product == null) {
+            return;
+        }
+        for (String term : termsOf(product)) {
+            TreeSet<String> productIds = terms.get(term);
+            if (productIds != null && productIds.remove(productId) && productIds.isEmpty()) {
+                terms.remove(term);
+            }
+        }
+    }
+
+    public int getProductCount() {
+        lock.readLock().lock();
+        try {
+            return products.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.utility.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * PublishingDatabaseRW is a decorator that publishes a StockChange to the StockChangePublisher
+ * after every write that has committed:
+ * - purchaseStocks: each product bought, with the quantity taken off its stock. If the purchase was refused,
+ *   the products short of stock are published with no delta, as the stock the customer saw was too high.
+ * - updateProduct: the new stock minus the old one.
+ * - insertNewProduct: the whole new stock.
+ * - deleteProduct: the whole old stock, and no product.
+ *
+ * The latest products are read back through the wrapped DatabaseRW. DatabaseRWFactory puts this decorator
+ * above the CachingDatabaseRW (or MemoryRW), which has already refreshed them, so those reads come from memory.
+ * Reading back and publishing happen together under the publisher's readBackLock (shared by every
+ * PublishingDatabaseRW of the publisher), so the changes reach the publisher in the order their products
+ * were read, and the later one, which StockChange.followedBy() keeps, is never the older read.
+ * (Otherwise two checkouts of the same product could read 7 and then 4, but publish 4 and then 7.)
+ * Reads, writes and exceptions are otherwise passed through untouched, and when nobody has subscribed
+ * nothing extra is read at all.
+ */
+
+public class PublishingDatabaseRW implements DatabaseRW {
+    private static final Logger log = Logger.getLogger(PublishingDatabaseRW.class);
+
+    private final DatabaseRW delegate;
+    private final StockChangePublisher publisher;
+
+    public PublishingDatabaseRW(DatabaseRW delegate, StockChangePublisher publisher) {
+        this.delegate = delegate;
+        this.publisher = publisher;
+    }
+
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        return delegate.searchProduct(keyword);
+    }
+
+    public ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        return delegate.searchProductPage(keyword, afterProductId, pageSize);
+    }
+
+    public Product searchByProductId(String productId) throws SQLException {
+        return delegate.searchByProductId(productId);
+    }
+
+    public ArrayList<Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        return delegate.searchByProductIds(productIds);
+    }
+
+    public ArrayList<Product> suggestProducts(String prefix, int limit) throws SQLException {
+        return delegate.suggestProducts(prefix, limit);
+    }
+
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> insufficientProducts = delegate.purchaseStocks(proList);
+        if (!publisher.hasSubscribers()) {
+            return insufficientProducts;
+        }
+        HashMap<String, Integer> deltas = new HashMap<>();
+        if (insufficientProducts.isEmpty()) {
+            for (Product product : proList) { // committed: every line took its quantity off the stock
+                deltas.merge(product.getProductId(), -product.getOrderedQuantity(), Integer::sum);
+            }
+        } else {
+            for (Product product : insufficientProducts) { // rolled back: nothing changed but what was shown
+                deltas.put(product.getProductId(), 0);
+            }
+        }
+        try {
+            synchronized (publisher.readBackLock) {
+                for (Product latest : delegate.searchByProductIds(deltas.keySet())) {
+                    publisher.publish(new StockChange(latest.getProductId(), deltas.get(latest.getProductId()), latest));
+                }
+            }
+        } catch (SQLException e) { // the purchase itself has succeeded, the screens just refresh later
+            log.warn("Could not read the purchased products back for the stock change", e);
+        }
+        return insufficientProducts;
+    }
+
+    public void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException {
+        if (!publisher.hasSubscribers()) {
+            delegate.updateProduct(id, des, price, imageName, stock);
+            return;
+        }
+        Product before = delegate.searchByProductId(id);
+        delegate.updateProduct(id, des, price, imageName, stock);
+        int oldStock = before == null ? 0 : before.getStockQuantity();
+        publishLatest(id, stock - oldStock);
+    }
+
+    public void deleteProduct(String id) throws SQLException {
+        if (!publisher.hasSubscribers()) {
+            delegate.deleteProduct(id);
+            return;
+        }
+        Product before = delegate.searchByProductId(id);
+        delegate.deleteProduct(id);
+        synchronized (publisher.readBackLock) {
+            publisher.publish(new StockChange(id, before == null ? 0 : -before.getStockQuantity(), null));
+        }
+    }
+
+    public void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException {
+        delegate.insertNewProduct(id, des, price, image, stock);
+        if (publisher.hasSubscribers()) {
+            publishLatest(id, stock);
+        }
+    }
+
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return delegate.isProIdAvailable(productId);
+    }
+
+    // Reads the product as the write left it (or as a later write did) and publishes it with the delta
+    private void publishLatest(String productId, int stockDelta) {
+        try {
+            synchronized (publisher.readBackLock) {
+                publisher.publish(new StockChange(productId, stockDelta, delegate.searchByProductId(productId)));
+            }
+        } catch (SQLException e) { // the write itself has succeeded, the screens just refresh later
+            log.warn("Could not read product " + productId + " back for the stock change", e);
+        }
+    }
+}
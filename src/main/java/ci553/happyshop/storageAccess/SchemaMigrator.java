@@ -0,0 +1,92 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Logger;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SchemaMigrator brings an existing happyShopDB up to the schema DerbyRW expects, without touching its data.
+ * DatabaseRWFactory runs it when the connection pool is created, and SetDatabase after creating a fresh table,
+ * so databases made before a schema change keep working.
+ *
+ * Every step first checks whether it is already done (by looking at the database metadata), so running
+ * the migrator again, or on a database created with the new schema, changes nothing.
+ * The steps run in one transaction (Derby's DDL is transactional): if one fails, none is kept.
+ *
+ * Steps:
+ * 1. descriptionLower: a generated column holding LOWER(description). Derby keeps it up to date on every
+ *    insert and update, so name searches compare against it instead of lower-casing every row on every query.
+ * 2. ProductDescLowerIdx: an index on descriptionLower. A prefix search (descriptionLower LIKE 'usb%')
+ *    becomes an index range scan instead of a full table scan.
+ */
+
+public class SchemaMigrator {
+    private static final Logger log = Logger.getLogger(SchemaMigrator.class);
+
+    private static final String TABLE = "PRODUCTTABLE";              // Derby stores unquoted names in upper case
+    private static final String LOWER_COLUMN = "DESCRIPTIONLOWER";
+    private static final String LOWER_INDEX = "PRODUCTDESCLOWERIDX";
+
+    /**
+     * Applies the steps that are missing. Does nothing if ProductTable does not exist yet (run SetDatabase first).
+     */
+    public static void migrate(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        if (!tableExists(metaData)) {
+            log.warn("ProductTable not found, schema migration skipped (run SetDatabase first)");
+            return;
+        }
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            int steps = 0;
+            if (!columnExists(metaData)) {
+                statement.executeUpdate("ALTER TABLE ProductTable ADD COLUMN descriptionLower VARCHAR(100) "
+                        + "GENERATED ALWAYS AS (LOWER(description))");
+                log.info("Schema migrated: added column", "column", "descriptionLower");
+                steps++;
+            }
+            if (!indexExists(metaData)) {
+                statement.executeUpdate("CREATE INDEX ProductDescLowerIdx ON ProductTable(descriptionLower)");
+                log.info("Schema migrated: added index", "index", "ProductDescLowerIdx");
+                steps++;
+            }
+            connection.commit();
+            if (steps == 0) {
+                log.debug("Schema up to date");
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean tableExists(DatabaseMetaData metaData) throws SQLException {
+        try (ResultSet rs = metaData.getTables(null, null, TABLE, null)) {
+            return rs.next();
+        }
+    }
+
+    private static boolean columnExists(DatabaseMetaData metaData) throws SQLException {
+        try (ResultSet rs = metaData.getColumns(null, null, TABLE, LOWER_COLUMN)) {
+            return rs.next();
+        }
+    }
+
+    private static boolean indexExists(DatabaseMetaData metaData) throws SQLException {
+        try (ResultSet rs = metaData.getIndexInfo(null, null, TABLE, false, true)) {
+            while (rs.next()) {
+                if (LOWER_INDEX.equals(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+/**
+ * A StockChange tells subscribers of the StockChangePublisher that a product has changed.
+ *
+ * - stockDelta: how much inStock went up or down (negative for a purchase), summed over every change
+ *   coalesced into this one.
+ * - product: the product as it was after the latest of those changes, or null if it has been deleted.
+ *   It is shared by all subscribers, so a subscriber that wants to change it (eg set an ordered quantity)
+ *   must make its own copy first.
+ */
+
+public class StockChange {
+    private final String productId;
+    private final int stockDelta;
+    private final Product product; // the latest state, or null if the product was deleted
+
+    public StockChange(String productId, int stockDelta, Product product) {
+        this.productId = productId;
+        this.stockDelta = stockDelta;
+        this.product = product;
+    }
+
+    // a set of getter methods
+    public String getProductId() { return productId; }
+    public int getStockDelta() { return stockDelta; }
+    public Product getProduct() { return product; }
+    public boolean isDeleted() { return product == null; }
+
+    // This change followed by a later one: the deltas add up, and the later product wins
+    // (PublishingDatabaseRW publishes the changes of a product in the order it read them)
+    StockChange followedBy(StockChange later) {
+        return new StockChange(productId, stockDelta + later.stockDelta, later.product);
+    }
+}
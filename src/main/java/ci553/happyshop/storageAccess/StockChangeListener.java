@@ -0,0 +1,16 @@
+package ci553.happyshop.storageAccess;
+
+import java.util.List;
+
+/**
+ * Implemented by anything that wants to hear about product changes from the StockChangePublisher,
+ * eg the customer and warehouse models, which refresh the affected rows of their product lists.
+ */
+
+public interface StockChangeListener {
+    /**
+     * Called on the publisher's thread with one change per product (changes made close together are coalesced).
+     * Must not block: anything slow, or anything touching JavaFX, should be handed to another thread.
+     */
+    void stockChanged(List<StockChange> changes);
+}
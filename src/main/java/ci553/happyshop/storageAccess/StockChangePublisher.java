@@ -0,0 +1,117 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The StockChangePublisher tells open screens which products have changed, so they can refresh those rows
+ * in place instead of running their search again.
+ *
+ * - PublishingDatabaseRW publishes a StockChange after each committed purchaseStocks, updateProduct,
+ *   insertNewProduct and deleteProduct.
+ * - Subscribers (StockChangeListener) receive the changes in batches, on the publisher's own thread,
+ *   at most coalesceMillis after the first change of the batch.
+ * - Changes to the same product within a batch are coalesced into one: the stock deltas are summed and the
+ *   latest product is kept. So a busy checkout sends each subscriber one update per product per batch,
+ *   however many customers bought it.
+ *
+ * Publishing only takes a short lock to add the change to the pending batch; a slow subscriber delays the next
+ * batch, never the writer. With no subscribers (eg the load generator), publish() does nothing.
+ *
+ * DatabaseRWFactory owns the one publisher shared by every DatabaseRW of the JVM.
+ */
+
+public class StockChangePublisher {
+    private static final Logger log = Logger.getLogger(StockChangePublisher.class);
+
+    private final long coalesceMillis;
+    private final CopyOnWriteArrayList<StockChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private LinkedHashMap<String, StockChange> pending = new LinkedHashMap<>(); // guarded by this
+    private boolean flushScheduled = false;                                      // guarded by this
+    // Held by PublishingDatabaseRW while it reads products back and publishes them, so they are published in the
+    // order they were read; apart from this, so a slow read never holds up a batch being delivered
+    final Object readBackLock = new Object();
+
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StockChangePublisher");
+        thread.setDaemon(true); // must not keep the JVM alive after the windows are closed
+        return thread;
+    });
+
+    // metrics
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param coalesceMillis how long changes are gathered before a batch is delivered
+     */
+    public StockChangePublisher(long coalesceMillis) {
+        this.coalesceMillis = coalesceMillis;
+    }
+
+    public void subscribe(StockChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(StockChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Lets publishers skip the work of building a change nobody would receive
+    public boolean hasSubscribers() {
+        return !listeners.isEmpty();
+    }
+
+    public void publish(StockChange change) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        published.increment();
+        synchronized (this) {
+            pending.merge(change.getProductId(), change, StockChange::followedBy);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                dispatcher.schedule(this::flush, coalesceMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Runs on the dispatcher thread: takes the pending batch and hands it to every subscriber
+    private void flush() {
+        List<StockChange> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+        batches.increment();
+        delivered.add(batch.size());
+        for (StockChangeListener listener : listeners) {
+            try {
+                listener.stockChanged(batch);
+            } catch (RuntimeException e) { // one broken screen must not stop the others being updated
+                log.error("Stock change listener failed", e);
+            }
+        }
+    }
+
+    // Stops the dispatcher thread; changes still pending are dropped
+    public void close() {
+        dispatcher.shutdownNow();
+    }
+
+    // One line with the publisher counters, for the metrics dump
+    public String metricsSummary() {
+        return String.format("StockChangePublisher[subscribers=%d, published=%d, delivered=%d, batches=%d]",
+                listeners.size(), published.sum(), delivered.sum(), batches.sum());
+    }
+}
@@ -0,0 +1,257 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.Logger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A WriteAheadLog is an append-only log of changes, kept in numbered segment files (wal-000001.log, ...).
+ * MemoryRW writes every change here before applying it in memory, and replays the log after a restart.
+ * JournalOrderStore keeps its order journal in one, and reads single records back by their position.
+ *
+ * Each record is framed as [int length][int CRC32 of the payload][payload]. A crash in the middle of an
+ * append leaves a torn record at the end of the last segment; replay() detects it by its length or checksum,
+ * cuts it off, and the log carries on from the last complete record.
+ *
+ * Segments let old changes be thrown away: once a snapshot holds everything up to segment N,
+ * the segments before N are deleted (see MemoryRW). rotate() closes the current segment and starts the next.
+ *
+ * Durability: by default append() hands each record to the operating system, which survives the shop
+ * crashing but not the machine losing power. With fsync = true every append waits until the record is on disk.
+ *
+ * Not thread-safe: MemoryRW calls it while holding its write lock, JournalOrderStore from synchronized methods.
+ */
+
+class WriteAheadLog {
+    private static final Logger log = Logger.getLogger(WriteAheadLog.class);
+    private static final int HEADER_BYTES = 8;                 // length and checksum
+    private static final int MAX_RECORD_BYTES = 1 << 24;       // anything larger is a torn or corrupt length
+
+    // Called for each record found by replay()
+    @FunctionalInterface
+    interface RecordHandler {
+        void handle(ByteBuffer payload) throws IOException;
+    }
+
+    // Called for each record found by replay(), with where it is, so it can be read again with readAt()
+    @FunctionalInterface
+    interface PositionedRecordHandler {
+        void handle(long segment, long position, ByteBuffer payload) throws IOException;
+    }
+
+    private final Path dir;
+    private final boolean fsync;
+    private FileChannel channel;   // the segment being appended to
+    private long segment = 0;      // its number
+    private long appendedRecords = 0;
+    private final CRC32 crc = new CRC32();
+    private final HashMap<Long, FileChannel> readChannels = new HashMap<>(); // opened by readAt(), by segment
+
+    WriteAheadLog(Path dir, boolean fsync) {
+        this.dir = dir;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Replays every record of the segments numbered fromSegment and up, oldest first, then opens the
+     * last segment for appending (or creates segment fromSegment if there is none).
+     * A torn record at the end of the last segment is cut off; damage anywhere else is an IOException,
+     * as the records after it can no longer be trusted.
+     */
+    void replayAndOpen(long fromSegment, RecordHandler handler) throws IOException {
+        replayAndOpen(fromSegment, (number, position, payload) -> handler.handle(payload));
+    }
+
+    void replayAndOpen(long fromSegment, PositionedRecordHandler handler) throws IOException {
+        Files.createDirectories(dir);
+        ArrayList<Long> segments = segmentsFrom(fromSegment);
+        long replayed = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = i == segments.size() - 1;
+            replayed += replaySegment(segments.get(i), last, handler);
+        }
+        segment = segments.isEmpty() ? Math.max(1, fromSegment) : segments.get(segments.size() - 1);
+        channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.info("Write-ahead log opened", "segments", segments.size(), "records", replayed, "segment", segment);
+    }
+
+    private int replaySegment(long number, boolean last, PositionedRecordHandler handler) throws IOException {
+        Path path = segmentPath(number);
+        int records = 0;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            long position = 0;
+            long size = in.size();
+            while (position < size) {
+                ByteBuffer payload = readRecord(in, position, size, header);
+                if (payload == null) { // torn or damaged record
+                    if (!last) {
+                        throw new IOException("Write-ahead log damaged in " + path + " at byte " + position);
+                    }
+                    log.warn("Torn record at the end of the write-ahead log cut off", "segment", number,
+                            "bytesDropped", size - position);
+                    in.truncate(position);
+                    break;
+                }
+                handler.handle(number, position, payload);
+                records++;
+                position += HEADER_BYTES + payload.capacity();
+            }
+        }
+        return records;
+    }
+
+    // Reads the record at position, or returns null if it is incomplete or its checksum does not match
+    private ByteBuffer readRecord(FileChannel in, long position, long size, ByteBuffer header) throws IOException {
+        if (size - position < HEADER_BYTES) {
+            return null;
+        }
+        header.clear();
+        readFully(in, header, position);
+        header.flip();
+        int length = header.getInt();
+        int expectedCrc = header.getInt();
+        if (length < 0 || length > MAX_RECORD_BYTES || size - position - HEADER_BYTES < length) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(in, payload, position + HEADER_BYTES);
+        crc.reset();
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+        payload.flip();
+        return payload;
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Reads the record at the given position of a segment, as returned by append() or passed to a
+     * PositionedRecordHandler. The segment's read channel is kept open for the next read.
+     */
+    ByteBuffer readAt(long number, long position) throws IOException {
+        FileChannel in = readChannels.get(number);
+        if (in == null) {
+            in = FileChannel.open(segmentPath(number), StandardOpenOption.READ);
+            readChannels.put(number, in);
+        }
+        ByteBuffer payload = readRecord(in, position, in.size(), ByteBuffer.allocate(HEADER_BYTES));
+        if (payload == null) {
+            throw new IOException("No valid record in " + segmentPath(number) + " at byte " + position);
+        }
+        return payload;
+    }
+
+    /**
+     * Appends one record to the current segment (see getSegment()) and returns its position there.
+     * If the write fails, the segment is cut back to where it was,
+     * so a half-written record never sits in front of later ones.
+     */
+    long append(byte[] payload) throws IOException {
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(payload.length).putInt((int) crc.getValue()).flip();
+        ByteBuffer body = ByteBuffer.wrap(payload);
+        long sizeBefore = channel.size();
+        try {
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            channel.truncate(sizeBefore);
+            throw e;
+        }
+        appendedRecords++;
+        return sizeBefore;
+    }
+
+    // Closes the current segment and starts the next one; returns the new segment's number.
+    long rotate() throws IOException {
+        channel.force(false); // the closed segment must be complete on disk before a snapshot relies on it
+        channel.close();
+        segment++;
+        channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return segment;
+    }
+
+    // Deletes the segments numbered below the given one, once a snapshot covers them.
+    void deleteSegmentsBefore(long number) throws IOException {
+        for (long old : segmentsFrom(0)) {
+            if (old < number) {
+                deleteSegment(old);
+            }
+        }
+    }
+
+    // Deletes one closed segment, eg when nothing in it is needed any more
+    void deleteSegment(long number) throws IOException {
+        FileChannel in = readChannels.remove(number);
+        if (in != null) {
+            in.close();
+        }
+        Files.deleteIfExists(segmentPath(number));
+    }
+
+    void close() throws IOException {
+        for (FileChannel in : readChannels.values()) {
+            in.close();
+        }
+        readChannels.clear();
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    long getSegment() { return segment; }
+    long getAppendedRecords() { return appendedRecords; }
+    long getSegmentBytes() throws IOException { return channel.size(); } // of the segment being appended to
+
+    // The numbers of all existing segments, oldest first
+    ArrayList<Long> getSegments() throws IOException {
+        return segmentsFrom(0);
+    }
+
+    private Path segmentPath(long number) {
+        return dir.resolve(String.format("wal-%06d.log", number));
+    }
+
+    // The numbers of the existing segments from the given one up, in order
+    private ArrayList<Long> segmentsFrom(long fromSegment) throws IOException {
+        ArrayList<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches("wal-\\d+\\.log"))
+                    .map(name -> Long.parseLong(name.substring(4, name.length() - 4)))
+                    .filter(number -> number >= fromSegment)
+                    .sorted()
+                    .forEach(numbers::add);
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,234 @@
+package ci553.happyshop.systemSetup;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.PooledConnection;
+import ci553.happyshop.storageAccess.ProductPage;
+import ci553.happyshop.utility.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CatalogueExporter writes the whole ProductTable, with the current stock, to a file for reconciliation
+ * with other systems.
+ *
+ * Usage:
+ *     java ci553.happyshop.systemSetup.CatalogueExporter products.csv        CSV, same columns as CatalogueImporter
+ *     java ci553.happyshop.systemSetup.CatalogueExporter products.jsonl.gz   JSON lines, gzip compressed
+ * The format comes from the file name: .csv or .jsonl, followed by .gz for gzip.
+ *
+ * Memory stays the same however large the table is:
+ * - Rows are read from a forward-only, read-only ResultSet, FETCH_SIZE rows at a time, and each row is written
+ *   out as soon as it is read. No Product objects are made and nothing is logged per row
+ *   (unlike searchProduct("*"), which builds the whole list).
+ * - Output goes through a buffered writer, optionally into a GZIPOutputStream.
+ * - The file is written under a temporary name and renamed when complete, so a reader never sees half an export.
+ *
+ * With -Dhappyshop.db=memory the rows come from MemoryRW, one page of PAGE_SIZE products at a time.
+ * The image column holds the image's file name in the images folder.
+ */
+
+public class CatalogueExporter {
+    private static final Logger log = Logger.getLogger(CatalogueExporter.class);
+
+    private static final int FETCH_SIZE = 1000;          // rows Derby sends per round trip
+    private static final int PAGE_SIZE = 1000;           // products per page from the memory backend
+    private static final int PROGRESS_EVERY_ROWS = 100_000;
+    private static final String[] COLUMNS = {"productID", "description", "unitPrice", "inStock", "image"};
+
+    private enum Format { CSV, JSONL }
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length != 1) {
+            System.err.println("Usage: java ci553.happyshop.systemSetup.CatalogueExporter <products.csv|products.jsonl>[.gz]");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        long rows = new CatalogueExporter().export(Path.of(args[0]));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d products to %s in %.1fs%n", rows, args[0], seconds);
+        DatabaseRWFactory.shutdown();
+    }
+
+    /**
+     * Exports every product, in productID order, to the file; returns the number of products written.
+     */
+    public long export(Path file) throws IOException, SQLException {
+        String name = file.getFileName().toString().toLowerCase();
+        boolean gzip = name.endsWith(".gz");
+        String baseName = gzip ? name.substring(0, name.length() - 3) : name;
+        Format format;
+        if (baseName.endsWith(".csv")) {
+            format = Format.CSV;
+        } else if (baseName.endsWith(".jsonl")) {
+            format = Format.JSONL;
+        } else {
+            throw new IllegalArgumentException("Export file must end in .csv or .jsonl (optionally .gz): " + file);
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long rows;
+        long start = System.nanoTime();
+        try (OutputStream out = Files.newOutputStream(temp);
+             OutputStream compressed = gzip ? new GZIPOutputStream(out, 1 << 16) : out;
+             Writer writer = new BufferedWriter(new OutputStreamWriter(compressed, StandardCharsets.UTF_8), 1 << 16)) {
+            RowWriter rowWriter = new RowWriter(writer, format);
+            rowWriter.writeHeader();
+            rows = DatabaseRWFactory.isMemoryBackend() ? exportFromMemory(rowWriter) : exportFromDerby(rowWriter);
+        } catch (IOException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Catalogue exported", "rows", rows, "file", file, "millis", (System.nanoTime() - start) / 1_000_000);
+        return rows;
+    }
+
+    // Streams the table from a forward-only cursor; only FETCH_SIZE rows are in memory at a time
+    private long exportFromDerby(RowWriter rowWriter) throws SQLException, IOException {
+        String query = "SELECT productID, description, unitPrice, inStock, image FROM ProductTable ORDER BY productID";
+        long rows = 0;
+        try (PooledConnection pooled = DatabaseRWFactory.getConnectionPool().borrow()) {
+            Connection connection = pooled.getConnection();
+            try (PreparedStatement stmt = connection.prepareStatement(query,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) { // not cached: used once
+                stmt.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rowWriter.writeRow(rs.getString(1).trim(), rs.getString(2), rs.getDouble(3),
+                                rs.getInt(4), rs.getString(5));
+                        logProgress(++rows);
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Pages through MemoryRW with the keyset cursor; only one page is in memory at a time
+    private long exportFromMemory(RowWriter rowWriter) throws SQLException, IOException {
+        DatabaseRW databaseRW = DatabaseRWFactory.getMemoryRW();
+        long rows = 0;
+        String after = null;
+        do {
+            ProductPage page = databaseRW.searchProductPage("*", after, PAGE_SIZE);
+            for (Product p : page.getProducts()) {
+                rowWriter.writeRow(p.getProductId(), p.getProductDescription(), p.getUnitPrice(),
+                        p.getStockQuantity(), p.getProductImageName());
+                logProgress(++rows);
+            }
+            after = page.getNextCursor();
+        } while (after != null);
+        return rows;
+    }
+
+    private static void logProgress(long rows) {
+        if (rows % PROGRESS_EVERY_ROWS == 0) {
+            log.info("Export progress", "rows", rows);
+        }
+    }
+
+    // Formats rows as CSV or JSON lines, straight into the writer
+    private static class RowWriter {
+        private final Writer writer;
+        private final Format format;
+
+        RowWriter(Writer writer, Format format) {
+            this.writer = writer;
+            this.format = format;
+        }
+
+        void writeHeader() throws IOException {
+            if (format == Format.CSV) {
+                writer.write(String.join(",", COLUMNS));
+                writer.write('\n');
+            }
+        }
+
+        void writeRow(String id, String description, double price, int stock, String image) throws IOException {
+            if (format == Format.CSV) {
+                writeCsvField(id);
+                writer.write(',');
+                writeCsvField(description);
+                writer.write(',');
+                writer.write(Double.toString(price));
+                writer.write(',');
+                writer.write(Integer.toString(stock));
+                writer.write(',');
+                writeCsvField(image);
+            } else {
+                writer.write("{\"productID\":");
+                writeJsonString(id);
+                writer.write(",\"description\":");
+                writeJsonString(description);
+                writer.write(",\"unitPrice\":");
+                writer.write(Double.toString(price));
+                writer.write(",\"inStock\":");
+                writer.write(Integer.toString(stock));
+                writer.write(",\"image\":");
+                writeJsonString(image);
+                writer.write('}');
+            }
+            writer.write('\n');
+        }
+
+        // Quoted only when needed: a comma, quote or line break in the value (RFC 4180)
+        private void writeCsvField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        private void writeJsonString(String value) throws IOException {
+            if (value == null) {
+                writer.write("null");
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> writer.write("\\\"");
+                    case '\\' -> writer.write("\\\\");
+                    case '\n' -> writer.write("\\n");
+                    case '\r' -> writer.write("\\r");
+                    case '\t' -> writer.write("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            writer.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            writer.write(c);
+                        }
+                    }
+                }
+            }
+            writer.write('"');
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package ci553.happyshop.systemSetup;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.ImageFileManager;
+import ci553.happyshop.storageAccess.PooledConnection;
+import ci553.happyshop.utility.Logger;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * CatalogueImporter adds or updates thousands of products from a supplier's CSV file in one run,
+ * instead of one warehouse form submission (one connection, one autocommit) per product.
+ *
+ * Usage:
+ *     java ci553.happyshop.systemSetup.CatalogueImporter products.csv
+ *
+ * The CSV file needs a header row naming its columns, in any order (case-insensitive):
+ *     productID,description,unitPrice,inStock,image
+ *     0101,Blue Kettle,24.99,40,kettles/blue.jpg
+ * image is optional: the path of the image to copy (relative to the CSV file's folder). Left empty, a new product
+ * gets the placeholder image and an existing product keeps its image.
+ *
+ * How it works:
+ * - Streaming: the file is read one record at a time (CsvReader), so its size does not matter.
+ * - Batches: rows are collected into batches of happyshop.import.batchSize (default 500). Each batch is
+ *   upserted in one transaction on one pooled connection: a JDBC batch of UPDATEs, then a batch of INSERTs
+ *   for the rows the UPDATE did not find.
+ * - Images: each row's image is copied into images/ with ImageFileManager as soon as the row is read,
+ *   on happyshop.import.imageThreads threads (default 4), while the rest of the batch is still being read.
+ * - Errors: a bad row (missing field, bad number, too long value, image not found) is reported with its
+ *   line number and skipped; the import carries on. If the database rejects a batch, it is rolled back
+ *   and its rows are written one by one, so only the rows at fault are lost.
+ * - Progress: after every batch, the rows done so far and the rows per second are logged.
+ *
+ * With -Dhappyshop.db=memory the rows are written to the MemoryRW instead, one by one (it is in memory anyway).
+ * When it is done, the shared catalogue cache is invalidated so searches in this JVM see the new products.
+ */
+
+public class CatalogueImporter {
+    private static final Logger log = Logger.getLogger(CatalogueImporter.class);
+
+    private static final int BATCH_SIZE = Integer.getInteger("happyshop.import.batchSize", 500);
+    private static final int IMAGE_THREADS = Integer.getInteger("happyshop.import.imageThreads", 4);
+    private static final int MAX_REPORTED_ERRORS = 100; // errors beyond this are counted but not kept
+    private static final String PLACEHOLDER_IMAGE = "imageHolder.jpg";
+    private static final int MAX_ID_LENGTH = 4;       // productID CHAR(4)
+    private static final int MAX_TEXT_LENGTH = 100;   // description and image VARCHAR(100)
+
+    private static final String UPDATE_SQL = "UPDATE ProductTable SET description = ?, unitPrice = ?, "
+            + "image = COALESCE(CAST(? AS VARCHAR(100)), image), inStock = ? WHERE productID = ?";
+    private static final String INSERT_SQL = "INSERT INTO ProductTable(productID, description, unitPrice, image, inStock) "
+            + "VALUES(?, ?, ?, ?, ?)";
+
+    // One valid CSV row; image is null until its copy has finished (or if the row has none)
+    private static class Row {
+        final int line;
+        final String id;
+        final String description;
+        final double price;
+        final int stock;
+        final CompletableFuture<String> imageCopy; // the copied image's file name, or null if the row has none
+        String image;
+
+        Row(int line, String id, String description, double price, int stock, CompletableFuture<String> imageCopy) {
+            this.line = line;
+            this.id = id;
+            this.description = description;
+            this.price = price;
+            this.stock = stock;
+            this.imageCopy = imageCopy;
+        }
+    }
+
+    /**
+     * The outcome of an import: how many rows were inserted, updated and rejected, and why.
+     */
+    public static class Report {
+        private int rowsRead = 0;
+        private int inserted = 0;
+        private int updated = 0;
+        private int rejected = 0;
+        private final ArrayList<String> errors = new ArrayList<>(); // the first MAX_REPORTED_ERRORS
+        private long elapsedMillis = 0;
+
+        public int getRowsRead() { return rowsRead; }
+        public int getInserted() { return inserted; }
+        public int getUpdated() { return updated; }
+        public int getRejected() { return rejected; }
+        public List<String> getErrors() { return errors; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis == 0 ? 0 : rowsRead * 1000.0 / elapsedMillis;
+        }
+
+        private void reject(int line, String reason) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + line + ": " + reason);
+            }
+            log.warn("Row rejected", "line", line, "reason", reason);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Rows read: %d, inserted: %d, updated: %d, rejected: %d, in %.1fs (%.0f rows/s)%n",
+                    rowsRead, inserted, updated, rejected, elapsedMillis / 1000.0, getRowsPerSecond()));
+            for (String error : errors) {
+                sb.append("  ").append(error).append(System.lineSeparator());
+            }
+            if (rejected > errors.size()) {
+                sb.append("  ... and ").append(rejected - errors.size()).append(" more").append(System.lineSeparator());
+            }
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java ci553.happyshop.systemSetup.CatalogueImporter <products.csv>");
+            System.exit(2);
+        }
+        Report report = new CatalogueImporter().importCsv(Path.of(args[0]));
+        System.out.print(report);
+        DatabaseRWFactory.shutdown();
+    }
+
+    /**
+     * Imports the CSV file; rows that cannot be imported are listed in the returned report.
+     *
+     * @throws IOException if the file cannot be read, or has no header with the required columns
+     */
+    public Report importCsv(Path csvFile) throws IOException {
+        Report report = new Report();
+        if (DatabaseRWFactory.isMemoryBackend()) { // open the database first, so its start-up is not in the rows per second
+            DatabaseRWFactory.getMemoryRW();
+        } else {
+            DatabaseRWFactory.getConnectionPool();
+        }
+        long start = System.nanoTime();
+        Path imageSourceFolder = csvFile.toAbsolutePath().getParent();
+        ExecutorService imageCopier = Executors.newFixedThreadPool(IMAGE_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "CatalogueImporter-images");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (CsvReader csv = new CsvReader(Files.newBufferedReader(csvFile, StandardCharsets.UTF_8))) {
+            ArrayList<String> header = csv.readRecord();
+            if (header == null) {
+                throw new IOException("Empty CSV file: " + csvFile);
+            }
+            Columns columns = new Columns(header);
+
+            ArrayList<Row> batch = new ArrayList<>();
+            HashSet<String> batchIds = new HashSet<>();
+            ArrayList<String> record;
+            while ((record = csv.readRecord()) != null) {
+                report.rowsRead++;
+                Row row = parseRow(record, csv.getRecordLineNumber(), columns, imageSourceFolder, imageCopier, report);
+                if (row == null) {
+                    continue;
+                }
+                if (!batchIds.add(row.id)) { // the same product twice: write the first before the second
+                    writeBatch(batch, report, start);
+                    batchIds.clear();
+                    batchIds.add(row.id);
+                }
+                batch.add(row);
+                if (batch.size() >= BATCH_SIZE) {
+                    writeBatch(batch, report, start);
+                    batchIds.clear();
+                }
+            }
+            writeBatch(batch, report, start);
+        } finally {
+            imageCopier.shutdownNow();
+            if (!DatabaseRWFactory.isMemoryBackend()) {
+                DatabaseRWFactory.getCatalogueCache().invalidateAll(); // the next search reloads the catalogue
+            }
+        }
+        report.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Catalogue import finished", "rows", report.rowsRead, "rejected", report.rejected,
+                "millis", report.elapsedMillis);
+        return report;
+    }
+
+    // Where each column is in the CSV records, found from the header
+    private static class Columns {
+        final int id, description, price, stock, image; // image is -1 if the file has no image column
+
+        Columns(ArrayList<String> header) throws IOException {
+            ArrayList<String> names = new ArrayList<>();
+            for (String name : header) {
+                names.add(name.trim().toLowerCase(Locale.ROOT));
+            }
+            id = required(names, "productid");
+            description = required(names, "description");
+            price = required(names, "unitprice");
+            stock = required(names, "instock");
+            image = names.indexOf("image");
+        }
+
+        private static int required(ArrayList<String> names, String name) throws IOException {
+            int index = names.indexOf(name);
+            if (index < 0) {
+                throw new IOException("CSV header has no " + name + " column: " + names);
+            }
+            return index;
+        }
+    }
+
+    // Checks one record against the ProductTable limits and starts its image copy; null if it is rejected
+    private Row parseRow(ArrayList<String> record, int line, Columns columns, Path imageSourceFolder,
+                         ExecutorService imageCopier, Report report) {
+        String id = field(record, columns.id);
+        String description = field(record, columns.description);
+        String priceText = field(record, columns.price);
+        String stockText = field(record, columns.stock);
+        String imageSource = columns.image < 0 ? "" : field(record, columns.image);
+
+        if (id.isEmpty() || id.length() > MAX_ID_LENGTH) {
+            report.reject(line, "productID must be 1 to " + MAX_ID_LENGTH + " characters: '" + id + "'");
+            return null;
+        }
+        if (description.isEmpty() || description.length() > MAX_TEXT_LENGTH) {
+            report.reject(line, "description must be 1 to " + MAX_TEXT_LENGTH + " characters");
+            return null;
+        }
+        double price;
+        int stock;
+        try {
+            price = Double.parseDouble(priceText);
+            stock = Integer.parseInt(stockText);
+        } catch (NumberFormatException e) {
+            report.reject(line, "unitPrice or inStock is not a number: '" + priceText + "', '" + stockText + "'");
+            return null;
+        }
+        if (!Double.isFinite(price) || price < 0 || stock < 0) {
+            report.reject(line, "unitPrice and inStock must not be negative");
+            return null;
+        }
+
+        CompletableFuture<String> imageCopy = null;
+        if (!imageSource.isEmpty()) {
+            Path source = imageSourceFolder.resolve(imageSource);
+            imageCopy = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return ImageFileManager.copyFileToDestination(source.toString(), StorageLocation.imageFolder, id);
+                } catch (IOException | RuntimeException e) {
+                    throw new CompletionException(e);
+                }
+            }, imageCopier);
+        }
+        return new Row(line, id, description, price, stock, imageCopy);
+    }
+
+    private static String field(ArrayList<String> record, int index) {
+        return index < record.size() ? record.get(index).trim() : "";
+    }
+
+    // Waits for the batch's image copies, writes the rows that are still valid, then empties the batch.
+    private void writeBatch(ArrayList<Row> batch, Report report, long start) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ArrayList<Row> ready = new ArrayList<>();
+        for (Row row : batch) {
+            if (row.imageCopy != null) {
+                try {
+                    row.image = row.imageCopy.join();
+                } catch (CompletionException e) {
+                    report.reject(row.line, "image not copied: " + e.getCause());
+                    continue;
+                }
+                if (row.image.length() > MAX_TEXT_LENGTH) {
+                    report.reject(row.line, "image file name longer than " + MAX_TEXT_LENGTH + " characters");
+                    continue;
+                }
+            }
+            ready.add(row);
+        }
+        if (DatabaseRWFactory.isMemoryBackend()) {
+            writeRowsOneByOne(ready, report);
+        } else {
+            writeDerbyBatch(ready, report);
+        }
+        batch.clear();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info("Import progress", "rows", report.rowsRead, "rejected", report.rejected,
+                "rowsPerSecond", Math.round(report.rowsRead / seconds));
+    }
+
+    /**
+     * Upserts the rows in one transaction: a JDBC batch of UPDATEs, then a batch of INSERTs for the rows
+     * the UPDATE did not find. If the database rejects the batch, it is rolled back and written row by row.
+     */
+    private void writeDerbyBatch(ArrayList<Row> rows, Report report) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (PooledConnection pooled = DatabaseRWFactory.getConnectionPool().borrow()) {
+            Connection connection = pooled.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement update = pooled.prepareStatement(UPDATE_SQL); // cached, not closed here
+                for (Row row : rows) {
+                    setUpdateParameters(update, row);
+                    update.addBatch();
+                }
+                int[] updateCounts = update.executeBatch();
+
+                PreparedStatement insert = pooled.prepareStatement(INSERT_SQL);
+                int inserts = 0;
+                for (int i = 0; i < rows.size(); i++) {
+                    if (updateCounts[i] == 0) {
+                        setInsertParameters(insert, rows.get(i));
+                        insert.addBatch();
+                        inserts++;
+                    }
+                }
+                if (inserts > 0) {
+                    insert.executeBatch();
+                }
+                connection.commit();
+                report.inserted += inserts;
+                report.updated += rows.size() - inserts;
+            } catch (SQLException e) {
+                connection.rollback();
+                log.warn("Batch rejected by the database, writing its rows one by one", "rows", rows.size(),
+                        "sqlState", e.getSQLState());
+                writeDerbyRowsOneByOne(pooled, rows, report);
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            for (Row row : rows) {
+                report.reject(row.line, "database error: " + e.getMessage());
+            }
+        }
+    }
+
+    // Each row in its own transaction, so a failing row does not take the others with it
+    private void writeDerbyRowsOneByOne(PooledConnection pooled, ArrayList<Row> rows, Report report) throws SQLException {
+        Connection connection = pooled.getConnection();
+        PreparedStatement update = pooled.prepareStatement(UPDATE_SQL);
+        PreparedStatement insert = pooled.prepareStatement(INSERT_SQL);
+        update.clearBatch();
+        insert.clearBatch();
+        for (Row row : rows) {
+            try {
+                setUpdateParameters(update, row);
+                if (update.executeUpdate() == 0) {
+                    setInsertParameters(insert, row);
+                    insert.executeUpdate();
+                    report.inserted++;
+                } else {
+                    report.updated++;
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                report.reject(row.line, "database error " + e.getSQLState() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void setUpdateParameters(PreparedStatement update, Row row) throws SQLException {
+        update.setString(1, row.description);
+        update.setDouble(2, row.price);
+        if (row.image == null) {
+            update.setNull(3, Types.VARCHAR); // keep the product's image
+        } else {
+            update.setString(3, row.image);
+        }
+        update.setInt(4, row.stock);
+        update.setString(5, row.id);
+    }
+
+    private static void setInsertParameters(PreparedStatement insert, Row row) throws SQLException {
+        insert.setString(1, row.id);
+        insert.setString(2, row.description);
+        insert.setDouble(3, row.price);
+        insert.setString(4, row.image == null ? PLACEHOLDER_IMAGE : row.image);
+        insert.setInt(5, row.stock);
+    }
+
+    // For the memory backend: plain DatabaseRW calls, which MemoryRW answers in memory
+    private void writeRowsOneByOne(ArrayList<Row> rows, Report report) {
+        DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW();
+        for (Row row : rows) {
+            try {
+                Product existing = databaseRW.searchByProductId(row.id);
+                if (existing == null) {
+                    databaseRW.insertNewProduct(row.id, row.description, row.price,
+                            row.image == null ? PLACEHOLDER_IMAGE : row.image, row.stock);
+                    report.inserted++;
+                } else {
+                    databaseRW.updateProduct(row.id, row.description, row.price,
+                            row.image == null ? existing.getProductImageName() : row.image, row.stock);
+                    report.updated++;
+                }
+            } catch (SQLException e) {
+                report.reject(row.line, "database error " + e.getSQLState() + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ci553.happyshop.systemSetup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * A CsvReader reads a CSV file one record at a time, so a file of any size can be imported
+ * without loading it into memory. It follows RFC 4180:
+ * - fields are separated by commas and records by line breaks (\n or \r\n)
+ * - a field in double quotes may contain commas, line breaks and doubled quotes ("" for ")
+ * - a byte order mark at the start of the file is skipped
+ *
+ * Example Usage:
+ *     try (CsvReader csv = new CsvReader(Files.newBufferedReader(path))) {
+ *         ArrayList<String> record;
+ *         while ((record = csv.readRecord()) != null) { ... }
+ *     }
+ */
+
+class CsvReader implements Closeable {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int length = 0;
+    private int lineNumber = 1;       // the line the next record starts on
+    private int recordLineNumber = 0; // the line the last record started on
+    private boolean started = false;
+
+    CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the fields of the next record, or null at the end of the file. Blank lines are skipped.
+     *
+     * @throws IOException if reading fails, or a quoted field is not closed before the end of the file
+     */
+    ArrayList<String> readRecord() throws IOException {
+        if (!started) {
+            started = true;
+            if (peek() == '\uFEFF') { // byte order mark
+                position++;
+            }
+        }
+        int c;
+        while ((c = peek()) == '\n' || c == '\r') { // skip blank lines
+            next();
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLineNumber = lineNumber;
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStarted = false; // a quote only opens a quoted field at its start
+        while (true) {
+            c = next();
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Quoted field not closed, record starting on line " + recordLineNumber);
+                } else if (c == '"') {
+                    if (peek() == '"') { // "" inside quotes is one "
+                        next();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStarted = false;
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r' && peek() == '\n') {
+                    next();
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c == '"' && !fieldStarted) {
+                quoted = true;
+                fieldStarted = true;
+            } else {
+                field.append((char) c);
+                fieldStarted = true;
+            }
+        }
+    }
+
+    // The line the last record returned by readRecord() started on, for error messages
+    int getRecordLineNumber() {
+        return recordLineNumber;
+    }
+
+    private int peek() throws IOException {
+        if (position == length && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+            if (c == '\n') {
+                lineNumber++;
+            }
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        length = reader.read(buffer);
+        position = 0;
+        if (length <= 0) {
+            length = 0;
+            return false;
+        }
+        return true;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
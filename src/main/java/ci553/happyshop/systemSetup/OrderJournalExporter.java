@@ -0,0 +1,74 @@
+package ci553.happyshop.systemSetup;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.storageAccess.JournalOrderStore;
+import ci553.happyshop.storageAccess.OrderStore;
+import ci553.happyshop.storageAccess.OrderStoreFactory;
+import ci553.happyshop.utility.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * OrderJournalExporter writes orders from the order journal (see JournalOrderStore) as the human-readable
+ * text files of the original layout: <outDir>/ordered/12.txt, <outDir>/progressing/13.txt, <outDir>/collected/...
+ * with the same content an order file would have, current state and times included.
+ *
+ * Usage:
+ *     java -Dhappyshop.orderStore=journal ci553.happyshop.systemSetup.OrderJournalExporter exported-orders
+ *     java -Dhappyshop.orderStore=journal ci553.happyshop.systemSetup.OrderJournalExporter exported-orders 12 13
+ * With order IDs, only those orders are written; otherwise every order still in the journal.
+ */
+
+public class OrderJournalExporter {
+    private static final Logger log = Logger.getLogger(OrderJournalExporter.class);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java -Dhappyshop.orderStore=journal ci553.happyshop.systemSetup.OrderJournalExporter <outDir> [orderId ...]");
+            System.exit(2);
+        }
+        OrderStore store = OrderStoreFactory.getOrderStore();
+        if (!(store instanceof JournalOrderStore journal)) {
+            System.err.println("The orders are kept as files already; run with -Dhappyshop.orderStore=journal to export the journal");
+            System.exit(2);
+            return;
+        }
+        TreeMap<Integer, OrderState> orders = journal.loadAllOrders();
+        if (args.length > 1) {
+            TreeMap<Integer, OrderState> chosen = new TreeMap<>();
+            for (int i = 1; i < args.length; i++) {
+                int orderId = Integer.parseInt(args[i]);
+                if (orders.containsKey(orderId)) {
+                    chosen.put(orderId, orders.get(orderId));
+                } else {
+                    System.err.println("Order " + orderId + " is not in the journal");
+                }
+            }
+            orders = chosen;
+        }
+        int written = export(journal, orders, Path.of(args[0]));
+        System.out.printf("Exported %d orders to %s%n", written, args[0]);
+        OrderStoreFactory.shutdown();
+    }
+
+    /**
+     * Writes each order to the folder of its state under outDir; returns the number of files written.
+     */
+    public static int export(JournalOrderStore journal, Map<Integer, OrderState> orders, Path outDir) throws IOException {
+        int written = 0;
+        for (Map.Entry<Integer, OrderState> order : orders.entrySet()) {
+            Path dir = outDir.resolve(order.getValue().name().toLowerCase()); // ordered, progressing or collected
+            Files.createDirectories(dir);
+            String text = journal.readOrder(order.getKey()) + System.lineSeparator(); // as OrderFileManager writes it
+            Files.writeString(dir.resolve(order.getKey() + ".txt"), text, StandardCharsets.UTF_8);
+            written++;
+        }
+        log.info("Orders exported from the journal", "orders", written, "dir", outDir);
+        return written;
+    }
+}
@@ -1,6 +1,7 @@
 package ci553.happyshop.systemSetup;
 
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.SchemaMigrator;
 import ci553.happyshop.utility.StorageLocation;
 
 import java.io.IOException;
@@ -21,7 +22,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * Key operations:
  * 1. Deletes all existing tables in the database.
  * 2. Recreates the database tables based on the initial schema.
- * 3. Inserts default values into the newly created tables.
+ * 3. Inserts default values into the newly created tables, and adds the columns and indexes of SchemaMigrator.
  * 4. Deletes all existing image files from the working image folder (images/).
  * 5. Copies all image files from the backup folder (images_resetDB/) into the working image folder.
  */
@@ -121,6 +122,9 @@ public class SetDatabase {
                 statement.executeBatch();
                 connection.commit(); // Commit the transaction if everything was successful
 
+                // Add the lowercase description column and its index, as on a migrated database
+                SchemaMigrator.migrate(connection);
+
                 System.out.println("Table and data initialized successfully.");
 
             } catch (SQLException e) {
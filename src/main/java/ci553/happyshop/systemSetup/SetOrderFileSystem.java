@@ -44,6 +44,13 @@ public class SetOrderFileSystem {
         createOrderCounterFile(orderCounterPath);
     }
 
+    // Creates the order folders and the orderCounter file if they are missing, keeping all existing orders.
+    // Used by the headless runtime at startup.
+    public static void createIfMissing() throws IOException {
+        createFolders(foldersPaths);
+        createOrderCounterFile(orderCounterPath);
+    }
+
     // Recursively deletes all files in folder
     public static void deleteFilesInFolder(Path folder) throws IOException {
         if (Files.exists(folder)) {
@@ -0,0 +1,145 @@
+package ci553.happyshop.utility;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The AsyncLogAppender takes log events from any thread and writes them out on its own background thread.
+ *
+ * How it works:
+ * - Events go into a fixed-size ring buffer (an array used as a circular queue). Adding one is a short
+ *   locked array store; the calling thread never formats text or waits for the console.
+ * - A daemon writer thread takes events out in batches, formats them, and prints the whole batch at once.
+ * - If the buffer is full because events arrive faster than they can be printed, new events are dropped
+ *   and counted rather than slowing the shop down. The next batch reports how many were dropped.
+ * - flush() waits until everything logged so far has been printed. It runs on JVM shutdown,
+ *   so the last messages before System.exit() are not lost.
+ */
+
+public final class AsyncLogAppender {
+    private static final int DRAIN_BATCH_SIZE = 256; // most events printed in one go
+
+    private final LogEvent[] ring;
+    private final PrintStream out;
+    private long head = 0; // sequence number of the next event to print
+    private long tail = 0; // sequence number the next added event gets
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final LongAdder dropped = new LongAdder();
+    private long printed = 0;
+
+    private AsyncLogAppender(int capacity, PrintStream out) {
+        this.ring = new LogEvent[capacity];
+        this.out = out;
+    }
+
+    /**
+     * Creates an appender and starts its writer thread and its flush-on-shutdown hook.
+     * The thread is started here rather than in the constructor, so it never sees a half-built appender.
+     *
+     * @param capacity how many events may wait to be printed before new ones are dropped
+     * @param out      where the events are printed, eg System.out
+     */
+    public static AsyncLogAppender start(int capacity, PrintStream out) {
+        AsyncLogAppender appender = new AsyncLogAppender(capacity, out);
+        Thread writer = new Thread(appender::writeLoop, "AsyncLogAppender");
+        writer.setDaemon(true); // must not keep the JVM alive after the windows are closed
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> appender.flush(1000), "AsyncLogAppender-flush"));
+        return appender;
+    }
+
+    // Adds an event to the ring buffer without blocking; drops it if the buffer is full.
+    void append(LogEvent event) {
+        lock.lock();
+        try {
+            if (tail - head == ring.length) {
+                dropped.increment();
+                return;
+            }
+            ring[(int) (tail % ring.length)] = event;
+            tail++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every event appended so far has been printed, or the timeout has passed.
+     */
+    public void flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            long target = tail;
+            while (printed < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                drained.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() { return dropped.sum(); }
+
+    private void writeLoop() {
+        LogEvent[] batch = new LogEvent[DRAIN_BATCH_SIZE];
+        while (true) {
+            int count = 0;
+            lock.lock();
+            try {
+                while (head == tail) {
+                    notEmpty.await();
+                }
+                while (head != tail && count < batch.length) {
+                    int index = (int) (head % ring.length);
+                    batch[count++] = ring[index];
+                    ring[index] = null; // let the event be garbage collected
+                    head++;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            StringBuilder text = new StringBuilder(count * 128);
+            long droppedSoFar = dropped.sumThenReset();
+            if (droppedSoFar > 0) {
+                text.append("WARN  AsyncLogAppender - ").append(droppedSoFar).append(" log events dropped, buffer full\n");
+            }
+            for (int i = 0; i < count; i++) {
+                text.append(batch[i].format()).append('\n');
+                if (batch[i].throwable != null) {
+                    StringWriter stackTrace = new StringWriter();
+                    batch[i].throwable.printStackTrace(new PrintWriter(stackTrace));
+                    text.append(stackTrace);
+                }
+                batch[i] = null;
+            }
+            out.print(text);
+            out.flush();
+
+            lock.lock();
+            try {
+                printed += count;
+                drained.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
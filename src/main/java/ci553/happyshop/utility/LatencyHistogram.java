@@ -0,0 +1,100 @@
+package ci553.happyshop.utility;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A LatencyHistogram records how long operations take, in nanoseconds, and answers percentile questions
+ * such as "95% of searches finished within how long?".
+ *
+ * It works like an HDR histogram: instead of keeping every value, values are counted in buckets whose width grows
+ * with the value. Every power of two is split into 64 equal sub-buckets, so any recorded value is reported
+ * with an error of less than 1.6%, whether it is 2 microseconds or 2 seconds. Recording is one array increment,
+ * needs no lock, and the memory used is fixed (about 20KB) no matter how many values are recorded.
+ *
+ * Values from 0 up to about 1 hour are tracked; larger values are counted in the last bucket (getMax() stays exact).
+ * Percentiles are read while other threads may still be recording, so they are a close snapshot, not an exact one.
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;                      // 64 sub-buckets per power of two
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKET_COUNT;      // values below 128ns get one bucket each
+    private static final long MAX_TRACKABLE_NANOS = 1L << 42;          // about 73 minutes
+    private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(Math.min(value, MAX_TRACKABLE_NANOS)));
+        totalCount.increment();
+        totalNanos.add(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() { return totalCount.sum(); }
+    public long getMaxNanos() { return maxNanos.get(); }
+
+    public double getMeanNanos() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalNanos.sum() / count;
+    }
+
+    /**
+     * Returns the value that the given percentage of recorded values are at or below.
+     *
+     * @param percentile between 0 and 100, eg 99 for the p99 latency
+     * @return the latency in nanoseconds (the upper end of its bucket), or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count)); // the rank-th smallest value
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    // Clears all recorded values, eg. at the start of a new measurement period.
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+    // Values below LINEAR_LIMIT map to their own bucket. Above it, a value is shifted right until it has
+    // SUB_BUCKET_BITS + 1 bits left; the shift picks the power of two and the remaining low bits the sub-bucket.
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // The largest value that falls into the bucket at index
+    private static long highestValueOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
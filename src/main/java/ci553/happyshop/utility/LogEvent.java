@@ -0,0 +1,65 @@
+package ci553.happyshop.utility;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A LogEvent is one log message waiting in the AsyncLogAppender's ring buffer.
+ *
+ * It only stores what the caller passed in; turning it into text (format()) happens later on the
+ * appender's writer thread, so logging costs the calling thread no string building and no console I/O.
+ *
+ * Fields are key/value pairs, eg ("productId", "0001", "stock", 42), written as productId=0001 stock=42,
+ * so log lines can be searched and parsed by field rather than by free text.
+ */
+
+final class LogEvent {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    final long timestampMillis;
+    final LogLevel level;
+    final String loggerName;
+    final String threadName;
+    final String message;
+    final Object[] fields;     // alternating keys and values, may be empty
+    final Throwable throwable; // may be null
+
+    LogEvent(LogLevel level, String loggerName, String message, Object[] fields, Throwable throwable) {
+        this.timestampMillis = System.currentTimeMillis();
+        this.level = level;
+        this.loggerName = loggerName;
+        this.threadName = Thread.currentThread().getName();
+        this.message = message;
+        this.fields = fields;
+        this.throwable = throwable;
+    }
+
+    // eg: 2025-03-01 10:15:30.123 INFO  [JavaFX Application Thread] OrderHub - Order placed orderId=12 lines=3
+    String format() {
+        StringBuilder line = new StringBuilder(128);
+        line.append(TIME_FORMAT.format(Instant.ofEpochMilli(timestampMillis))).append(' ')
+                .append(String.format("%-5s", level)).append(" [").append(threadName).append("] ")
+                .append(loggerName).append(" - ").append(message);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=');
+            appendValue(line, fields[i + 1]);
+        }
+        if (throwable != null) {
+            line.append(" error=");
+            appendValue(line, throwable.toString());
+        }
+        return line.toString();
+    }
+
+    // Values containing spaces or quotes are quoted, so every field stays a single key=value token
+    private static void appendValue(StringBuilder line, Object value) {
+        String text = String.valueOf(value);
+        if (text.isEmpty() || text.indexOf(' ') >= 0 || text.indexOf('"') >= 0 || text.indexOf('=') >= 0) {
+            line.append('"').append(text.replace("\"", "\\\"")).append('"');
+        } else {
+            line.append(text);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ci553.happyshop.utility;
+
+/**
+ * The levels of a log message, from the most to the least detailed.
+ * A Logger only keeps messages at or above the current level (see Logger.setLevel).
+ */
+
+public enum LogLevel {
+    DEBUG, // details for developers, eg every product row read from the database
+    INFO,  // normal events worth knowing about, eg an order was placed
+    WARN,  // something unexpected that the system recovered from, eg a retried lock conflict
+    ERROR, // an operation failed
+    OFF    // as a level to set only: turns logging off
+}
@@ -0,0 +1,112 @@
+package ci553.happyshop.utility;
+
+/**
+ * A Logger writes log messages for one class, with a level and optional structured fields.
+ *
+ * Example Usage:
+ *     private static final Logger log = Logger.getLogger(DerbyRW.class);
+ *     log.info("Stock purchased", "lines", proList.size());
+ *     log.warn("Lock conflict, retrying", "sqlState", e.getSQLState(), "attempt", attempt);
+ *     log.error("Database update failed", e);
+ *
+ * Level gating: every call first compares its level with the current level (one field read), and returns
+ * at once if the message is not wanted. The fixed-arity methods (up to three key/value pairs) avoid the
+ * varargs array, so a disabled log.debug(...) allocates nothing. If building a field value is itself
+ * expensive, guard the call with isDebugEnabled().
+ *
+ * Messages that pass the level check are handed to a shared AsyncLogAppender, which prints them on a
+ * background thread. The level is INFO unless -Dhappyshop.logLevel=DEBUG (or WARN, ERROR, OFF) is given.
+ */
+
+public final class Logger {
+    private static final int BUFFER_CAPACITY = 8192; // log events that may wait to be printed
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    private static volatile LogLevel level = levelFromProperty();
+    private static final AsyncLogAppender appender = AsyncLogAppender.start(BUFFER_CAPACITY, System.out);
+
+    private final String name;
+
+    private static LogLevel levelFromProperty() {
+        try {
+            return LogLevel.valueOf(System.getProperty("happyshop.logLevel", "INFO").trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return LogLevel.INFO; // an unknown level name must not stop the shop from starting
+        }
+    }
+
+    private Logger(String name) {
+        this.name = name;
+    }
+
+    public static Logger getLogger(Class<?> owner) {
+        return new Logger(owner.getSimpleName());
+    }
+
+    public static void setLevel(LogLevel newLevel) { level = newLevel; }
+    public static LogLevel getLevel() { return level; }
+
+    // Waits (up to timeoutMillis) until everything logged so far has been printed.
+    public static void flush(long timeoutMillis) { appender.flush(timeoutMillis); }
+
+    public boolean isEnabled(LogLevel messageLevel) { return messageLevel.compareTo(level) >= 0; }
+    public boolean isDebugEnabled() { return isEnabled(LogLevel.DEBUG); }
+
+    public void debug(String message) {
+        if (isEnabled(LogLevel.DEBUG)) append(LogLevel.DEBUG, message, NO_FIELDS, null);
+    }
+    public void debug(String message, String key, Object value) {
+        if (isEnabled(LogLevel.DEBUG)) append(LogLevel.DEBUG, message, new Object[]{key, value}, null);
+    }
+    public void debug(String message, String key1, Object value1, String key2, Object value2) {
+        if (isEnabled(LogLevel.DEBUG)) append(LogLevel.DEBUG, message, new Object[]{key1, value1, key2, value2}, null);
+    }
+    public void debug(String message, String key1, Object value1, String key2, Object value2, String key3, Object value3) {
+        if (isEnabled(LogLevel.DEBUG)) append(LogLevel.DEBUG, message, new Object[]{key1, value1, key2, value2, key3, value3}, null);
+    }
+
+    public void info(String message) {
+        if (isEnabled(LogLevel.INFO)) append(LogLevel.INFO, message, NO_FIELDS, null);
+    }
+    public void info(String message, String key, Object value) {
+        if (isEnabled(LogLevel.INFO)) append(LogLevel.INFO, message, new Object[]{key, value}, null);
+    }
+    public void info(String message, String key1, Object value1, String key2, Object value2) {
+        if (isEnabled(LogLevel.INFO)) append(LogLevel.INFO, message, new Object[]{key1, value1, key2, value2}, null);
+    }
+    public void info(String message, String key1, Object value1, String key2, Object value2, String key3, Object value3) {
+        if (isEnabled(LogLevel.INFO)) append(LogLevel.INFO, message, new Object[]{key1, value1, key2, value2, key3, value3}, null);
+    }
+
+    public void warn(String message) {
+        if (isEnabled(LogLevel.WARN)) append(LogLevel.WARN, message, NO_FIELDS, null);
+    }
+    public void warn(String message, String key, Object value) {
+        if (isEnabled(LogLevel.WARN)) append(LogLevel.WARN, message, new Object[]{key, value}, null);
+    }
+    public void warn(String message, String key1, Object value1, String key2, Object value2) {
+        if (isEnabled(LogLevel.WARN)) append(LogLevel.WARN, message, new Object[]{key1, value1, key2, value2}, null);
+    }
+    public void warn(String message, Throwable error) {
+        if (isEnabled(LogLevel.WARN)) append(LogLevel.WARN, message, NO_FIELDS, error);
+    }
+
+    public void error(String message) {
+        if (isEnabled(LogLevel.ERROR)) append(LogLevel.ERROR, message, NO_FIELDS, null);
+    }
+    public void error(String message, Throwable error) {
+        if (isEnabled(LogLevel.ERROR)) append(LogLevel.ERROR, message, NO_FIELDS, error);
+    }
+    public void error(String message, Throwable error, String key, Object value) {
+        if (isEnabled(LogLevel.ERROR)) append(LogLevel.ERROR, message, new Object[]{key, value}, error);
+    }
+
+    // Any number of key/value pairs, for the rare call that needs more than three
+    public void log(LogLevel messageLevel, String message, Object... fields) {
+        if (isEnabled(messageLevel)) append(messageLevel, message, fields, null);
+    }
+
+    private void append(LogLevel messageLevel, String message, Object[] fields, Throwable error) {
+        appender.append(new LogEvent(messageLevel, name, message, fields, error));
+    }
+}
@@ -0,0 +1,25 @@
+package ci553.happyshop.utility;
+
+import java.util.function.Supplier;
+
+/**
+ * A MetricsRegistry is where measuring code (eg. MetricsDatabaseRW) keeps its metrics.
+ *
+ * - operation(name) returns the OperationMetrics for a name, creating it on first use,
+ *   so a decorator can simply ask for "DatabaseRW.searchProduct" every time it is called.
+ * - registerGauge(name, supplier) adds a value that is read when the metrics are dumped,
+ *   eg. the number of borrowed connections of the ConnectionPool.
+ * - dump() returns all metrics as text, on demand; a MetricsReporter dumps them on a schedule.
+ *
+ * The registry is an interface so it can be swapped, eg. for one that forwards to a monitoring system,
+ * without changing the code that records the metrics. SimpleMetricsRegistry keeps everything in memory.
+ */
+
+public interface MetricsRegistry {
+
+    OperationMetrics operation(String name);
+
+    void registerGauge(String name, Supplier<?> gauge);
+
+    String dump();
+}
@@ -0,0 +1,56 @@
+package ci553.happyshop.utility;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A MetricsReporter dumps a MetricsRegistry on a fixed schedule, on its own daemon thread.
+ *
+ * Example Usage:
+ *     MetricsReporter reporter = new MetricsReporter(registry, System.out::println);
+ *     reporter.start(30, TimeUnit.SECONDS);
+ *     ...
+ *     reporter.stop();
+ */
+
+public class MetricsReporter {
+    private static final Logger log = Logger.getLogger(MetricsReporter.class);
+    private final MetricsRegistry registry;
+    private final Consumer<String> sink; // where the dumps go, eg System.out::println
+    private ScheduledExecutorService scheduler;
+
+    public MetricsReporter(MetricsRegistry registry, Consumer<String> sink) {
+        this.registry = registry;
+        this.sink = sink;
+    }
+
+    public synchronized void start(long period, TimeUnit unit) {
+        if (scheduler != null) {
+            return; // already running
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetricsReporter");
+            thread.setDaemon(true); // must not keep the JVM alive after the windows are closed
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    // Dumps the registry once, now.
+    public void report() {
+        try {
+            sink.accept(registry.dump());
+        } catch (RuntimeException e) { // an exception would cancel the schedule
+            log.warn("Metrics report failed", e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
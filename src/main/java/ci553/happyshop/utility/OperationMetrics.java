@@ -0,0 +1,47 @@
+package ci553.happyshop.utility;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OperationMetrics holds the measurements of one named operation, eg. "DatabaseRW.searchProduct":
+ * how often it was called, how often it failed, and a LatencyHistogram of how long the calls took.
+ * Failed calls are timed too, as a slow failure (eg. a connection timeout) is worth seeing.
+ */
+
+public class OperationMetrics {
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public void record(long durationNanos, boolean failed) {
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+        latency.record(durationNanos);
+    }
+
+    // a set of getter methods
+    public String getName() { return name; }
+    public long getCalls() { return calls.sum(); }
+    public long getErrors() { return errors.sum(); }
+    public LatencyHistogram getLatency() { return latency; }
+
+    // One line with the count, errors and p50/p95/p99/max latency in milliseconds.
+    public String summary() {
+        return String.format("%-36s calls=%-8d errors=%-6d p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+                name, getCalls(), getErrors(),
+                toMillis(latency.getValueAtPercentile(50)), toMillis(latency.getValueAtPercentile(95)),
+                toMillis(latency.getValueAtPercentile(99)), toMillis(latency.getMaxNanos()));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,46 @@
+package ci553.happyshop.utility;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory MetricsRegistry. Operations and gauges are kept sorted by name,
+ * so dump() lists them in the same order every time, which makes successive dumps easy to compare.
+ */
+
+public class SimpleMetricsRegistry implements MetricsRegistry {
+    private final ConcurrentSkipListMap<String, OperationMetrics> operations = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Supplier<?>> gauges = new ConcurrentSkipListMap<>();
+
+    public OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name); // the common case, without allocating a lambda
+        return metrics != null ? metrics : operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    public void registerGauge(String name, Supplier<?> gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public String dump() {
+        StringBuilder report = new StringBuilder();
+        report.append("---- Metrics at ")
+                .append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+                .append(" ----\n");
+        for (OperationMetrics metrics : operations.values()) {
+            report.append(metrics.summary()).append('\n');
+        }
+        for (Map.Entry<String, Supplier<?>> gauge : gauges.entrySet()) {
+            Object value;
+            try {
+                value = gauge.getValue().get();
+            } catch (RuntimeException e) { // one broken gauge must not spoil the whole dump
+                value = "error: " + e.getMessage();
+            }
+            report.append(gauge.getKey()).append(" = ").append(value).append('\n');
+        }
+        return report.toString();
+    }
+}
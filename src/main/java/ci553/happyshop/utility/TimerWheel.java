@@ -0,0 +1,155 @@
+package ci553.happyshop.utility;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TimerWheel runs many short tasks after a delay, eg releasing thousands of stock reservations when
+ * they expire, far more cheaply than one ScheduledExecutorService task (and heap entry) per timeout.
+ *
+ * How it works (a "hashed timing wheel"):
+ * - Time is cut into ticks of tickMillis. The wheel is a ring of wheelSize buckets, one per tick.
+ * - A timeout due in n ticks goes into bucket (current + n) % wheelSize, with n / wheelSize rounds still to wait.
+ * - One daemon thread wakes every tick, moves to the next bucket and runs the timeouts whose rounds are used up.
+ * So scheduling and cancelling are O(1), whatever the number of pending timeouts, and
+ * a timeout fires between 0 and one tick late, which is fine for expiry times of seconds or minutes.
+ *
+ * Thread safety: schedule() and cancel() may be called from any thread. New timeouts are handed to the wheel
+ * thread through a lock-free queue; a cancelled timeout is only marked, and dropped when its bucket comes round.
+ *
+ * Example Usage:
+ *     TimerWheel wheel = new TimerWheel("Reservations", 100, 512);
+ *     TimerWheel.Timeout timeout = wheel.schedule(() -> release(hold), 5, TimeUnit.MINUTES);
+ *     ...
+ *     timeout.cancel(); // the hold was used in time
+ */
+
+public class TimerWheel {
+    private static final Logger log = Logger.getLogger(TimerWheel.class);
+
+    // A scheduled task; cancel() stops it from running if it has not run yet
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private long remainingRounds;
+        private final AtomicBoolean done = new AtomicBoolean(false); // run or cancelled
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        // Returns true if the task was stopped, false if it had already run or been cancelled
+        public boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+
+        public boolean isDone() {
+            return done.get();
+        }
+    }
+
+    private final long tickNanos;
+    private final ArrayDeque<Timeout>[] buckets;        // only touched by the wheel thread
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong currentTick = new AtomicLong(); // the last tick processed
+    private final AtomicLong pending = new AtomicLong();     // scheduled and not yet run or dropped
+    private final Thread thread;
+    private volatile boolean stopped = false;
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // a generic array can only be created raw
+    public TimerWheel(String name, long tickMillis, int wheelSize) {
+        if (tickMillis < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException("tickMillis and wheelSize must be positive");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        thread = new Thread(this::run, name + "-TimerWheel");
+        thread.setDaemon(true); // pending timeouts must not keep the JVM alive
+        thread.start();
+    }
+
+    /**
+     * Runs the task once, after the delay (rounded up to whole ticks), on the wheel's thread.
+     * Tasks should be short: a slow task delays every other timeout.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long ticks = (unit.toNanos(delay) + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(task, currentTick.get() + Math.max(1, ticks));
+        pending.incrementAndGet();
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    // The number of timeouts scheduled that have not run yet (cancelled ones count until their bucket comes round)
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    public void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (!stopped) {
+            long tick = currentTick.get() + 1;
+            long sleepNanos = startNanos + tick * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    continue; // stop() interrupts; the loop checks stopped
+                }
+            }
+            placeIncoming(tick);
+            expire(buckets[(int) (tick % buckets.length)]);
+            currentTick.set(tick);
+        }
+    }
+
+    // Puts the timeouts scheduled since the last tick into their buckets
+    private void placeIncoming(long tick) {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.isDone()) { // cancelled before it was even placed
+                pending.decrementAndGet();
+                continue;
+            }
+            long deadline = Math.max(timeout.deadlineTick, tick); // an overdue timeout fires this tick
+            timeout.remainingRounds = (deadline - tick) / buckets.length;
+            buckets[(int) (deadline % buckets.length)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.isDone()) {
+                it.remove();
+                pending.decrementAndGet();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                it.remove();
+                pending.decrementAndGet();
+                if (timeout.done.compareAndSet(false, true)) {
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) { // must not stop the wheel
+                        log.error("Timer task failed", e);
+                    }
+                }
+            }
+        }
+    }
+}
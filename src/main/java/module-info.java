@@ -1,8 +1,8 @@
 module ci553.happyshop {
-    requires javafx.controls;
+    requires transitive javafx.controls; // the client classes take and return JavaFX types (Stage, ObservableList)
     requires javafx.fxml;
-    requires java.sql;
-    requires javafx.graphics;
+    requires transitive java.sql; // SQLException is part of the exported API (DatabaseRW, HeadlessRuntime)
+    requires transitive javafx.graphics;
     requires java.desktop;
 
     opens ci553.happyshop to javafx.fxml;
@@ -20,5 +20,12 @@ module ci553.happyshop {
     exports ci553.happyshop.client.orderTracker;
     exports ci553.happyshop.client.emergency;
     exports ci553.happyshop.systemSetup;
+    exports ci553.happyshop.loadTest;
+    exports ci553.happyshop.headless;
+    // the types the headless API (HeadlessRuntime) takes and returns
+    exports ci553.happyshop.catalogue;
+    exports ci553.happyshop.orderManagement;
+    exports ci553.happyshop.storageAccess;
+    exports ci553.happyshop.client.picker;
 
 }
\ No newline at end of file
@@ -0,0 +1,144 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that a search through the product cache finds the same products as the database behind it,
+ * for keywords ending in '*', which only match the start of a description, and for plain keywords,
+ * and that a slow read-through never overwrites newer stock figures in the cache.
+ */
+
+class CachingDatabaseRWTest {
+    @TempDir
+    Path dir;
+
+    private MemoryRW database;
+    private CachingDatabaseRW cached;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        database = new MemoryRW(dir, false, 1000);
+        database.insertNewProduct("0001", "40 inch TV", 269.00, "0001.jpg", 10);
+        database.insertNewProduct("0002", "TV stand", 49.99, "0002.jpg", 5);
+        database.insertNewProduct("0003", "Tv wall bracket", 19.99, "0003.jpg", 8);
+        database.insertNewProduct("0004", "USB drive", 9.99, "0004.jpg", 20);
+        cached = new CachingDatabaseRW(database, new ProductCatalogueCache(60_000));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void prefixKeywordOnlyMatchesTheStartOfDescriptions() throws Exception {
+        assertEquals(List.of("0002", "0003"), ids(cached.searchProduct("tv*")));
+        assertEquals(ids(database.searchProduct("tv*")), ids(cached.searchProduct("tv*")));
+    }
+
+    @Test
+    void prefixKeywordIgnoresCase() throws Exception {
+        assertEquals(List.of("0002", "0003"), ids(cached.searchProduct("TV*")));
+        assertEquals(List.of("0004"), ids(cached.searchProduct("usb d*")));
+    }
+
+    @Test
+    void plainKeywordStillMatchesAnyWord() throws Exception {
+        assertEquals(List.of("0001", "0002", "0003"), ids(cached.searchProduct("tv")).stream().sorted().toList());
+    }
+
+    @Test
+    void plainKeywordMatchesTheSameProductsAsTheDatabase() throws Exception {
+        for (String keyword : List.of("tv", "TV ST", "usb dr", "inch tv", "sb", "v")) {
+            assertEquals(ids(database.searchProduct(keyword)), ids(cached.searchProduct(keyword)).stream().sorted().toList(),
+                    keyword);
+        }
+        assertEquals(List.of(), ids(cached.searchProduct("sb"))); // not the start of a word
+    }
+
+    @Test
+    void prefixKeywordFollowsEditedDescriptions() throws Exception {
+        cached.searchProduct("*"); // loads the snapshot
+        cached.updateProduct("0004", "TV remote", 9.99, "0004.jpg", 20);
+        assertEquals(List.of("0002", "0003", "0004"), ids(cached.searchProduct("tv*")));
+        assertEquals(List.of(), ids(cached.searchProduct("usb*")));
+        cached.deleteProduct("0002");
+        assertEquals(List.of("0003", "0004"), ids(cached.searchProduct("tv*")));
+    }
+
+    @Test
+    void prefixKeywordPagesMatchTheDatabase() throws Exception {
+        ProductPage first = cached.searchProductPage("tv*", null, 1);
+        assertEquals(List.of("0002"), ids(first.getProducts()));
+        ProductPage second = cached.searchProductPage("tv*", first.getNextCursor(), 1);
+        assertEquals(List.of("0003"), ids(second.getProducts()));
+        assertFalse(second.hasMore());
+    }
+
+    @Test
+    void staleReadThroughDoesNotOverwriteARefresh() throws Exception {
+        SlowReadRW slowDatabase = new SlowReadRW(dir.resolve("slow"));
+        try {
+            CachingDatabaseRW slowCached = new CachingDatabaseRW(slowDatabase, new ProductCatalogueCache(60_000));
+            slowCached.searchProduct("*"); // loads the snapshot, without 0005
+            slowDatabase.insertNewProduct("0005", "HDMI cable", 4.99, "0005.jpg", 10); // behind the cache's back
+
+            // The read-through of 0005 reads 10 in stock, then a purchase commits and refreshes 0005 to 7
+            // before the read-through gets to store what it read
+            slowDatabase.duringNextRead = () -> {
+                ArrayList<Product> trolley = new ArrayList<>();
+                Product line = new Product("0005", "HDMI cable", "0005.jpg", 4.99, 10);
+                line.setOrderedQuantity(3);
+                trolley.add(line);
+                assertEquals(List.of(), ids(slowCached.purchaseStocks(trolley)));
+            };
+            assertEquals(10, slowCached.searchByProductId("0005").getStockQuantity());
+            assertEquals(7, slowCached.searchByProductId("0005").getStockQuantity());
+        } finally {
+            slowDatabase.close();
+        }
+    }
+
+    // A MemoryRW that runs some code in the middle of a product read, after the product was read
+    private static class SlowReadRW extends MemoryRW {
+        private ThrowingRunnable duringNextRead;
+
+        SlowReadRW(Path dir) throws Exception {
+            super(dir, false, 1000);
+        }
+
+        @Override
+        public Product searchByProductId(String productId) throws java.sql.SQLException {
+            Product product = super.searchByProductId(productId);
+            ThrowingRunnable action = duringNextRead;
+            duringNextRead = null;
+            if (action != null) {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+            return product;
+        }
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    private static List<String> ids(ArrayList<Product> products) {
+        return products.stream().map(Product::getProductId).toList();
+    }
+}
@@ -0,0 +1,204 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a MemoryRW reopened after a crash holds every change that reached its write-ahead log:
+ * replayed on its own, or after the last snapshot, and with a torn or damaged record at the end of the log
+ * cut off. A damaged snapshot must stop the store from opening rather than lose products.
+ *
+ * close() takes a final snapshot, so a crash is simulated by copying the store's files while it is still
+ * open (crashImage()) and opening the copy.
+ */
+
+class MemoryRWRecoveryTest {
+    private static final int NO_AUTOMATIC_SNAPSHOT = 1_000_000;
+
+    @TempDir
+    Path base;
+
+    private Path dir;
+    private Path crashed;
+
+    @BeforeEach
+    void setUp() {
+        dir = base.resolve("db");
+        crashed = base.resolve("crashed");
+    }
+
+    @Test
+    void changesAreReplayedFromTheLog() throws Exception {
+        MemoryRW database = open(dir);
+        database.insertNewProduct("0001", "40 inch TV", 269.00, "0001.jpg", 10);
+        database.insertNewProduct("0002", "TV stand", 49.99, "0002.jpg", 5);
+        database.insertNewProduct("0003", "USB drive", 9.99, "0003.jpg", 20);
+        database.updateProduct("0002", "TV stand, oak", 59.99, "0002.jpg", 6);
+        assertEquals(List.of(), database.purchaseStocks(trolley("0001", 3)));
+        database.deleteProduct("0003");
+        crashImage(database);
+
+        MemoryRW reopened = open(crashed);
+        try {
+            assertEquals(List.of("0001", "0002"), ids(reopened.searchProduct("*")));
+            assertEquals(7, reopened.searchByProductId("0001").getStockQuantity());
+            assertEquals("TV stand, oak", reopened.searchByProductId("0002").getProductDescription());
+            assertEquals(59.99, reopened.searchByProductId("0002").getUnitPrice());
+            assertNull(reopened.searchByProductId("0003"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void snapshotIsLoadedAndTheLogAfterItReplayed() throws Exception {
+        MemoryRW database = open(dir);
+        database.insertNewProduct("0001", "40 inch TV", 269.00, "0001.jpg", 10);
+        database.insertNewProduct("0002", "TV stand", 49.99, "0002.jpg", 5);
+        database.checkpoint();
+        database.insertNewProduct("0003", "USB drive", 9.99, "0003.jpg", 20);
+        assertEquals(List.of(), database.purchaseStocks(trolley("0001", 4)));
+        database.deleteProduct("0002");
+        crashImage(database);
+        assertTrue(Files.exists(crashed.resolve("snapshot.dat")));
+        assertFalse(Files.exists(crashed.resolve("wal-000001.log"))); // covered by the snapshot
+
+        MemoryRW reopened = open(crashed);
+        try {
+            assertEquals(List.of("0001", "0003"), ids(reopened.searchProduct("*")));
+            assertEquals(6, reopened.searchByProductId("0001").getStockQuantity());
+            assertEquals(20, reopened.searchByProductId("0003").getStockQuantity());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void tornRecordAtTheEndOfTheLogIsCutOff() throws Exception {
+        MemoryRW database = open(dir);
+        database.insertNewProduct("0001", "40 inch TV", 269.00, "0001.jpg", 10);
+        database.insertNewProduct("0002", "TV stand", 49.99, "0002.jpg", 5);
+        crashImage(database);
+        // a record cut off by the crash: its header promises more bytes than were written
+        Files.write(lastSegment(crashed), new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 1, 2}, StandardOpenOption.APPEND);
+
+        MemoryRW reopened = open(crashed);
+        reopened.insertNewProduct("0003", "USB drive", 9.99, "0003.jpg", 20); // appended where the torn record was
+        reopened.close();
+
+        MemoryRW again = open(crashed);
+        try {
+            assertEquals(List.of("0001", "0002", "0003"), ids(again.searchProduct("*")));
+        } finally {
+            again.close();
+        }
+    }
+
+    @Test
+    void lastRecordWithAChecksumMismatchIsDropped() throws Exception {
+        MemoryRW database = open(dir);
+        database.insertNewProduct("0001", "40 inch TV", 269.00, "0001.jpg", 10);
+        assertEquals(List.of(), database.purchaseStocks(trolley("0001", 3)));
+        crashImage(database);
+        Path segment = lastSegment(crashed);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 0x7F; // damage the payload of the purchase, the last record
+        Files.write(segment, bytes);
+
+        MemoryRW reopened = open(crashed);
+        try {
+            assertEquals(10, reopened.searchByProductId("0001").getStockQuantity()); // the purchase is lost, nothing else
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void damagedSnapshotIsRefused() throws Exception {
+        MemoryRW database = open(dir);
+        database.insertNewProduct("0001", "40 inch TV", 269.00, "0001.jpg", 10);
+        database.checkpoint();
+        database.close();
+        Path snapshot = dir.resolve("snapshot.dat");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 12] ^= 0x7F; // inside the rows, before the checksum
+        Files.write(snapshot, bytes);
+
+        assertThrows(IOException.class, () -> open(dir));
+    }
+
+    @Test
+    void largeSnapshotIsLoadedWithItsOrderAndStock() throws Exception {
+        MemoryRW database = open(dir);
+        ArrayList<Product> products = new ArrayList<>();
+        for (int i = 9999; i >= 1; i--) { // imported out of order
+            products.add(new Product(String.format("%04d", i), "Product " + i, i + ".jpg", 1.50, i % 50));
+        }
+        database.importProducts(products);
+        database.checkpoint();
+        database.deleteProduct("0500");
+        database.insertNewProduct("A001", "Extra", 2.00, "A001.jpg", 1);
+        crashImage(database);
+
+        MemoryRW reopened = open(crashed);
+        try {
+            assertEquals(9999, reopened.getProductCount());
+            ProductPage page = reopened.searchProductPage("*", "0498", 3);
+            assertEquals(List.of("0499", "0501", "0502"), ids(page.getProducts()));
+            assertEquals(List.of("9999", "A001"), ids(reopened.searchProductPage("*", "9998", 10).getProducts()));
+            assertEquals(1234 % 50, reopened.searchByProductId("1234").getStockQuantity());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static MemoryRW open(Path storeDir) throws IOException {
+        return new MemoryRW(storeDir, false, NO_AUTOMATIC_SNAPSHOT);
+    }
+
+    // Copies the files of the open store, as a crash would leave them, into the crashed folder; then closes the store
+    private void crashImage(MemoryRW database) throws IOException {
+        Files.createDirectories(crashed);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, crashed.resolve(file.getFileName()));
+            }
+        }
+        database.close();
+    }
+
+    private static Path lastSegment(Path storeDir) throws IOException {
+        try (Stream<Path> files = Files.list(storeDir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted()
+                    .reduce((first, second) -> second).orElseThrow();
+        }
+    }
+
+    private static ArrayList<Product> trolley(String productId, int quantity) {
+        ArrayList<Product> trolley = new ArrayList<>();
+        Product line = new Product(productId, "", "", 0, 0);
+        line.setOrderedQuantity(quantity);
+        trolley.add(line);
+        return trolley;
+    }
+
+    private static List<String> ids(List<Product> products) {
+        return products.stream().map(Product::getProductId).toList();
+    }
+}